@@ -0,0 +1,76 @@
+package com.yytech.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 正常返回时ReqResLoggerAspect.around的开销，与不经过代理的直接调用对比
+ * -------------
+ * level：enabled时日志会被完整格式化(不写到appender)，disabled时req/res与throwable日志级别均不可用
+ * logType：同时作用于请求与返回数据
+ * traceType：METHOD时从Payload.traceId()获取traceId
+ * payload：请求参数与返回值序列化为json后的大小
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AspectOverheadBenchmark {
+
+    @Param({"enabled", "disabled"})
+    public String level;
+
+    @Param({"JSON", "TO_STRING", "NONE"})
+    public String logType;
+
+    @Param({"NONE", "UUID", "METHOD"})
+    public String traceType;
+
+    @Param({"tiny", "1KB", "64KB", "1MB"})
+    public String payload;
+
+    private BenchmarkContext context;
+
+    private BenchmarkService proxied;
+
+    private BenchmarkService unproxied;
+
+    private Payload request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        String logLevel = "enabled".equals(level) ? "INFO" : "DEBUG";
+        properties.put("req-res-log.level", logLevel);
+        properties.put("req-res-log.throwable-log-level", logLevel);
+        properties.put("req-res-log.req-log-type", logType);
+        properties.put("req-res-log.res-log-type", logType);
+        properties.put("req-res-log.trace-type", traceType);
+        properties.put("req-res-log.trace-id-method", "traceId");
+        context = new BenchmarkContext(properties);
+        proxied = context.getProxiedService();
+        unproxied = new BenchmarkService();
+        request = Payload.ofSize(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Payload baseline() {
+        return unproxied.echo(request);
+    }
+
+    @Benchmark
+    public Payload around() {
+        return proxied.echo(request);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.yytech.benchmark;
+
+import com.yytech.logger.annotation.EnableReqResLog;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * 按给定的req-res-log配置启动一个最小的Spring容器，获取被切面代理的BenchmarkService
+ */
+public final class BenchmarkContext implements AutoCloseable {
+
+    private final AnnotationConfigApplicationContext context;
+
+    public BenchmarkContext(Map<String, Object> properties) {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(Config.class);
+        context.refresh();
+    }
+
+    /**
+     * @return 被切面代理的BenchmarkService
+     */
+    public BenchmarkService getProxiedService() {
+        return context.getBean(BenchmarkService.class);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    @Configuration
+    @EnableReqResLog
+    static class Config {
+
+        @Bean
+        public BenchmarkService benchmarkService() {
+            return new BenchmarkService();
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.yytech.benchmark;
+
+import com.yytech.logger.annotation.ReqResLog;
+
+/**
+ * 被代理的方法，注解不指定任何属性，全部由基准测试的参数通过配置文件属性控制
+ */
+public class BenchmarkService {
+
+    @ReqResLog
+    public Payload echo(Payload payload) {
+        return payload;
+    }
+
+    @ReqResLog(reqFields = {"payload.traceId", "payload.items.size()"}, resFields = {"traceId", "items.size()"})
+    public Payload echoProjected(Payload payload) {
+        return payload;
+    }
+
+    @ReqResLog
+    public Payload fail(Payload payload) {
+        throw new IllegalStateException("benchmark failure " + payload.getTraceId());
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.yytech.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志可用时，序列化整个请求参数/返回值(full)与只记录reqFields/resFields中几个属性(projected)的开销对比
+ * 日志会被完整格式化，但不写到appender
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldProjectionBenchmark {
+
+    @Param({"1KB", "64KB", "1MB"})
+    public String payload;
+
+    private BenchmarkContext context;
+
+    private BenchmarkService proxied;
+
+    private Payload request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("req-res-log.level", "INFO");
+        properties.put("req-res-log.throwable-log-level", "INFO");
+        context = new BenchmarkContext(properties);
+        proxied = context.getProxiedService();
+        request = Payload.ofSize(payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object full() {
+        return proxied.echo(request);
+    }
+
+    @Benchmark
+    public Object projected() {
+        return proxied.echoProjected(request);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.yytech.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试中的请求参数与返回值，按json大小构造
+ */
+public class Payload {
+
+    private String traceId;
+
+    private List<Item> items;
+
+    public Payload() {
+    }
+
+    public Payload(String traceId, List<Item> items) {
+        this.traceId = traceId;
+        this.items = items;
+    }
+
+    /**
+     * 构造序列化为json后约为指定字节数的Payload
+     *
+     * @param size tiny/1KB/64KB/1MB
+     * @return Payload
+     */
+    public static Payload ofSize(String size) {
+        int bytes;
+        switch (size) {
+            case "tiny":
+                bytes = 0;
+                break;
+            case "1KB":
+                bytes = 1024;
+                break;
+            case "64KB":
+                bytes = 64 * 1024;
+                break;
+            case "1MB":
+                bytes = 1024 * 1024;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown payload size: " + size);
+        }
+        //每个Item序列化后约64字节
+        int itemCount = Math.max(1, bytes / 64);
+        List<Item> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new Item(i, "item-name-" + i, "item-description-" + i));
+        }
+        return new Payload("trace-" + size, items);
+    }
+
+    /**
+     * TraceType为METHOD时获取traceId的方法
+     *
+     * @return traceId
+     */
+    public String traceId() {
+        return traceId;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        return "Payload{traceId='" + traceId + "', items=" + items + "}";
+    }
+
+    public static class Item {
+
+        private long id;
+
+        private String name;
+
+        private String description;
+
+        public Item(long id, String name, String description) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{id=" + id + ", name='" + name + "', description='" + description + "'}";
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.yytech.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 方法抛出异常时ReqResLoggerAspect.around的开销，与不经过代理的直接调用对比
+ * 两者都包含创建异常与填充堆栈的开销，差值即为切面记录异常日志的开销
+ * -------------
+ * level：enabled时throwable日志会被完整格式化(不写到appender)，disabled时日志级别不可用
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThrowableLogBenchmark {
+
+    @Param({"enabled", "disabled"})
+    public String level;
+
+    @Param({"STACK", "MESSAGE", "NONE"})
+    public String throwableLogType;
+
+    private BenchmarkContext context;
+
+    private BenchmarkService proxied;
+
+    private BenchmarkService unproxied;
+
+    private Payload request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        String logLevel = "enabled".equals(level) ? "INFO" : "DEBUG";
+        properties.put("req-res-log.level", logLevel);
+        properties.put("req-res-log.throwable-log-level", logLevel);
+        properties.put("req-res-log.throwable-log-type", throwableLogType);
+        context = new BenchmarkContext(properties);
+        proxied = context.getProxiedService();
+        unproxied = new BenchmarkService();
+        request = Payload.ofSize("tiny");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object baseline() {
+        try {
+            return unproxied.fail(request);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object around() {
+        try {
+            return proxied.fail(request);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+}
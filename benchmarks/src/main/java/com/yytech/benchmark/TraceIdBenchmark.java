@@ -0,0 +1,69 @@
+package com.yytech.benchmark;
+
+import com.yytech.logger.trace.RandomTraceIdGenerator;
+import com.yytech.logger.trace.TimeOrderedTraceIdGenerator;
+import com.yytech.logger.trace.TraceparentTraceIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * traceId生成器的吞吐量
+ * 不带后缀的方法单线程运行，*Contended方法用与CPU核数相同的线程并发运行，对比各生成器是否随核数扩展
+ * 也可以用 -t 4 等参数指定其他线程数(会覆盖注解上的线程数)
+ * legacyUuid为原来的UUID.randomUUID().toString().replaceAll("-", "")实现，并发时SecureRandom的锁会成为瓶颈
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceIdBenchmark {
+
+    @Benchmark
+    public String legacyUuid() {
+        return UUID.randomUUID().toString().replaceAll("-", "");
+    }
+
+    @Benchmark
+    public String uuid() {
+        return RandomTraceIdGenerator.INSTANCE.generate();
+    }
+
+    @Benchmark
+    public String time() {
+        return TimeOrderedTraceIdGenerator.INSTANCE.generate();
+    }
+
+    @Benchmark
+    public String traceparent() {
+        return TraceparentTraceIdGenerator.INSTANCE.generate();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String legacyUuidContended() {
+        return legacyUuid();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String uuidContended() {
+        return uuid();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String timeContended() {
+        return time();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String traceparentContended() {
+        return traceparent();
+    }
+
+}
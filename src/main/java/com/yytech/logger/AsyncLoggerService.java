@@ -0,0 +1,367 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.MpmcRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志记录实现类
+ * 业务线程只把LogAttributes放入有界的无锁环形队列，由后台消费线程交给被包装的LoggerService格式化并写出
+ * 这样慢的appender不会直接增加业务方法的耗时
+ * -------------
+ * 顺序：每个消费线程有自己的队列，日志与traceStarted/traceFinished按traceId的hash分配到队列，
+ * 同一个trace(包括同一次调用的REQ与RES)总是由同一个消费线程按放入的顺序处理；
+ * 队列满时同步记录(SYNC)的日志不经过队列，可能早于队列中同一个trace的日志
+ * -------------
+ * 注意：
+ * 1. 放入队列的是LogAttributes的副本，调用线程之后再修改LogAttributes不会影响队列中的日志
+ * 2. LogAttributes放入队列后由其他线程读取，自定义的LoggerService不能依赖调用线程的上下文(如MDC)
+ */
+@Slf4j
+public class AsyncLoggerService implements LoggerService {
+
+    private static final int REQ = 0;
+
+    private static final int RES = 1;
+
+    private static final int THROWABLE = 2;
+
+    private static final int INVOCATION = 3;
+
+    private static final int TRACE_STARTED = 4;
+
+    private static final int TRACE_FINISHED = 5;
+
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final LoggerService delegate;
+
+    /**
+     * 每个消费线程一个队列
+     */
+    private final MpmcRingBuffer<LogEvent>[] ringBuffers;
+
+    private final ReqResLogProperties.OverflowPolicy overflowPolicy;
+
+    private final long shutdownTimeoutMillis;
+
+    private final Thread[] consumers;
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LongAdder syncFallbackCount = new LongAdder();
+
+    private final LongAdder processedCount = new LongAdder();
+
+    /**
+     * 被包装的LoggerService是否实现了traceStarted/traceFinished，没有实现时不放入队列
+     */
+    private final boolean traceAware;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate              实际格式化并写出日志的LoggerService
+     * @param queueSize             队列总容量，平均分给每个消费线程的队列，每个队列的容量会向上取整为2的幂
+     * @param overflowPolicy        队列满时的处理策略
+     * @param consumerCount         后台消费线程数，同一个trace的日志总是由同一个消费线程处理
+     * @param shutdownTimeoutMillis 关闭时等待队列写完的最长时间(毫秒)
+     */
+    @SuppressWarnings("unchecked")
+    public AsyncLoggerService(LoggerService delegate, int queueSize, ReqResLogProperties.OverflowPolicy overflowPolicy,
+                              int consumerCount, long shutdownTimeoutMillis) {
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy == null ? ReqResLogProperties.OverflowPolicy.SYNC : overflowPolicy;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.traceAware = overrides(delegate, "traceStarted", String.class)
+                || overrides(delegate, "traceFinished", String.class, long.class, Throwable.class);
+        int shards = Math.max(1, consumerCount);
+        this.ringBuffers = new MpmcRingBuffer[shards];
+        this.consumers = new Thread[shards];
+        for (int i = 0; i < shards; i++) {
+            MpmcRingBuffer<LogEvent> ringBuffer = new MpmcRingBuffer<>((Math.max(queueSize, 1) + shards - 1) / shards);
+            ringBuffers[i] = ringBuffer;
+            Thread consumer = new Thread(() -> consume(ringBuffer));
+            consumer.setName("req-res-log-async-" + i);
+            consumer.setDaemon(true);
+            consumers[i] = consumer;
+            consumer.start();
+        }
+    }
+
+    @Override
+    public void processReqLog(LogAttributes logAttributes) {
+        publish(new LogEvent(REQ, logAttributes.copy()));
+    }
+
+    @Override
+    public void processResLog(LogAttributes logAttributes) {
+        publish(new LogEvent(RES, logAttributes.copy()));
+    }
+
+    @Override
+    public void processThrowableLog(LogAttributes logAttributes) {
+        publish(new LogEvent(THROWABLE, logAttributes.copy()));
+    }
+
+    @Override
+    public void processInvocationLog(LogAttributes logAttributes) {
+        publish(new LogEvent(INVOCATION, logAttributes.copy()));
+    }
+
+    /**
+     * 与这个trace的日志放入同一个队列，按顺序交给被包装的LoggerService
+     */
+    @Override
+    public void traceStarted(String traceId) {
+        if (!traceAware) {
+            return;
+        }
+        publish(new LogEvent(TRACE_STARTED, traceId, 0, null));
+    }
+
+    /**
+     * 与这个trace的日志放入同一个队列，在这个trace之前放入的日志都处理完之后再交给被包装的LoggerService
+     */
+    @Override
+    public void traceFinished(String traceId, long elapsedNanos, Throwable throwable) {
+        if (!traceAware) {
+            return;
+        }
+        publish(new LogEvent(TRACE_FINISHED, traceId, elapsedNanos, throwable));
+    }
+
+    @Override
+    public boolean isLogLevelEnable(ReqResLogProperties.Level level) {
+        return delegate.isLogLevelEnable(level);
+    }
+
+    /**
+     * LogAttributes由后台线程格式化
+     */
+    @Override
+    public boolean isDeferredFormatting() {
+        return true;
+    }
+
+    /**
+     * @return 因队列满而被丢弃的日志数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return 因队列满或已关闭而在调用线程同步记录的日志数量
+     */
+    public long getSyncFallbackCount() {
+        return syncFallbackCount.sum();
+    }
+
+    /**
+     * @return 后台线程已处理的日志数量
+     */
+    public long getProcessedCount() {
+        return processedCount.sum();
+    }
+
+    /**
+     * @return 当前队列中等待处理的日志数量
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (MpmcRingBuffer<LogEvent> ringBuffer : ringBuffers) {
+            depth += ringBuffer.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return 所有消费线程队列的总容量
+     */
+    public int getQueueCapacity() {
+        int capacity = 0;
+        for (MpmcRingBuffer<LogEvent> ringBuffer : ringBuffers) {
+            capacity += ringBuffer.capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * 停止接收新的异步日志，并在shutdownTimeoutMillis内尽量把队列中的日志写完
+     * 关闭之后的日志会在调用线程同步记录
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        for (Thread consumer : consumers) {
+            LockSupport.unpark(consumer);
+        }
+        for (Thread consumer : consumers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                consumer.join(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int left = 0;
+        for (MpmcRingBuffer<LogEvent> ringBuffer : ringBuffers) {
+            LogEvent event;
+            while ((event = ringBuffer.poll()) != null) {
+                if (event.logAttributes != null) {
+                    left++;
+                }
+            }
+        }
+        if (left > 0) {
+            droppedCount.add(left);
+            log.warn("AsyncLoggerService shutdown timeout, {} logs dropped", left);
+        }
+    }
+
+    private void publish(LogEvent event) {
+        if (!running) {
+            syncFallbackCount.increment();
+            dispatch(event);
+            return;
+        }
+        MpmcRingBuffer<LogEvent> ringBuffer = ringBuffers[shardOf(event.traceId)];
+        if (ringBuffer.offer(event)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                while (!ringBuffer.offer(event)) {
+                    if (!running) {
+                        syncFallbackCount.increment();
+                        dispatch(event);
+                        return;
+                    }
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                return;
+            case DROP_OLDEST:
+                for (int i = 0; i < 3; i++) {
+                    if (ringBuffer.poll() != null) {
+                        droppedCount.increment();
+                    }
+                    if (ringBuffer.offer(event)) {
+                        return;
+                    }
+                }
+                droppedCount.increment();
+                return;
+            case DROP_NEWEST:
+                droppedCount.increment();
+                return;
+            default:
+                syncFallbackCount.increment();
+                dispatch(event);
+        }
+    }
+
+    private static boolean overrides(LoggerService loggerService, String name, Class<?>... parameterTypes) {
+        try {
+            return loggerService.getClass().getMethod(name, parameterTypes).getDeclaringClass() != LoggerService.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private int shardOf(String traceId) {
+        if (traceId == null || ringBuffers.length == 1) {
+            return 0;
+        }
+        int hash = traceId.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % ringBuffers.length;
+    }
+
+    private void consume(MpmcRingBuffer<LogEvent> ringBuffer) {
+        long idleParkNanos = 0;
+        for (; ; ) {
+            LogEvent event = ringBuffer.poll();
+            if (event != null) {
+                idleParkNanos = 0;
+                dispatch(event);
+                if (event.logAttributes != null) {
+                    processedCount.increment();
+                }
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            if (idleParkNanos == 0) {
+                idleParkNanos = 1000;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(idleParkNanos);
+                idleParkNanos = Math.min(idleParkNanos << 1, MAX_IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void dispatch(LogEvent event) {
+        try {
+            if (event.kind == REQ) {
+                delegate.processReqLog(event.logAttributes);
+            } else if (event.kind == RES) {
+                delegate.processResLog(event.logAttributes);
+            } else if (event.kind == THROWABLE) {
+                delegate.processThrowableLog(event.logAttributes);
+            } else if (event.kind == INVOCATION) {
+                delegate.processInvocationLog(event.logAttributes);
+            } else if (event.kind == TRACE_STARTED) {
+                delegate.traceStarted(event.traceId);
+            } else {
+                delegate.traceFinished(event.traceId, event.elapsedNanos, event.throwable);
+            }
+        } catch (Throwable e) {
+            log.error("AsyncLoggerService dispatch", e);
+        }
+    }
+
+    private static final class LogEvent {
+
+        private final int kind;
+
+        private final LogAttributes logAttributes;
+
+        private final String traceId;
+
+        private final long elapsedNanos;
+
+        private final Throwable throwable;
+
+        private LogEvent(int kind, LogAttributes logAttributes) {
+            this.kind = kind;
+            this.logAttributes = logAttributes;
+            this.traceId = logAttributes.getTraceId();
+            this.elapsedNanos = 0;
+            this.throwable = null;
+        }
+
+        private LogEvent(int kind, String traceId, long elapsedNanos, Throwable throwable) {
+            this.kind = kind;
+            this.logAttributes = null;
+            this.traceId = traceId;
+            this.elapsedNanos = elapsedNanos;
+            this.throwable = throwable;
+        }
+    }
+
+}
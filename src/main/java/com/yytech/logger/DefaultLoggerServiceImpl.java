@@ -1,9 +1,13 @@
 package com.yytech.logger;
 
 import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.StreamingLogWriter;
 import com.yytech.logger.util.StringUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * 日志记录默认实现类
  */
@@ -31,6 +35,14 @@ public class DefaultLoggerServiceImpl implements LoggerService {
         writeLog(throwableLogLevel, throwableLog);
     }
 
+    @Override
+    public void processInvocationLog(LogAttributes logAttributes) {
+        ReqResLogProperties.Level level = logAttributes.getThrowable() != null && logAttributes.isThrowableLogEnable()
+                ? logAttributes.getThrowableLogLevel() : logAttributes.getLogLevel();
+        String invocationLog = getInvocationLog(logAttributes);
+        writeLog(level, invocationLog);
+    }
+
     @Override
     public boolean isLogLevelEnable(ReqResLogProperties.Level level) {
         if (ReqResLogProperties.Level.TRACE == level) {
@@ -58,7 +70,59 @@ public class DefaultLoggerServiceImpl implements LoggerService {
      * @return req日志内容
      */
     protected String getReqLog(LogAttributes logAttributes) {
+        if (logAttributes.isStreaming()) {
+            return getStreamingReqLog(logAttributes);
+        }
         StringBuilder sb = getLogPrefixStringBuilder(logAttributes);
+        appendReqParams(sb, logAttributes);
+        return sb.toString();
+    }
+
+    /**
+     * 获取返回日志
+     *
+     * @param logAttributes 日志参数
+     * @return res日志内容
+     */
+    protected String getResLog(LogAttributes logAttributes) {
+        if (logAttributes.isStreaming()) {
+            return getStreamingResLog(logAttributes);
+        }
+        StringBuilder sb = getLogPrefixStringBuilder(logAttributes);
+        appendResParam(sb, logAttributes);
+        return sb.toString();
+    }
+
+    /**
+     * 合并模式下获取整次调用的日志
+     * 格式为 日志前缀 cost:耗时ms [REQUEST] 请求数据 [RESPONSE] 返回数据
+     * 发生异常时 [RESPONSE] 部分替换为 [THROWABLE] 异常信息
+     *
+     * @param logAttributes 日志参数
+     * @return 整次调用的日志内容
+     */
+    protected String getInvocationLog(LogAttributes logAttributes) {
+        if (logAttributes.isStreaming()) {
+            return getStreamingInvocationLog(logAttributes);
+        }
+        StringBuilder sb = getLogPrefixStringBuilder(logAttributes);
+        sb.append(" cost:").append(formatCost(logAttributes.getElapsedNanos()));
+        appendReqParams(sb, logAttributes);
+        if (logAttributes.getThrowable() == null) {
+            appendResParam(sb, logAttributes);
+        } else {
+            sb.append(" [THROWABLE] ").append(getThrowableSummary(logAttributes));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 追加 [REQUEST] 及请求数据
+     *
+     * @param sb            日志内容
+     * @param logAttributes 日志参数
+     */
+    protected void appendReqParams(StringBuilder sb, LogAttributes logAttributes) {
         sb.append(" [REQUEST]");
         String[] reqParamMarks = logAttributes.getReqParamMarks();
         String[] reqParamLogs = logAttributes.getReqParamLogs();
@@ -71,17 +135,15 @@ public class DefaultLoggerServiceImpl implements LoggerService {
                 sb.append(reqParamLogs[i]);
             }
         }
-        return sb.toString();
     }
 
     /**
-     * 获取返回日志
+     * 追加 [RESPONSE] 及返回数据
      *
+     * @param sb            日志内容
      * @param logAttributes 日志参数
-     * @return res日志内容
      */
-    protected String getResLog(LogAttributes logAttributes) {
-        StringBuilder sb = getLogPrefixStringBuilder(logAttributes);
+    protected void appendResParam(StringBuilder sb, LogAttributes logAttributes) {
         sb.append(" [RESPONSE]");
         String resParamMark = logAttributes.getResParamMark();
         String resParamLog = logAttributes.getResParamLog();
@@ -92,7 +154,149 @@ public class DefaultLoggerServiceImpl implements LoggerService {
             }
             sb.append(resParamLog);
         }
-        return sb.toString();
+    }
+
+    /**
+     * 流式日志模式下获取请求日志
+     * 日志前缀、参数标记与参数数据直接写入线程内复用的缓冲区
+     *
+     * @param logAttributes 日志参数
+     * @return req日志内容
+     */
+    protected String getStreamingReqLog(LogAttributes logAttributes) {
+        StreamingLogWriter writer = StreamingLogWriter.acquire();
+        try {
+            appendLogPrefix(writer, logAttributes);
+            appendReqParams(writer, logAttributes);
+            return writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * 流式日志模式下获取返回日志
+     *
+     * @param logAttributes 日志参数
+     * @return res日志内容
+     */
+    protected String getStreamingResLog(LogAttributes logAttributes) {
+        StreamingLogWriter writer = StreamingLogWriter.acquire();
+        try {
+            appendLogPrefix(writer, logAttributes);
+            appendResParam(writer, logAttributes);
+            return writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * 流式日志模式下获取整次调用的日志
+     *
+     * @param logAttributes 日志参数
+     * @return 整次调用的日志内容
+     */
+    protected String getStreamingInvocationLog(LogAttributes logAttributes) {
+        StreamingLogWriter writer = StreamingLogWriter.acquire();
+        try {
+            appendLogPrefix(writer, logAttributes);
+            writer.append(" cost:").append(formatCost(logAttributes.getElapsedNanos()));
+            appendReqParams(writer, logAttributes);
+            if (logAttributes.getThrowable() == null) {
+                appendResParam(writer, logAttributes);
+            } else {
+                writer.append(" [THROWABLE] ").append(getThrowableSummary(logAttributes));
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * 流式写入 [REQUEST] 及请求数据
+     *
+     * @param writer        StreamingLogWriter
+     * @param logAttributes 日志参数
+     * @throws IOException json处理异常
+     */
+    protected void appendReqParams(StreamingLogWriter writer, LogAttributes logAttributes) throws IOException {
+        writer.append(" [REQUEST]");
+        String[] reqParamMarks = logAttributes.getReqParamMarks();
+        Object[] reqArgs = logAttributes.getReqArgs();
+        //有参数级配置的方法即使在流式日志模式下请求参数日志也是预先生成的
+        String[] reqParamLogs = reqArgs == null ? logAttributes.getReqParamLogs() : null;
+        int count = reqArgs != null ? reqArgs.length : reqParamLogs != null ? reqParamLogs.length : 0;
+        for (int i = 0; i < count; i++) {
+            writer.append(" ");
+            if (StringUtil.isNotEmpty(reqParamMarks[i])) {
+                writer.append(reqParamMarks[i]).append(":");
+            }
+            if (reqArgs != null) {
+                writer.appendValue(logAttributes.getReqLogType(), reqArgs[i], logAttributes.getMaxReqLength());
+            } else {
+                writer.append(reqParamLogs[i]);
+            }
+        }
+    }
+
+    /**
+     * 流式写入 [RESPONSE] 及返回数据
+     *
+     * @param writer        StreamingLogWriter
+     * @param logAttributes 日志参数
+     * @throws IOException json处理异常
+     */
+    protected void appendResParam(StreamingLogWriter writer, LogAttributes logAttributes) throws IOException {
+        writer.append(" [RESPONSE]");
+        Object response = logAttributes.getResponse();
+        ReqResLogProperties.LogType resLogType = logAttributes.getResLogType();
+        if (response != null && resLogType != ReqResLogProperties.LogType.NONE) {
+            writer.append(" ");
+            if (StringUtil.isNotEmpty(logAttributes.getResParamMark())) {
+                writer.append(logAttributes.getResParamMark()).append(":");
+            }
+            writer.appendValue(resLogType, response, logAttributes.getMaxResLength());
+        }
+    }
+
+    /**
+     * 合并模式下的异常信息，异常日志不可用或ThrowableLogType为NONE时只记录异常类型
+     *
+     * @param logAttributes 日志参数
+     * @return 异常信息
+     */
+    protected String getThrowableSummary(LogAttributes logAttributes) {
+        if (logAttributes.isThrowableLogEnable() && logAttributes.getThrowableLog() != null) {
+            return logAttributes.getThrowableLog();
+        }
+        return "[" + logAttributes.getThrowable().getClass().getTypeName() + "]";
+    }
+
+    /**
+     * 把纳秒耗时格式化为毫秒，保留3位小数，如 1.234ms
+     *
+     * @param elapsedNanos 耗时(纳秒)
+     * @return 格式化后的耗时
+     */
+    protected static String formatCost(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        long fraction = micros % 1000;
+        StringBuilder sb = new StringBuilder(16).append(micros / 1000).append('.');
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).append("ms").toString();
     }
 
     /**
@@ -117,11 +321,15 @@ public class DefaultLoggerServiceImpl implements LoggerService {
      */
     protected StringBuilder getLogPrefixStringBuilder(LogAttributes logAttributes) {
         StringBuilder sb = new StringBuilder();
-        sb.append(logAttributes.getTargetClassSimpleName())
-                .append(".")
-                .append(logAttributes.getMethodName());
-        if (StringUtil.isNotEmpty(logAttributes.getTitle())) {
-            sb.append(" ").append(logAttributes.getTitle());
+        if (logAttributes.getLogPrefix() != null) {
+            sb.append(logAttributes.getLogPrefix());
+        } else {
+            sb.append(logAttributes.getTargetClassSimpleName())
+                    .append(".")
+                    .append(logAttributes.getMethodName());
+            if (StringUtil.isNotEmpty(logAttributes.getTitle())) {
+                sb.append(" ").append(logAttributes.getTitle());
+            }
         }
         if (StringUtil.isNotEmpty(logAttributes.getTraceId())) {
             sb.append(" traceId:").append(logAttributes.getTraceId());
@@ -129,6 +337,29 @@ public class DefaultLoggerServiceImpl implements LoggerService {
         return sb;
     }
 
+    /**
+     * 流式写入日志前缀
+     *
+     * @param writer        StreamingLogWriter
+     * @param logAttributes 日志参数
+     * @throws IOException 写入异常
+     */
+    protected void appendLogPrefix(StreamingLogWriter writer, LogAttributes logAttributes) throws IOException {
+        if (logAttributes.getLogPrefix() != null) {
+            writer.append(logAttributes.getLogPrefix());
+        } else {
+            writer.append(logAttributes.getTargetClassSimpleName())
+                    .append(".")
+                    .append(logAttributes.getMethodName());
+            if (StringUtil.isNotEmpty(logAttributes.getTitle())) {
+                writer.append(" ").append(logAttributes.getTitle());
+            }
+        }
+        if (StringUtil.isNotEmpty(logAttributes.getTraceId())) {
+            writer.append(" traceId:").append(logAttributes.getTraceId());
+        }
+    }
+
     /**
      * 记录日志
      *
@@ -0,0 +1,377 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.metrics.LatencyHistogram;
+import com.yytech.logger.metrics.MethodMetrics;
+import com.yytech.logger.metrics.ReqResLogMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应降级控制器
+ * 定时采集CPU使用率、GC耗时占比、异步日志队列使用率以及被记录方法的p99耗时，JVM压力大时逐级降低日志的详细程度
+ * NORMAL：按配置记录
+ * REDUCED：请求/返回数据JSON降级为SUMMARY，异常STACK降级为MESSAGE
+ * (不降级为TO_STRING：toString()不经过字段脱敏，压力大时会输出密码等敏感字段)
+ * MINIMAL：请求/返回数据降级为NONE，异常STACK降级为MESSAGE
+ * -------------
+ * 每个信号除以各自的阈值得到压力值，取最大的一个：
+ * 连续stepDownTicks次压力值大于等于1时降一级，连续stepUpTicks次压力值小于recoveryRatio时升一级，两者之间保持不变
+ * 每次切换都会输出一行warn日志，当前模式可以通过{@link #getMode()}获取
+ */
+@Slf4j
+public class LoadSheddingController {
+
+    /**
+     * 区间内调用次数少于这个值的方法不参与p99的比较
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /**
+     * p99基线的平滑系数
+     */
+    private static final double BASELINE_WEIGHT = 0.1;
+
+    public enum Mode {
+        NORMAL, REDUCED, MINIMAL
+    }
+
+    private final long intervalMillis;
+
+    private final double cpuThreshold;
+
+    private final double gcThreshold;
+
+    private final double queueThreshold;
+
+    private final double p99Factor;
+
+    private final double recoveryRatio;
+
+    private final int stepDownTicks;
+
+    private final int stepUpTicks;
+
+    private final AsyncLoggerService asyncLoggerService;
+
+    private final ReqResLogMetrics reqResLogMetrics;
+
+    private final OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+
+    private final List<GarbageCollectorMXBean> garbageCollectorMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * 以下状态只在采集线程(或持有锁时)访问
+     */
+    private final Map<MethodMetrics, MethodLatency> methodLatencies = new HashMap<>();
+
+    private long lastGcMillis = -1;
+
+    private long lastSampleNanos;
+
+    private int pressureTicks;
+
+    private int calmTicks;
+
+    private volatile Mode mode = Mode.NORMAL;
+
+    private volatile long modeSinceMillis = System.currentTimeMillis();
+
+    private volatile Signals lastSignals;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param reqResLogProperties 配置，使用其中shedding开头的阈值
+     * @param asyncLoggerService  异步日志时的AsyncLoggerService，没有时为null
+     * @param reqResLogMetrics    方法调用指标，没有开启时为null
+     */
+    public LoadSheddingController(ReqResLogProperties reqResLogProperties, AsyncLoggerService asyncLoggerService,
+                                  ReqResLogMetrics reqResLogMetrics) {
+        this.intervalMillis = Math.max(10, reqResLogProperties.getSheddingIntervalMs());
+        this.cpuThreshold = reqResLogProperties.getSheddingCpuThreshold();
+        this.gcThreshold = reqResLogProperties.getSheddingGcThreshold();
+        this.queueThreshold = reqResLogProperties.getSheddingQueueThreshold();
+        this.p99Factor = reqResLogProperties.getSheddingP99Factor();
+        this.recoveryRatio = reqResLogProperties.getSheddingRecoveryRatio();
+        this.stepDownTicks = Math.max(1, reqResLogProperties.getSheddingStepDownTicks());
+        this.stepUpTicks = Math.max(1, reqResLogProperties.getSheddingStepUpTicks());
+        this.asyncLoggerService = asyncLoggerService;
+        this.reqResLogMetrics = reqResLogMetrics;
+    }
+
+    /**
+     * 找到被包装的AsyncLoggerService
+     *
+     * @param loggerService 实际使用的LoggerService
+     * @return AsyncLoggerService，没有使用异步日志时为null
+     */
+    public static AsyncLoggerService findAsyncLoggerService(LoggerService loggerService) {
+        while (loggerService instanceof TailSamplingLoggerService) {
+            loggerService = ((TailSamplingLoggerService) loggerService).getDelegate();
+        }
+        return loggerService instanceof AsyncLoggerService ? (AsyncLoggerService) loggerService : null;
+    }
+
+    /**
+     * 启动后台采集线程
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "req-res-log-load-shedding");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                update(sample());
+            } catch (Throwable e) {
+                log.error("LoadSheddingController update", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台采集线程
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return 当前模式
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return 进入当前模式的时间(毫秒时间戳)
+     */
+    public long getModeSinceMillis() {
+        return modeSinceMillis;
+    }
+
+    /**
+     * @return 最近一次采集到的信号，还没有采集时为null
+     */
+    public Signals getLastSignals() {
+        return lastSignals;
+    }
+
+    /**
+     * @param configured 配置的请求/返回数据记录类别
+     * @return 当前模式下实际使用的记录类别
+     */
+    public ReqResLogProperties.LogType effectiveLogType(ReqResLogProperties.LogType configured) {
+        Mode current = mode;
+        if (current == Mode.NORMAL || configured == ReqResLogProperties.LogType.NONE) {
+            return configured;
+        }
+        if (current == Mode.MINIMAL) {
+            return ReqResLogProperties.LogType.NONE;
+        }
+        return configured == ReqResLogProperties.LogType.JSON ? ReqResLogProperties.LogType.SUMMARY : configured;
+    }
+
+    /**
+     * @param configured 配置的异常日志记录类别
+     * @return 当前模式下实际使用的记录类别
+     */
+    public ReqResLogProperties.ThrowableLogType effectiveThrowableLogType(ReqResLogProperties.ThrowableLogType configured) {
+        if (mode != Mode.NORMAL && configured == ReqResLogProperties.ThrowableLogType.STACK) {
+            return ReqResLogProperties.ThrowableLogType.MESSAGE;
+        }
+        return configured;
+    }
+
+    /**
+     * 采集当前的各个信号
+     *
+     * @return 信号
+     */
+    public synchronized Signals sample() {
+        long now = System.nanoTime();
+        long elapsedMillis = lastSampleNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - lastSampleNanos);
+        lastSampleNanos = now;
+        return new Signals(sampleCpu(), sampleGc(elapsedMillis), sampleQueue(), sampleP99Ratio());
+    }
+
+    /**
+     * 根据信号决定是否切换模式
+     *
+     * @param signals 信号
+     * @return 切换之后的模式
+     */
+    public synchronized Mode update(Signals signals) {
+        lastSignals = signals;
+        double pressure = pressureOf(signals);
+        Mode current = mode;
+        if (pressure >= 1) {
+            calmTicks = 0;
+            if (++pressureTicks >= stepDownTicks && current != Mode.MINIMAL) {
+                pressureTicks = 0;
+                transition(current, Mode.values()[current.ordinal() + 1], pressure, signals);
+            }
+        } else if (pressure < recoveryRatio) {
+            pressureTicks = 0;
+            if (++calmTicks >= stepUpTicks && current != Mode.NORMAL) {
+                calmTicks = 0;
+                transition(current, Mode.values()[current.ordinal() - 1], pressure, signals);
+            }
+        } else {
+            pressureTicks = 0;
+            calmTicks = 0;
+        }
+        return mode;
+    }
+
+    private void transition(Mode from, Mode to, double pressure, Signals signals) {
+        mode = to;
+        modeSinceMillis = System.currentTimeMillis();
+        log.warn("ReqResLog load shedding {} -> {}, pressure={} {}", from, to, String.format("%.2f", pressure), signals);
+    }
+
+    private double pressureOf(Signals signals) {
+        double pressure = 0;
+        if (cpuThreshold > 0) {
+            pressure = Math.max(pressure, signals.cpu / cpuThreshold);
+        }
+        if (gcThreshold > 0) {
+            pressure = Math.max(pressure, signals.gc / gcThreshold);
+        }
+        if (queueThreshold > 0) {
+            pressure = Math.max(pressure, signals.queue / queueThreshold);
+        }
+        if (p99Factor > 0) {
+            pressure = Math.max(pressure, signals.p99Ratio / p99Factor);
+        }
+        return pressure;
+    }
+
+    @SuppressWarnings("restriction")
+    private double sampleCpu() {
+        if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) operatingSystemMXBean).getProcessCpuLoad();
+            if (load >= 0) {
+                return load;
+            }
+        }
+        double loadAverage = operatingSystemMXBean.getSystemLoadAverage();
+        return loadAverage < 0 ? 0 : loadAverage / operatingSystemMXBean.getAvailableProcessors();
+    }
+
+    private double sampleGc(long elapsedMillis) {
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeans) {
+            gcMillis += Math.max(0, garbageCollectorMXBean.getCollectionTime());
+        }
+        long previous = lastGcMillis;
+        lastGcMillis = gcMillis;
+        if (previous < 0 || elapsedMillis <= 0) {
+            return 0;
+        }
+        return Math.min(1, (double) (gcMillis - previous) / elapsedMillis);
+    }
+
+    private double sampleQueue() {
+        if (asyncLoggerService == null) {
+            return 0;
+        }
+        return (double) asyncLoggerService.getQueueDepth() / asyncLoggerService.getQueueCapacity();
+    }
+
+    /**
+     * @return 各方法本区间p99与其基线之比的最大值
+     */
+    private double sampleP99Ratio() {
+        if (reqResLogMetrics == null) {
+            return 0;
+        }
+        double maxRatio = 0;
+        for (MethodMetrics methodMetrics : reqResLogMetrics.getAllMethodMetrics()) {
+            MethodLatency methodLatency = methodLatencies.computeIfAbsent(methodMetrics, k -> new MethodLatency());
+            LatencyHistogram.Snapshot snapshot = methodMetrics.getLatency().snapshot();
+            LatencyHistogram.Snapshot interval = snapshot.minus(methodLatency.previous);
+            methodLatency.previous = snapshot;
+            if (interval.getTotalCount() < MIN_LATENCY_SAMPLES) {
+                continue;
+            }
+            long p99 = Math.max(1, interval.getValueAtPercentile(99));
+            if (methodLatency.baseline <= 0) {
+                methodLatency.baseline = p99;
+                continue;
+            }
+            double ratio = p99 / methodLatency.baseline;
+            maxRatio = Math.max(maxRatio, ratio);
+            //只在没有明显变慢时更新基线，避免基线跟着一起上涨
+            if (p99Factor <= 0 || ratio < p99Factor) {
+                methodLatency.baseline += (p99 - methodLatency.baseline) * BASELINE_WEIGHT;
+            }
+        }
+        return maxRatio;
+    }
+
+    /**
+     * 某一次采集到的信号
+     */
+    @Getter
+    public static final class Signals {
+
+        /**
+         * 进程CPU使用率 0~1
+         */
+        private final double cpu;
+
+        /**
+         * 采集区间内GC耗时占比 0~1
+         */
+        private final double gc;
+
+        /**
+         * 异步日志队列使用率 0~1
+         */
+        private final double queue;
+
+        /**
+         * 各方法p99耗时与其基线之比的最大值
+         */
+        private final double p99Ratio;
+
+        public Signals(double cpu, double gc, double queue, double p99Ratio) {
+            this.cpu = cpu;
+            this.gc = gc;
+            this.queue = queue;
+            this.p99Ratio = p99Ratio;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cpu=%.2f gc=%.2f queue=%.2f p99Ratio=%.2f", cpu, gc, queue, p99Ratio);
+        }
+    }
+
+    private static final class MethodLatency {
+
+        private LatencyHistogram.Snapshot previous;
+
+        private double baseline;
+    }
+
+}
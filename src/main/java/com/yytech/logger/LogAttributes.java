@@ -37,6 +37,12 @@ public class LogAttributes {
      */
     private String title;
 
+    /**
+     * 预先计算好的日志前缀，格式为 类名.方法名[ title]
+     * 为空时由targetClassSimpleName、methodName与title拼接
+     */
+    private String logPrefix;
+
     /**
      * 当前context日志记录使用的traceId
      */
@@ -76,6 +82,28 @@ public class LogAttributes {
      */
     private String[] reqParamLogs;
 
+    /**
+     * 是否为流式日志模式
+     * 为true时reqParamLogs与resParamLog不会被预先计算，而是由LoggerService根据reqArgs与response直接流式写出
+     */
+    private boolean streaming;
+
+    /**
+     * 生效的请求数据记录类别
+     */
+    private ReqResLogProperties.LogType reqLogType;
+
+    /**
+     * 每个请求参数记录的最大字节数，小于等于0时不限制
+     */
+    private int maxReqLength;
+
+    /**
+     * 方法实际的请求参数，仅在streaming为true且方法没有参数级配置时有内容
+     * reqParamMarks和reqArgs均不为null时，他们的length是一样的
+     */
+    private Object[] reqArgs;
+
     /**
      * res的标记
      */
@@ -87,12 +115,39 @@ public class LogAttributes {
      */
     private String resParamLog;
 
+    /**
+     * 生效的返回数据记录类别
+     */
+    private ReqResLogProperties.LogType resLogType;
+
+    /**
+     * 返回数据记录的最大字节数，小于等于0时不限制
+     */
+    private int maxResLength;
+
+    /**
+     * 方法实际的返回值，仅在streaming为true且方法正常返回后才有内容
+     */
+    private Object response;
+
     /**
      * 异常message或者stack
      * 方法抛出异常后且throwableLogEnable为true时，此值才有内容
      */
     private String throwableLog;
 
+    /**
+     * 被代理的原方法抛出的throwable
+     * 方法抛出异常后此值才有内容
+     */
+    private Throwable throwable;
+
+    /**
+     * 被代理的原方法执行耗时(纳秒)，由System.nanoTime()计算
+     * 方法执行完成后此值才有内容
+     */
+    private long elapsedNanos;
+
     /**
      * 正在执行的方法上的注解内容
      * 如需访问生效配置，可以注入ReqResLogProperties，并用里面的方法获取生效配置
@@ -100,4 +155,41 @@ public class LogAttributes {
      */
     private ReqResLog reqResLogAnnotation;
 
+    /**
+     * 复制一份日志参数
+     * 数组与请求参数、返回值等对象只复制引用
+     *
+     * @return 新的日志参数
+     */
+    public LogAttributes copy() {
+        LogAttributes copy = new LogAttributes();
+        copy.logLevel = logLevel;
+        copy.throwableLogLevel = throwableLogLevel;
+        copy.logEnable = logEnable;
+        copy.throwableLogEnable = throwableLogEnable;
+        copy.title = title;
+        copy.logPrefix = logPrefix;
+        copy.traceId = traceId;
+        copy.traceIdEntry = traceIdEntry;
+        copy.targetClassSimpleName = targetClassSimpleName;
+        copy.targetClassTypeName = targetClassTypeName;
+        copy.methodName = methodName;
+        copy.reqParamMarks = reqParamMarks;
+        copy.reqParamLogs = reqParamLogs;
+        copy.streaming = streaming;
+        copy.reqLogType = reqLogType;
+        copy.maxReqLength = maxReqLength;
+        copy.reqArgs = reqArgs;
+        copy.resParamMark = resParamMark;
+        copy.resParamLog = resParamLog;
+        copy.resLogType = resLogType;
+        copy.maxResLength = maxResLength;
+        copy.response = response;
+        copy.throwableLog = throwableLog;
+        copy.throwable = throwable;
+        copy.elapsedNanos = elapsedNanos;
+        copy.reqResLogAnnotation = reqResLogAnnotation;
+        return copy;
+    }
+
 }
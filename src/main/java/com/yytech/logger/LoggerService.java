@@ -28,6 +28,62 @@ public interface LoggerService {
      */
     void processThrowableLog(LogAttributes logAttributes);
 
+    /**
+     * 合并模式下，方法执行完成后处理并记录整次调用的日志
+     * 日志参数中同时包含请求数据、返回数据或异常信息，以及方法执行耗时elapsedNanos
+     * 方法正常返回时throwable为null
+     * -------------
+     * 默认实现依次调用processReqLog与processResLog/processThrowableLog，与非合并模式输出一致
+     *
+     * @param logAttributes 日志参数
+     */
+    default void processInvocationLog(LogAttributes logAttributes) {
+        if (logAttributes.isLogEnable()) {
+            processReqLog(logAttributes);
+        }
+        if (logAttributes.getThrowable() == null) {
+            processResLog(logAttributes);
+        } else if (logAttributes.isThrowableLogEnable()) {
+            processThrowableLog(logAttributes);
+        }
+    }
+
+    /**
+     * 入口方法(traceIdEntry=true)生成了新的traceId，一个trace开始
+     * -------------
+     * 默认实现不做任何处理
+     *
+     * @param traceId traceId
+     */
+    default void traceStarted(String traceId) {
+    }
+
+    /**
+     * 入口方法执行完成(异步返回值为实际结果完成)，一个trace结束
+     * 这个trace内的日志都已经交给LoggerService处理
+     * -------------
+     * 默认实现不做任何处理
+     *
+     * @param traceId      traceId
+     * @param elapsedNanos 入口方法执行耗时
+     * @param throwable    入口方法的throwable，正常完成时为null
+     */
+    default void traceFinished(String traceId, long elapsedNanos, Throwable throwable) {
+    }
+
+    /**
+     * 日志是否在其他线程或之后才格式化，例如异步日志与尾部采样
+     * 为true时流式日志模式不生效，请求参数与返回值在调用线程预先转换成字符串，
+     * 避免后台线程与业务线程并发读取参数，或记录的是被修改之后的参数
+     * -------------
+     * 默认实现返回false
+     *
+     * @return 是否延迟格式化日志
+     */
+    default boolean isDeferredFormatting() {
+        return false;
+    }
+
     /**
      * 判断日志等级是否可用
      *
@@ -0,0 +1,518 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.logger.util.StringUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按trace缓冲的日志记录实现类(尾部采样)
+ * 入口方法(traceIdEntry=true)生成traceId后，这个trace内的所有日志先放入内存中的缓冲区
+ * 入口方法完成时，如果trace内发生过异常或入口方法耗时达到latencyBudget，把缓冲的日志按顺序交给被包装的LoggerService记录
+ * 否则直接丢弃，这样只用很少的I/O就能保留有问题的请求的完整上下文
+ * -------------
+ * 内存限制：
+ * 同时缓冲的trace数达到maxTraces时，新的trace不再缓冲，日志直接记录
+ * 单个trace缓冲的日志数达到maxRecordsPerTrace，或所有trace缓冲日志的估算字节数达到maxBufferedBytes时，
+ * 先丢弃这个trace中最早的普通日志腾出空间，没有可以丢弃的日志时丢弃新的普通日志，并计数
+ * 异常日志与入口方法自己的日志总是保留(可以超过上限)，这样被记录的trace总有开头的请求与结尾的返回/异常
+ * 缓冲的是LogAttributes的副本，其中的请求参数与返回值都是已经生成的字符串，字节数按这些字符串计算，
+ * 调用线程之后再修改LogAttributes或请求参数、返回值对象不会影响缓冲的日志，也不会超过估算的大小
+ * 开始时间早于maxTraceAge的trace会被驱逐，发生过异常或耗时已达到latencyBudget的按需要记录处理，其余丢弃
+ * -------------
+ * 注意：
+ * 1. 与AsyncLoggerService一样isDeferredFormatting为true，切面不会传入流式日志模式的参数引用；
+ *    自定义调用方传入的请求参数与返回值引用在缓冲时按reqLogType/resLogType转换成字符串
+ * 2. 使用异步日志时应该由TailSamplingLoggerService包装AsyncLoggerService，而不是反过来
+ * 3. 入口方法完成之后才记录的日志(如入口方法没有等待的异步任务)不再缓冲，直接记录
+ * 4. 关闭容器时调用{@link #shutdown()}：仍在缓冲中的trace按驱逐的规则处理，然后关闭被包装的AsyncLoggerService
+ */
+@Slf4j
+public class TailSamplingLoggerService implements LoggerService {
+
+    private static final int REQ = 0;
+
+    private static final int RES = 1;
+
+    private static final int THROWABLE = 2;
+
+    private static final int INVOCATION = 3;
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 每条缓冲的日志固定的估算字节数：LogAttributes与Record对象
+     */
+    private static final long RECORD_OVERHEAD_BYTES = 256;
+
+    private static final long STRING_OVERHEAD_BYTES = 40;
+
+    /**
+     * 异常引用的估算字节数
+     */
+    private static final long THROWABLE_REFERENCE_BYTES = 4096;
+
+    private final LoggerService delegate;
+
+    private final long latencyBudgetNanos;
+
+    private final int maxTraces;
+
+    private final int maxRecordsPerTrace;
+
+    private final long maxBufferedBytes;
+
+    private final long maxTraceAgeNanos;
+
+    private final Map<String, TraceBuffer> traceBuffers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger bufferedRecords = new AtomicInteger();
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+    private final LongAdder flushedTraceCount = new LongAdder();
+
+    private final LongAdder discardedTraceCount = new LongAdder();
+
+    private final LongAdder evictedTraceCount = new LongAdder();
+
+    private final LongAdder unbufferedTraceCount = new LongAdder();
+
+    private final LongAdder droppedRecordCount = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate           实际格式化并写出日志的LoggerService
+     * @param latencyBudgetMs    入口方法耗时达到这个值(毫秒)时记录整个trace
+     * @param maxTraces          同时缓冲的最大trace数
+     * @param maxRecordsPerTrace 单个trace最多缓冲的日志数
+     * @param maxBufferedKb      所有trace缓冲日志的最大估算大小(KB)
+     * @param maxTraceAgeMs      trace最长缓冲时间(毫秒)，超过后被驱逐
+     */
+    public TailSamplingLoggerService(LoggerService delegate, long latencyBudgetMs, int maxTraces,
+                                     int maxRecordsPerTrace, long maxBufferedKb, long maxTraceAgeMs) {
+        this.delegate = delegate;
+        this.latencyBudgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
+        this.maxTraces = Math.max(1, maxTraces);
+        this.maxRecordsPerTrace = Math.max(1, maxRecordsPerTrace);
+        this.maxBufferedBytes = Math.max(1, maxBufferedKb) * 1024;
+        this.maxTraceAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxTraceAgeMs);
+    }
+
+    @Override
+    public void processReqLog(LogAttributes logAttributes) {
+        buffer(REQ, logAttributes);
+    }
+
+    @Override
+    public void processResLog(LogAttributes logAttributes) {
+        buffer(RES, logAttributes);
+    }
+
+    @Override
+    public void processThrowableLog(LogAttributes logAttributes) {
+        buffer(THROWABLE, logAttributes);
+    }
+
+    @Override
+    public void processInvocationLog(LogAttributes logAttributes) {
+        buffer(INVOCATION, logAttributes);
+    }
+
+    @Override
+    public boolean isLogLevelEnable(ReqResLogProperties.Level level) {
+        return delegate.isLogLevelEnable(level);
+    }
+
+    /**
+     * LogAttributes在trace结束后才交给被包装的LoggerService格式化
+     */
+    @Override
+    public boolean isDeferredFormatting() {
+        return true;
+    }
+
+    @Override
+    public void traceStarted(String traceId) {
+        if (StringUtil.isEmpty(traceId) || !running) {
+            return;
+        }
+        long now = System.nanoTime();
+        long lastSweep = lastSweepNanos.get();
+        if (now - lastSweep >= SWEEP_INTERVAL_NANOS && lastSweepNanos.compareAndSet(lastSweep, now)) {
+            evictExpired(now);
+        }
+        if (traceBuffers.size() >= maxTraces) {
+            unbufferedTraceCount.increment();
+            return;
+        }
+        traceBuffers.put(traceId, new TraceBuffer(traceId, now));
+    }
+
+    @Override
+    public void traceFinished(String traceId, long elapsedNanos, Throwable throwable) {
+        if (StringUtil.isEmpty(traceId)) {
+            return;
+        }
+        TraceBuffer traceBuffer = traceBuffers.remove(traceId);
+        if (traceBuffer == null) {
+            return;
+        }
+        List<Record> records = traceBuffer.close();
+        if (records == null) {
+            return;
+        }
+        if (throwable != null || traceBuffer.errored || elapsedNanos >= latencyBudgetNanos) {
+            flush(traceBuffer, records);
+        } else {
+            discardedTraceCount.increment();
+        }
+    }
+
+    /**
+     * @return 实际格式化并写出日志的LoggerService
+     */
+    public LoggerService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return 因发生异常或超过latencyBudget而被记录的trace数量
+     */
+    public long getFlushedTraceCount() {
+        return flushedTraceCount.sum();
+    }
+
+    /**
+     * @return 正常完成而被丢弃的trace数量
+     */
+    public long getDiscardedTraceCount() {
+        return discardedTraceCount.sum();
+    }
+
+    /**
+     * @return 超过最长缓冲时间被驱逐的trace数量
+     */
+    public long getEvictedTraceCount() {
+        return evictedTraceCount.sum();
+    }
+
+    /**
+     * @return 因缓冲的trace数达到上限而没有缓冲的trace数量
+     */
+    public long getUnbufferedTraceCount() {
+        return unbufferedTraceCount.sum();
+    }
+
+    /**
+     * @return 因超过缓冲上限而被丢弃的日志数量
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.sum();
+    }
+
+    /**
+     * @return 当前缓冲中的trace数量
+     */
+    public int getBufferedTraceCount() {
+        return traceBuffers.size();
+    }
+
+    /**
+     * @return 当前缓冲中的日志数量
+     */
+    public int getBufferedRecordCount() {
+        return bufferedRecords.get();
+    }
+
+    /**
+     * @return 当前缓冲中日志的估算字节数
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * 驱逐超过最长缓冲时间的trace
+     *
+     * @param now 当前的System.nanoTime()
+     */
+    public void evictExpired(long now) {
+        evict(now, maxTraceAgeNanos);
+    }
+
+    /**
+     * 停止缓冲新的trace，仍在缓冲中的trace发生过异常或耗时已达到latencyBudget的记录，其余丢弃
+     * 被包装的是AsyncLoggerService时再调用其shutdown方法写完队列中的日志
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long flushed = flushedTraceCount.sum();
+        long discarded = discardedTraceCount.sum();
+        evict(System.nanoTime(), 0);
+        flushed = flushedTraceCount.sum() - flushed;
+        discarded = discardedTraceCount.sum() - discarded;
+        if (flushed > 0 || discarded > 0) {
+            log.warn("TailSamplingLoggerService shutdown, {} open traces flushed, {} discarded", flushed, discarded);
+        }
+        if (delegate instanceof AsyncLoggerService) {
+            ((AsyncLoggerService) delegate).shutdown();
+        }
+    }
+
+    private void evict(long now, long maxAgeNanos) {
+        Iterator<TraceBuffer> iterator = traceBuffers.values().iterator();
+        while (iterator.hasNext()) {
+            TraceBuffer traceBuffer = iterator.next();
+            long age = now - traceBuffer.startNanos;
+            if (age < maxAgeNanos) {
+                continue;
+            }
+            iterator.remove();
+            List<Record> records = traceBuffer.close();
+            if (records == null) {
+                continue;
+            }
+            evictedTraceCount.increment();
+            if (traceBuffer.errored || age >= latencyBudgetNanos) {
+                flush(traceBuffer, records);
+            } else {
+                discardedTraceCount.increment();
+            }
+        }
+    }
+
+    private void buffer(int kind, LogAttributes logAttributes) {
+        String traceId = logAttributes.getTraceId();
+        TraceBuffer traceBuffer = traceId == null ? null : traceBuffers.get(traceId);
+        if (traceBuffer == null || !traceBuffer.add(kind, logAttributes)) {
+            dispatch(kind, logAttributes);
+        }
+    }
+
+    private void flush(TraceBuffer traceBuffer, List<Record> records) {
+        flushedTraceCount.increment();
+        for (Record record : records) {
+            dispatch(record.kind, record.logAttributes);
+        }
+        if (traceBuffer.dropped > 0) {
+            log.warn("TailSamplingLoggerService trace {} exceeded buffer limit, {} logs dropped",
+                    traceBuffer.traceId, traceBuffer.dropped);
+        }
+    }
+
+    private void dispatch(int kind, LogAttributes logAttributes) {
+        try {
+            if (kind == REQ) {
+                delegate.processReqLog(logAttributes);
+            } else if (kind == RES) {
+                delegate.processResLog(logAttributes);
+            } else if (kind == THROWABLE) {
+                delegate.processThrowableLog(logAttributes);
+            } else {
+                delegate.processInvocationLog(logAttributes);
+            }
+        } catch (Throwable e) {
+            log.error("TailSamplingLoggerService dispatch", e);
+        }
+    }
+
+    /**
+     * 一个trace缓冲的日志，同一个trace的日志可能来自不同的线程
+     */
+    private final class TraceBuffer {
+
+        private final String traceId;
+
+        private final long startNanos;
+
+        private List<Record> records = new ArrayList<>();
+
+        private boolean errored;
+
+        private int dropped;
+
+        private TraceBuffer(String traceId, long startNanos) {
+            this.traceId = traceId;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * @return false表示已经完成，这条日志需要直接记录
+         */
+        private synchronized boolean add(int kind, LogAttributes logAttributes) {
+            if (records == null) {
+                return false;
+            }
+            boolean throwable = kind == THROWABLE || logAttributes.getThrowable() != null;
+            if (throwable) {
+                errored = true;
+            }
+            LogAttributes snapshot = snapshot(logAttributes);
+            Record record = new Record(kind, snapshot, estimateBytes(snapshot),
+                    throwable || logAttributes.isTraceIdEntry());
+            //超过上限时先丢弃这个trace中最早的普通日志
+            boolean full = isFull(record.bytes);
+            while (full && dropOldestDroppable()) {
+                full = isFull(record.bytes);
+            }
+            if (full && !record.kept) {
+                dropped++;
+                droppedRecordCount.increment();
+                return true;
+            }
+            records.add(record);
+            bufferedRecords.incrementAndGet();
+            bufferedBytes.addAndGet(record.bytes);
+            return true;
+        }
+
+        private boolean isFull(long bytes) {
+            return records.size() >= maxRecordsPerTrace || bufferedBytes.get() + bytes > maxBufferedBytes;
+        }
+
+        /**
+         * @return 是否丢弃了一条日志
+         */
+        private boolean dropOldestDroppable() {
+            for (int i = 0; i < records.size(); i++) {
+                Record record = records.get(i);
+                if (!record.kept) {
+                    records.remove(i);
+                    bufferedRecords.decrementAndGet();
+                    bufferedBytes.addAndGet(-record.bytes);
+                    dropped++;
+                    droppedRecordCount.increment();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return 缓冲的日志，之后的日志不再缓冲；已经完成时返回null
+         */
+        private synchronized List<Record> close() {
+            List<Record> closed = records;
+            if (closed == null) {
+                return null;
+            }
+            records = null;
+            long bytes = 0;
+            for (Record record : closed) {
+                bytes += record.bytes;
+            }
+            bufferedRecords.addAndGet(-closed.size());
+            bufferedBytes.addAndGet(-bytes);
+            return closed;
+        }
+    }
+
+    /**
+     * 复制需要缓冲的日志参数，请求参数与返回值引用转换成字符串
+     *
+     * @param logAttributes 日志参数
+     * @return 缓冲的日志参数
+     */
+    private static LogAttributes snapshot(LogAttributes logAttributes) {
+        LogAttributes snapshot = logAttributes.copy();
+        if (snapshot.getReqParamMarks() != null) {
+            snapshot.setReqParamMarks(snapshot.getReqParamMarks().clone());
+        }
+        Object[] reqArgs = snapshot.getReqArgs();
+        if (reqArgs != null) {
+            String[] reqParamLogs = new String[reqArgs.length];
+            for (int i = 0; i < reqArgs.length; i++) {
+                reqParamLogs[i] = render(snapshot.getReqLogType(), reqArgs[i], snapshot.getMaxReqLength());
+            }
+            snapshot.setReqParamLogs(reqParamLogs);
+            snapshot.setReqArgs(null);
+        } else if (snapshot.getReqParamLogs() != null) {
+            snapshot.setReqParamLogs(snapshot.getReqParamLogs().clone());
+        }
+        if (snapshot.getResponse() != null) {
+            snapshot.setResParamLog(render(snapshot.getResLogType(), snapshot.getResponse(), snapshot.getMaxResLength()));
+            snapshot.setResponse(null);
+        }
+        snapshot.setStreaming(false);
+        return snapshot;
+    }
+
+    private static String render(ReqResLogProperties.LogType logType, Object object, int maxLength) {
+        if (object == null) {
+            return null;
+        }
+        try {
+            if (logType == ReqResLogProperties.LogType.TO_STRING) {
+                return ReqResLogUtil.truncate(object.toString(), maxLength);
+            } else if (logType == ReqResLogProperties.LogType.SUMMARY) {
+                return ReqResLogUtil.truncate(ReqResLogUtil.summarize(object), maxLength);
+            } else if (logType == ReqResLogProperties.LogType.NONE) {
+                return null;
+            }
+            return ReqResLogUtil.toJsonWithoutNull(object, maxLength);
+        } catch (Throwable e) {
+            return ReqResLogUtil.summarize(object);
+        }
+    }
+
+    /**
+     * @param logAttributes 缓冲的日志参数
+     * @return 缓冲这条日志的估算字节数
+     */
+    private static long estimateBytes(LogAttributes logAttributes) {
+        long bytes = RECORD_OVERHEAD_BYTES;
+        String[] reqParamLogs = logAttributes.getReqParamLogs();
+        if (reqParamLogs != null) {
+            for (String reqParamLog : reqParamLogs) {
+                bytes += stringBytes(reqParamLog);
+            }
+        }
+        bytes += stringBytes(logAttributes.getResParamLog());
+        bytes += stringBytes(logAttributes.getThrowableLog());
+        bytes += logAttributes.getThrowable() == null ? 0 : THROWABLE_REFERENCE_BYTES;
+        return bytes;
+    }
+
+    private static long stringBytes(String str) {
+        return str == null ? 0 : STRING_OVERHEAD_BYTES + 2L * str.length();
+    }
+
+    private static final class Record {
+
+        private final int kind;
+
+        private final LogAttributes logAttributes;
+
+        private final long bytes;
+
+        /**
+         * 异常日志与入口方法自己的日志，超过上限时也不丢弃
+         */
+        private final boolean kept;
+
+        private Record(int kind, LogAttributes logAttributes, long bytes, boolean kept) {
+            this.kind = kind;
+            this.logAttributes = logAttributes;
+            this.bytes = bytes;
+            this.kept = kept;
+        }
+    }
+
+}
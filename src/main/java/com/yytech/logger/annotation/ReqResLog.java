@@ -69,7 +69,8 @@ public @interface ReqResLog {
     /**
      * 请求数据记录类别
      * JSON：对象转换成json记录
-     * TO_STRING：用对象的toString方法记录
+     * TO_STRING：用对象的toString方法记录，不经过字段脱敏
+     * SUMMARY：不序列化也不调用toString，字符串、数字等记录值，集合/Map/数组记录大小，其他对象只记录类型名
      * NONE: 仅记录req行为，不记录req实际数据
      * -------------
      * 默认生效配置：JSON
@@ -81,7 +82,8 @@ public @interface ReqResLog {
     /**
      * 返回数据记录类别
      * JSON：对象转换成json记录
-     * TO_STRING：用对象的toString方法记录
+     * TO_STRING：用对象的toString方法记录，不经过字段脱敏
+     * SUMMARY：不序列化也不调用toString，字符串、数字等记录值，集合/Map/数组记录大小，其他对象只记录类型名
      * NONE: 仅记录res行为，不记录res实际数据
      * -------------
      * 默认生效配置：JSON
@@ -90,10 +92,45 @@ public @interface ReqResLog {
      */
     String resLogType() default "";
 
+    /**
+     * 每个请求参数记录的最大字节数
+     * 超过时立即停止序列化，只保留限制以内的内容，并追加 ...(truncated, N+ bytes) 标记
+     * 小于等于0表示使用全局配置
+     * -------------
+     * 默认生效配置：不限制
+     *
+     * @return maxReqLength
+     */
+    int maxReqLength() default -1;
+
+    /**
+     * 返回数据记录的最大字节数
+     * 超过时立即停止序列化，只保留限制以内的内容，并追加 ...(truncated, N+ bytes) 标记
+     * 小于等于0表示使用全局配置
+     * -------------
+     * 默认生效配置：不限制
+     *
+     * @return maxResLength
+     */
+    int maxResLength() default -1;
+
+    /**
+     * 日志记录模式
+     * SEPARATE：方法执行前记录一条请求日志，执行后记录一条返回日志或异常日志
+     * COMBINED：方法执行完成后只记录一条日志，同时包含请求数据、返回数据或异常信息以及方法执行耗时
+     * 备注：COMBINED模式下发生异常时，如果异常日志级别可用，整条日志使用throwableLogLevel记录
+     * -------------
+     * 默认生效配置：SEPARATE
+     *
+     * @return logMode
+     */
+    String logMode() default "";
+
     /**
      * 异常日志的记录方式
      * STACK：记录异常名字和异常堆栈
      * MESSAGE：记录异常名字和异常信息
+     * FINGERPRINT：记录限制深度、折叠代理帧的堆栈及异常指纹，相同指纹在时间窗口内只记录一次堆栈
      * NONE：不进行异常记录
      * -------------
      * 默认生效配置：STACK
@@ -114,6 +151,8 @@ public @interface ReqResLog {
     /**
      * 日志串联模式
      * UUID：使用uuid作为traceId串联每一条日志
+     * TIME：使用按时间有序的traceId(时间戳+节点号+序号)串联每一条日志
+     * TRACEPARENT：使用与W3C traceparent兼容的traceId串联每一条日志
      * METHOD：详情请见traceIdMethod属性注释
      * NONE：不用额外数据进行日志的串联
      * 备注：如果当前线程可以从TraceIdThreadLocal拿到非空traceId，则忽略配置属性，直接使用
@@ -129,6 +168,10 @@ public @interface ReqResLog {
      * 1.traceType为method
      * 2.请求参数个数大于等于1
      * 3.第一个请求参数包含该无参方法且有返回值
+     * -------------
+     * 也可以是以请求参数下标或名字开头的属性路径，如 arg1.header.requestId、request.header.requestId
+     * 路径的每一段依次按 无参方法 > getter > public字段 > Map.get 取值，任意一段为null时traceId为null
+     * 路径在第一次调用时编译为MethodHandle链并缓存，之后的调用不再有反射查找
      *
      * @return traceIdMethod
      */
@@ -149,4 +192,103 @@ public @interface ReqResLog {
      */
     boolean traceIdEntry() default false;
 
+    /**
+     * 采样率[0, 1]，按traceId的hash决定一次调用是否记录req/res日志
+     * 同一个traceId的调用总是一起保留或丢弃，没有traceId时按随机数采样
+     * 小于0(默认-1)表示使用全局配置；0表示这个方法不记录，1表示这个方法全部记录，都不受全局配置影响
+     * -------------
+     * 默认生效配置：1(全部记录)
+     *
+     * @return sampleRate
+     */
+    double sampleRate() default -1;
+
+    /**
+     * 这个方法每秒最多记录的req/res日志数(按调用计)，超过的调用在序列化请求参数之前被跳过，只计数
+     * 每10秒输出一行汇总：N calls suppressed in last 10000ms
+     * 0表示不限制，小于0表示使用全局配置
+     * -------------
+     * 默认生效配置：不限制
+     *
+     * @return maxLogsPerSecond
+     */
+    int maxLogsPerSecond() default -1;
+
+    /**
+     * 慢调用阈值(毫秒)，大于0时只记录慢调用或发生异常的调用的req/res日志
+     * 请求日志不再在方法执行前记录，而是在方法完成后，耗时达到阈值或发生异常时才生成并与返回/异常日志一起记录
+     * 小于0(默认-1)表示使用全局配置；0表示这个方法不开启，即使全局配置了慢调用阈值也每次调用都记录
+     * -------------
+     * 默认生效配置：不开启(每次调用都记录)
+     *
+     * @return slowThresholdMs
+     */
+    long slowThresholdMs() default -1;
+
+    /**
+     * 开启慢调用阈值时，方法执行前如何保存请求参数
+     * REFERENCE：只保存请求参数的引用，确定需要记录时才序列化，代价最小；方法执行中修改了请求参数时记录的是修改后的内容
+     * SNAPSHOT：方法执行前就序列化请求参数，只是推迟记录；适用于方法会修改请求参数的情况
+     * -------------
+     * 默认生效配置：REFERENCE
+     *
+     * @return slowCapture
+     */
+    String slowCapture() default "";
+
+    /**
+     * 开启飞行记录器时，这个方法保留最近调用的内存预算(KB)，按估算的每条记录大小换算成条数，0表示不记录这个方法
+     * -------------
+     * 默认生效配置：512
+     *
+     * @return flightRecorderBudgetKb
+     */
+    int flightRecorderBudgetKb() default -1;
+
+    /**
+     * 请求日志只记录的属性路径，为空时记录全部请求参数
+     * 路径的第一段是请求参数的名字或argN，之后每一段按 无参方法 > getter > public字段 > Map.get 取值
+     * 例如 {"order.id", "order.items.size()", "user.tier"}
+     * 请求日志记录为一个json对象：{"order.id":1001,"order.items.size()":3,"user.tier":"GOLD"}
+     * 路径在构建方法的日志记录计划时编译一次，不会序列化整个请求参数
+     * -------------
+     * 默认生效配置：空(记录全部请求参数)
+     *
+     * @return reqFields
+     */
+    String[] reqFields() default {};
+
+    /**
+     * 返回日志只记录的属性路径，为空时记录整个返回值
+     * 每一段都是返回值(异步返回值为实际结果)上的属性，例如 {"id", "items.size()"}
+     * -------------
+     * 默认生效配置：空(记录整个返回值)
+     *
+     * @return resFields
+     */
+    String[] resFields() default {};
+
+    /**
+     * 每次调用是否记录req/res日志的SpEL表达式，在序列化任何请求参数之前求值，为false时这次调用不记录req/res日志
+     * 可以使用 #参数名、#p0/#a0、#args，例如 #amount > 10000 or #user.flagged
+     * 不影响throwable日志；表达式求值失败时按true处理
+     * 表达式在构建方法的日志记录计划时解析一次，并编译成字节码
+     * -------------
+     * 默认生效配置：空(每次调用都记录)
+     *
+     * @return condition
+     */
+    String condition() default "";
+
+    /**
+     * 方法正常完成后是否不记录res日志的SpEL表达式，为true时这次调用不记录res日志(合并日志模式下不记录整条日志)
+     * 除condition中的变量外，还可以使用 #result(返回值)与 #elapsed(耗时毫秒数)，例如 #elapsed < 100
+     * 不影响throwable日志；表达式求值失败时按false处理
+     * -------------
+     * 默认生效配置：空
+     *
+     * @return unless
+     */
+    String unless() default "";
+
 }
@@ -0,0 +1,39 @@
+package com.yytech.logger.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 将此注释添加到请求参数或返回值类型的字段(或getter)上，记录json日志时该字段的值会被脱敏
+ * 脱敏在序列化过程中完成，不会修改对象本身，也不需要对序列化结果再做一次处理
+ * --------
+ * 脱敏方式：保留前keepFirst个字符与后keepLast个字符，中间替换为****
+ * 值的长度不超过keepFirst+keepLast时整体替换为****
+ * 字符串、数字、布尔值按字符串脱敏，其他类型(对象、集合等)整体替换为****
+ * --------
+ * 只对JSON类型的日志生效，TO_STRING类型的日志请自行在toString中处理
+ *
+ * @see com.yytech.logger.autoconfig.ReqResLogProperties#getMaskFields()
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ReqResLogMask {
+
+    /**
+     * 保留开头的字符数
+     * -------------
+     * 默认生效配置：0
+     *
+     * @return keepFirst
+     */
+    int keepFirst() default 0;
+
+    /**
+     * 保留结尾的字符数
+     * -------------
+     * 默认生效配置：0
+     *
+     * @return keepLast
+     */
+    int keepLast() default 0;
+
+}
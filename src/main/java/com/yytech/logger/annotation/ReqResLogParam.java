@@ -0,0 +1,46 @@
+package com.yytech.logger.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 将此注释添加到被ReqResLog注释的方法的请求参数上，单独指定这个参数的记录方式
+ * 只在构建方法的日志记录计划时解析一次
+ * --------
+ * 请求参数的声明类型为InputStream、HttpServletRequest、MultipartFile等不可序列化的类型时
+ * 即使没有此注释也只会记录 &lt;类型名&gt;，byte[]只会记录长度与CRC32
+ *
+ * @see com.yytech.logger.util.SkippedParamTypes
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.PARAMETER})
+public @interface ReqResLogParam {
+
+    /**
+     * 是否不记录此参数，为true时参数标记与参数数据都不会出现在请求日志中
+     * -------------
+     * 默认生效配置：false
+     *
+     * @return ignore
+     */
+    boolean ignore() default false;
+
+    /**
+     * 此参数记录的最大字节数，小于等于0时不限制
+     * -------------
+     * 默认生效配置：与方法的maxReqLength一致
+     *
+     * @return maxLength
+     */
+    int maxLength() default -1;
+
+    /**
+     * 是否只记录此参数的摘要而不序列化
+     * 摘要为 &lt;运行时类型名 size=集合大小&gt;、&lt;运行时类型名 length=长度&gt; 或 &lt;运行时类型名&gt;
+     * -------------
+     * 默认生效配置：false
+     *
+     * @return summary
+     */
+    boolean summary() default false;
+
+}
@@ -0,0 +1,169 @@
+package com.yytech.logger.aspect;
+
+import com.yytech.logger.util.StringUtil;
+import com.yytech.logger.util.TraceIdThreadLocal;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 异步返回值的支持
+ * 被代理方法返回CompletionStage/ListenableFuture/Callable/Mono/Flux时，返回值本身没有记录的意义
+ * 在异步结果完成时才回调，记录实际的结果或异常以及端到端的耗时
+ */
+final class AsyncResults {
+
+    private static final boolean REACTOR_PRESENT =
+            ClassUtils.isPresent("reactor.core.publisher.Flux", AsyncResults.class.getClassLoader());
+
+    /**
+     * 异步返回值的类别，根据方法声明的返回类型确定
+     */
+    enum Kind {
+        NONE, COMPLETION_STAGE, LISTENABLE_FUTURE, CALLABLE, MONO, FLUX;
+
+        /**
+         * @return 是否为Reactor的Publisher，这类返回值在被订阅时才开始执行
+         */
+        boolean isReactive() {
+            return this == MONO || this == FLUX;
+        }
+    }
+
+    /**
+     * 异步结果的回调
+     */
+    interface Completion {
+
+        /**
+         * Reactor的返回值被订阅时回调，其他类别不会回调
+         * 同一个返回值可能被多次或并发订阅，每次订阅的完成回调由返回的Completion处理
+         *
+         * @param traceId 订阅时生效的traceId，优先取自Reactor的Context
+         * @return 这次订阅完成时回调的Completion
+         */
+        default Completion onSubscribe(String traceId) {
+            return this;
+        }
+
+        /**
+         * 异步结果完成时回调
+         *
+         * @param startNanos 开始执行的System.nanoTime()，Reactor的返回值为订阅的时间
+         * @param result     实际结果，Flux为FluxSummary
+         * @param throwable  异常，正常完成时为null
+         */
+        void onComplete(long startNanos, Object result, Throwable throwable);
+    }
+
+    private AsyncResults() {
+    }
+
+    /**
+     * 根据方法声明的返回类型确定异步返回值的类别
+     *
+     * @param returnType 方法声明的返回类型
+     * @return 异步返回值的类别
+     */
+    static Kind kindOf(Class<?> returnType) {
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            return Kind.COMPLETION_STAGE;
+        }
+        if (ListenableFuture.class.isAssignableFrom(returnType)) {
+            return Kind.LISTENABLE_FUTURE;
+        }
+        if (Callable.class.isAssignableFrom(returnType)) {
+            return Kind.CALLABLE;
+        }
+        if (REACTOR_PRESENT) {
+            return ReactorSupport.kindOf(returnType);
+        }
+        return Kind.NONE;
+    }
+
+    /**
+     * 在异步结果完成时回调
+     * CompletionStage与ListenableFuture只注册回调，返回原对象；Callable、Mono与Flux返回包装后的对象
+     *
+     * @param response   被代理的原方法返回值
+     * @param logPlan    日志记录计划
+     * @param startNanos 方法开始执行时的System.nanoTime()
+     * @param traceId    调用时的traceId
+     * @param completion 异步结果的回调
+     * @return 返回给调用方的对象
+     */
+    @SuppressWarnings("unchecked")
+    static Object whenComplete(Object response, LogPlan logPlan, long startNanos, String traceId, Completion completion) {
+        Kind kind = logPlan.getAsyncKind();
+        if (kind == Kind.COMPLETION_STAGE && response instanceof CompletionStage) {
+            ((CompletionStage<Object>) response).whenComplete((result, throwable) ->
+                    completion.onComplete(startNanos, result, unwrap(throwable)));
+            return response;
+        }
+        if (kind == Kind.LISTENABLE_FUTURE && response instanceof ListenableFuture) {
+            ((ListenableFuture<Object>) response).addCallback(
+                    result -> completion.onComplete(startNanos, result, null),
+                    throwable -> completion.onComplete(startNanos, null, unwrap(throwable)));
+            return response;
+        }
+        if (kind == Kind.CALLABLE && response instanceof Callable) {
+            return new TracedCallable<>((Callable<Object>) response, startNanos, traceId, completion);
+        }
+        if (kind.isReactive()) {
+            return ReactorSupport.decorate(response, kind, logPlan.getFluxSampleSize(), traceId, completion);
+        }
+        return response;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * 执行时恢复traceId，并在执行完成时回调的Callable
+     */
+    private static final class TracedCallable<V> implements Callable<V> {
+
+        private final Callable<V> delegate;
+
+        private final long startNanos;
+
+        private final String traceId;
+
+        private final Completion completion;
+
+        private TracedCallable(Callable<V> delegate, long startNanos, String traceId, Completion completion) {
+            this.delegate = delegate;
+            this.startNanos = startNanos;
+            this.traceId = traceId;
+            this.completion = completion;
+        }
+
+        @Override
+        public V call() throws Exception {
+            boolean traceIdEntry = StringUtil.isEmpty(TraceIdThreadLocal.getTraceId())
+                    && TraceIdThreadLocal.setTraceId(traceId);
+            try {
+                V result = delegate.call();
+                completion.onComplete(startNanos, result, null);
+                return result;
+            } catch (Exception | Error e) {
+                completion.onComplete(startNanos, null, e);
+                throw e;
+            } finally {
+                if (traceIdEntry) {
+                    TraceIdThreadLocal.release();
+                }
+            }
+        }
+    }
+
+}
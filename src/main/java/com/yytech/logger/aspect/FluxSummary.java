@@ -0,0 +1,90 @@
+package com.yytech.logger.aspect;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.yytech.logger.util.BoundedCharWriter;
+import com.yytech.logger.util.ReqResLogUtil;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 被代理方法返回Flux时，代替返回值被记录的摘要
+ * -------------
+ * 按前N个元素json的平均字节数估算的全部元素字节数(estimatedBytes)在序列化成json时才计算，
+ * 直接使用前N个元素序列化的结果，不会重复序列化；只记录指标或不需要json日志时不会序列化任何元素
+ */
+@Getter
+@JsonSerialize(using = FluxSummary.Serializer.class)
+public final class FluxSummary {
+
+    /**
+     * 元素个数
+     */
+    private final long count;
+
+    /**
+     * 前N个元素
+     */
+    private final List<Object> first;
+
+    /**
+     * 是否被订阅方取消，未取消时为null
+     */
+    private final Boolean cancelled;
+
+    FluxSummary(long count, List<Object> first, boolean cancelled) {
+        this.count = count;
+        this.first = first;
+        this.cancelled = cancelled ? Boolean.TRUE : null;
+    }
+
+    @Override
+    public String toString() {
+        return "count:" + count + " first:" + first + (cancelled != null ? " cancelled" : "");
+    }
+
+    /**
+     * 输出count、estimatedBytes、first与cancelled，前N个元素各序列化一次，同时用于估算字节数
+     */
+    static final class Serializer extends StdSerializer<FluxSummary> {
+
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(FluxSummary.class);
+        }
+
+        @Override
+        public void serialize(FluxSummary value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            List<Object> first = value.getFirst();
+            String[] firstJsons = new String[first.size()];
+            long sampleBytes = 0;
+            for (int i = 0; i < firstJsons.length; i++) {
+                Object element = first.get(i);
+                firstJsons[i] = element == null ? "null" : ReqResLogUtil.toJsonWithoutNull(element);
+                sampleBytes += BoundedCharWriter.utf8Length(firstJsons[i]);
+            }
+            gen.writeStartObject();
+            gen.writeNumberField("count", value.getCount());
+            if (firstJsons.length > 0) {
+                gen.writeNumberField("estimatedBytes", sampleBytes * value.getCount() / firstJsons.length);
+            } else if (value.getCount() == 0) {
+                gen.writeNumberField("estimatedBytes", 0);
+            }
+            gen.writeArrayFieldStart("first");
+            for (String firstJson : firstJsons) {
+                gen.writeRawValue(firstJson);
+            }
+            gen.writeEndArray();
+            if (value.getCancelled() != null) {
+                gen.writeBooleanField("cancelled", true);
+            }
+            gen.writeEndObject();
+        }
+    }
+
+}
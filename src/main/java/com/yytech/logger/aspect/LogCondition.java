@@ -0,0 +1,261 @@
+package com.yytech.logger.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.*;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReqResLog的condition/unless表达式
+ * 每个方法只解析一次，并使用SpelCompilerMode.IMMEDIATE编译成字节码，之后的求值不再解释执行
+ * -------------
+ * 表达式中可以使用的变量：
+ * 1.#参数名(需要编译时保留参数名)、#p0/#a0(按下标)、#args(请求参数数组)
+ * 2.#result：返回值，只在unless中有值
+ * 3.#elapsed：耗时毫秒数，只在unless中有值
+ * 每次求值只创建一个很小的EvaluationContext，属性访问器、类型转换等都与其他调用共享
+ * -------------
+ * IMMEDIATE模式下编译后的表达式执行失败不会回退到解释执行(例如编译时的参数类型与之后传入的实现类不同)
+ * 所以第一次出现编译后执行失败时，改用解释执行的表达式并只输出一次warn日志
+ */
+@Slf4j
+final class LogCondition {
+
+    private final String expressionString;
+
+    private volatile Expression expression;
+
+    private final Map<String, Integer> parameterIndexes;
+
+    private final StandardEvaluationContext sharedContext;
+
+    private LogCondition(String expressionString, Expression expression, Map<String, Integer> parameterIndexes,
+                         StandardEvaluationContext sharedContext) {
+        this.expressionString = expressionString;
+        this.expression = expression;
+        this.parameterIndexes = parameterIndexes;
+        this.sharedContext = sharedContext;
+    }
+
+    /**
+     * 解析并编译表达式
+     *
+     * @param expressionString SpEL表达式
+     * @param parameterNames   方法请求参数名字，可以为null
+     * @param classLoader      编译表达式使用的ClassLoader
+     * @return 编译好的表达式
+     * @throws ParseException 表达式语法错误
+     */
+    static LogCondition compile(String expressionString, String[] parameterNames, ClassLoader classLoader) {
+        SpelExpressionParser parser = new SpelExpressionParser(
+                new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, classLoader));
+        Expression expression = parser.parseExpression(expressionString);
+        Map<String, Integer> parameterIndexes = new HashMap<>();
+        if (parameterNames != null) {
+            for (int i = 0; i < parameterNames.length; i++) {
+                parameterIndexes.put(parameterNames[i], i);
+            }
+        }
+        StandardEvaluationContext sharedContext = new StandardEvaluationContext();
+        //提前完成StandardEvaluationContext中的延迟初始化，之后只读，可以被多个线程共享
+        sharedContext.getPropertyAccessors();
+        sharedContext.getConstructorResolvers();
+        sharedContext.getMethodResolvers();
+        sharedContext.getTypeLocator();
+        sharedContext.getTypeConverter();
+        sharedContext.getTypeComparator();
+        sharedContext.getOperatorOverloader();
+        return new LogCondition(expressionString, expression, Collections.unmodifiableMap(parameterIndexes), sharedContext);
+    }
+
+    /**
+     * 调用前求值，用于condition
+     *
+     * @param args 方法实际的请求参数
+     * @param deft 求值失败时的结果
+     * @return 表达式的结果，求值失败时为deft
+     */
+    boolean matches(Object[] args, boolean deft) {
+        return evaluate(new CallContext(this, args, null, -1), deft);
+    }
+
+    /**
+     * 调用完成后求值，用于unless
+     *
+     * @param args         方法实际的请求参数
+     * @param result       返回值
+     * @param elapsedNanos 耗时纳秒数
+     * @param deft         求值失败时的结果
+     * @return 表达式的结果，求值失败时为deft
+     */
+    boolean matches(Object[] args, Object result, long elapsedNanos, boolean deft) {
+        return evaluate(new CallContext(this, args, result, TimeUnit.NANOSECONDS.toMillis(elapsedNanos)), deft);
+    }
+
+    private boolean evaluate(CallContext context, boolean deft) {
+        Expression current = expression;
+        try {
+            Boolean value = current.getValue(context, Boolean.class);
+            return value == null ? deft : value;
+        } catch (SpelEvaluationException e) {
+            if (e.getMessageCode() == SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                interpret(current, e);
+                return evaluate(context, deft);
+            }
+            log.warn("LogCondition evaluate Exception, expression:" + expressionString, e);
+            return deft;
+        } catch (RuntimeException e) {
+            log.warn("LogCondition evaluate Exception, expression:" + expressionString, e);
+            return deft;
+        }
+    }
+
+    /**
+     * 编译后的表达式执行失败时，改用解释执行的表达式，解释执行的表达式不会再出现编译后执行失败
+     *
+     * @param failed 执行失败的表达式
+     * @param e      编译后执行失败的异常
+     */
+    private synchronized void interpret(Expression failed, SpelEvaluationException e) {
+        if (expression != failed) {
+            //其他线程已经切换
+            return;
+        }
+        SpelExpressionParser parser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.OFF, null));
+        expression = parser.parseExpression(expressionString);
+        log.warn("LogCondition compiled expression failed, switched to interpreted mode, expression:" + expressionString, e);
+    }
+
+    String getExpressionString() {
+        return expressionString;
+    }
+
+    /**
+     * 一次求值的上下文，只保存本次调用的变量，其余内容委托给共享的StandardEvaluationContext
+     */
+    private static final class CallContext implements EvaluationContext {
+
+        private final LogCondition condition;
+
+        private final Object[] args;
+
+        private final Object result;
+
+        private final long elapsedMillis;
+
+        /**
+         * 表达式中赋值的变量，极少使用，需要时才创建
+         */
+        private Map<String, Object> assignedVariables;
+
+        private CallContext(LogCondition condition, Object[] args, Object result, long elapsedMillis) {
+            this.condition = condition;
+            this.args = args;
+            this.result = result;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            if (assignedVariables != null && assignedVariables.containsKey(name)) {
+                return assignedVariables.get(name);
+            }
+            Integer index = condition.parameterIndexes.get(name);
+            if (index != null) {
+                return args[index];
+            }
+            switch (name) {
+                case "args":
+                    return args;
+                case "result":
+                    return result;
+                case "elapsed":
+                    return elapsedMillis < 0 ? null : elapsedMillis;
+                default:
+                    return argByIndexName(name);
+            }
+        }
+
+        /**
+         * @return #p0/#a0形式的请求参数，不是这种形式时为null
+         */
+        private Object argByIndexName(String name) {
+            if (name.length() < 2 || (name.charAt(0) != 'p' && name.charAt(0) != 'a')) {
+                return null;
+            }
+            int index = 0;
+            for (int i = 1; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                index = index * 10 + (c - '0');
+            }
+            return index < args.length ? args[index] : null;
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            if (assignedVariables == null) {
+                assignedVariables = new HashMap<>();
+            }
+            assignedVariables.put(name, value);
+        }
+
+        @Override
+        public TypedValue getRootObject() {
+            return TypedValue.NULL;
+        }
+
+        @Override
+        public List<PropertyAccessor> getPropertyAccessors() {
+            return condition.sharedContext.getPropertyAccessors();
+        }
+
+        @Override
+        public List<ConstructorResolver> getConstructorResolvers() {
+            return condition.sharedContext.getConstructorResolvers();
+        }
+
+        @Override
+        public List<MethodResolver> getMethodResolvers() {
+            return condition.sharedContext.getMethodResolvers();
+        }
+
+        @Override
+        public BeanResolver getBeanResolver() {
+            return null;
+        }
+
+        @Override
+        public TypeLocator getTypeLocator() {
+            return condition.sharedContext.getTypeLocator();
+        }
+
+        @Override
+        public TypeConverter getTypeConverter() {
+            return condition.sharedContext.getTypeConverter();
+        }
+
+        @Override
+        public TypeComparator getTypeComparator() {
+            return condition.sharedContext.getTypeComparator();
+        }
+
+        @Override
+        public OperatorOverloader getOperatorOverloader() {
+            return condition.sharedContext.getOperatorOverloader();
+        }
+    }
+
+}
@@ -0,0 +1,550 @@
+package com.yytech.logger.aspect;
+
+import com.yytech.logger.LoggerService;
+import com.yytech.logger.annotation.ReqResLog;
+import com.yytech.logger.annotation.ReqResLogParam;
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.metrics.MethodMetrics;
+import com.yytech.logger.metrics.ReqResLogMetrics;
+import com.yytech.logger.recorder.FlightRecorder;
+import com.yytech.logger.recorder.MethodFlightRecorder;
+import com.yytech.logger.trace.RandomTraceIdGenerator;
+import com.yytech.logger.trace.TimeOrderedTraceIdGenerator;
+import com.yytech.logger.trace.TraceIdGenerator;
+import com.yytech.logger.trace.TraceSampler;
+import com.yytech.logger.trace.TraceparentTraceIdGenerator;
+import com.yytech.logger.util.FieldProjection;
+import com.yytech.logger.util.LogLevelVersion;
+import com.yytech.logger.util.LogRateLimiter;
+import com.yytech.logger.util.PropertyPath;
+import com.yytech.logger.util.StringUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.ParseException;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 某个(targetClass, method)的日志记录计划
+ * 把注解解析、生效配置解析、请求参数标记、日志前缀等只与方法本身相关的内容预先计算好
+ * 每个方法只构建一次，之后每次调用直接复用
+ * -------------
+ * 此对象构建完成后不可变，可以被多个线程安全的共享
+ * 唯一的例外是日志可用性的缓存，它在日志级别版本号变化后重新计算
+ */
+@Slf4j
+@Getter
+public final class LogPlan {
+
+    /**
+     * 被代理对象的实际类型
+     */
+    private final Class<?> targetClass;
+
+    /**
+     * targetClass上的实际方法
+     */
+    private final Method targetClassMethod;
+
+    /**
+     * 方法上的注解内容
+     */
+    private final ReqResLog annotation;
+
+    /**
+     * targetClass的simpleName
+     */
+    private final String targetClassSimpleName;
+
+    /**
+     * targetClass的typeName
+     */
+    private final String targetClassTypeName;
+
+    /**
+     * 方法名字
+     */
+    private final String methodName;
+
+    /**
+     * 生效的req/res日志级别
+     */
+    private final ReqResLogProperties.Level logLevel;
+
+    /**
+     * 生效的throwable日志级别
+     */
+    private final ReqResLogProperties.Level throwableLogLevel;
+
+    /**
+     * 生效的异常记录方式
+     */
+    private final ReqResLogProperties.ThrowableLogType throwableLogType;
+
+    /**
+     * 生效的请求数据记录类别
+     */
+    private final ReqResLogProperties.LogType reqLogType;
+
+    /**
+     * 生效的返回数据记录类别
+     */
+    private final ReqResLogProperties.LogType resLogType;
+
+    /**
+     * 每个请求参数记录的最大字节数，小于等于0时不限制
+     */
+    private final int maxReqLength;
+
+    /**
+     * 返回数据记录的最大字节数，小于等于0时不限制
+     */
+    private final int maxResLength;
+
+    /**
+     * 生效的日志串联模式
+     */
+    private final ReqResLogProperties.TraceType traceType;
+
+    /**
+     * 生效的日志title
+     */
+    private final String title;
+
+    /**
+     * 预先计算好的日志前缀，格式为 类名.方法名[ title]
+     */
+    private final String logPrefix;
+
+    /**
+     * 请求参数标记，reqLogType为NONE或者方法没有参数时为null
+     * 此数组会被所有调用共享，请勿修改
+     */
+    private final String[] reqParamMarks;
+
+    /**
+     * 与reqParamMarks一一对应的请求参数记录方式，所有参数都按默认方式记录时为null
+     * 此数组会被所有调用共享，请勿修改
+     */
+    private final ParamPolicy[] reqParamPolicies;
+
+    /**
+     * 请求参数的字段投影，没有配置reqFields或编译失败时为null
+     * 不为null时reqParamMarks只有一个空标记，对应整个投影结果
+     */
+    private final FieldProjection reqProjection;
+
+    /**
+     * 返回值的字段投影，没有配置resFields或编译失败时为null
+     */
+    private final FieldProjection resProjection;
+
+    /**
+     * 返回数据标记，resParamMark不为TYPE时为null
+     */
+    private final String resParamMark;
+
+    /**
+     * TraceType为METHOD时，从请求参数中获取traceId的属性路径，无法获取时为null
+     */
+    private final PropertyPath traceIdPath;
+
+    /**
+     * TraceType为UUID/TIME/TRACEPARENT时生成traceId的生成器，其他情况为null
+     */
+    private final TraceIdGenerator traceIdGenerator;
+
+    /**
+     * 是否可作为traceId的入口
+     */
+    private final boolean traceIdEntry;
+
+    /**
+     * 是否使用流式日志模式
+     */
+    private final boolean streaming;
+
+    /**
+     * 生效的日志记录模式
+     */
+    private final ReqResLogProperties.LogMode logMode;
+
+    /**
+     * 异步返回值的类别，不是异步返回值时为NONE
+     */
+    private final AsyncResults.Kind asyncKind;
+
+    /**
+     * 返回Flux时，返回日志中记录的前N个元素个数
+     */
+    private final int fluxSampleSize;
+
+    /**
+     * 采样率[0, 1]
+     */
+    private final double sampleRate;
+
+    /**
+     * 没有被采样的调用是否仍然记录throwable日志
+     */
+    private final boolean sampleThrowableBypass;
+
+    /**
+     * 每秒最多记录的req/res日志数，没有限制时为null
+     */
+    private final LogRateLimiter rateLimiter;
+
+    /**
+     * 慢调用阈值(纳秒)，小于0表示不开启，每次调用都记录req/res日志
+     */
+    private final long slowThresholdNanos;
+
+    /**
+     * 开启慢调用阈值时，方法执行前如何保存请求参数
+     */
+    private final ReqResLogProperties.SlowCapture slowCapture;
+
+    /**
+     * 每次调用是否记录req/res日志的表达式，没有配置或解析失败时为null
+     */
+    private final LogCondition condition;
+
+    /**
+     * 正常完成后是否不记录res日志的表达式，没有配置或解析失败时为null
+     */
+    private final LogCondition unless;
+
+    /**
+     * 方法调用指标，没有开启指标记录时为null
+     */
+    private final MethodMetrics methodMetrics;
+
+    /**
+     * 飞行记录器中这个方法的环形缓冲区，没有开启飞行记录器或这个方法不记录时为null
+     */
+    private final MethodFlightRecorder methodFlightRecorder;
+
+    /**
+     * 缓存的日志可用性，日志级别版本号变化时失效
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile EnableState enableState;
+
+    LogPlan(Class<?> targetClass, Method targetClassMethod, String[] parameterNames,
+            ReqResLogProperties reqResLogProperties, ReqResLogMetrics reqResLogMetrics, FlightRecorder flightRecorder,
+            boolean deferredFormatting) {
+        this.targetClass = targetClass;
+        this.targetClassMethod = targetClassMethod;
+        this.annotation = targetClassMethod.getAnnotation(ReqResLog.class);
+        this.targetClassSimpleName = targetClass.getSimpleName();
+        this.targetClassTypeName = targetClass.getTypeName();
+        this.methodName = targetClassMethod.getName();
+        this.logLevel = reqResLogProperties.getLevelWithDefault(annotation);
+        this.throwableLogLevel = reqResLogProperties.getThrowableLogLevelWithDefault(annotation);
+        this.throwableLogType = reqResLogProperties.getThrowableLogTypeWithDefault(annotation);
+        this.reqLogType = reqResLogProperties.getReqLogTypeWithDefault(annotation);
+        this.resLogType = reqResLogProperties.getResLogTypeWithDefault(annotation);
+        this.maxReqLength = reqResLogProperties.getMaxReqLengthWithDefault(annotation);
+        this.maxResLength = reqResLogProperties.getMaxResLengthWithDefault(annotation);
+        this.traceType = reqResLogProperties.getTraceTypeWithDefault(annotation);
+        this.title = reqResLogProperties.getTitleWithDefault(annotation);
+        this.traceIdEntry = annotation.traceIdEntry();
+        //异步日志等延迟格式化时参数引用会在其他线程或之后才被序列化，请求参数与返回值需要预先转换成字符串
+        this.streaming = reqResLogProperties.isStreamSerialization() && !deferredFormatting;
+        this.logMode = reqResLogProperties.getLogModeWithDefault(annotation);
+        this.asyncKind = AsyncResults.kindOf(targetClassMethod.getReturnType());
+        this.fluxSampleSize = reqResLogProperties.getFluxSampleSize();
+        this.sampleRate = reqResLogProperties.getSampleRateWithDefault(annotation);
+        this.sampleThrowableBypass = reqResLogProperties.isSampleThrowableBypass();
+        int maxLogsPerSecond = reqResLogProperties.getMaxLogsPerSecondWithDefault(annotation);
+        this.rateLimiter = maxLogsPerSecond <= 0 ? null
+                : new LogRateLimiter(targetClassSimpleName + "." + methodName, maxLogsPerSecond);
+        long slowThresholdMs = reqResLogProperties.getSlowThresholdMsWithDefault(annotation);
+        this.slowThresholdNanos = slowThresholdMs <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.slowCapture = reqResLogProperties.getSlowCaptureWithDefault(annotation);
+        this.methodMetrics = reqResLogMetrics == null ? null
+                : reqResLogMetrics.getMethodMetrics(targetClassTypeName, methodName);
+        this.methodFlightRecorder = flightRecorder == null ? null
+                : flightRecorder.getMethodRecorder(targetClassTypeName, methodName,
+                targetClassMethod.getParameterCount(), reqResLogProperties.getFlightRecorderBudgetKbWithDefault(annotation));
+
+        StringBuilder prefix = new StringBuilder(targetClassSimpleName).append(".").append(methodName);
+        if (StringUtil.isNotEmpty(title)) {
+            prefix.append(" ").append(title);
+        }
+        this.logPrefix = prefix.toString();
+
+        Class<?>[] parameterTypes = targetClassMethod.getParameterTypes();
+        ReqResLogProperties.ReqParamMark reqParamMark = reqResLogProperties.getReqParamMarkWithDefault(annotation);
+        this.reqProjection = reqLogType != ReqResLogProperties.LogType.NONE && parameterTypes.length > 0
+                ? compileProjection(annotation.reqFields(), parameterTypes, parameterNames, null) : null;
+        if (reqProjection != null) {
+            this.reqParamMarks = new String[]{""};
+            this.reqParamPolicies = null;
+        } else if (reqLogType != ReqResLogProperties.LogType.NONE && parameterTypes.length > 0) {
+            Annotation[][] parameterAnnotations = targetClassMethod.getParameterAnnotations();
+            List<String> marks = new ArrayList<>(parameterTypes.length);
+            List<ParamPolicy> policies = new ArrayList<>(parameterTypes.length);
+            boolean allDefault = true;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                ParamPolicy policy = ParamPolicy.resolve(i, parameterTypes[i],
+                        findParamAnnotation(parameterAnnotations[i]), maxReqLength);
+                if (policy == null) {
+                    allDefault = false;
+                    continue;
+                }
+                allDefault &= policy.isDefault(maxReqLength);
+                policies.add(policy);
+                if (reqParamMark == ReqResLogProperties.ReqParamMark.TYPE) {
+                    marks.add(parameterTypes[i].getSimpleName());
+                } else if (reqParamMark == ReqResLogProperties.ReqParamMark.NAME && parameterNames != null) {
+                    marks.add(parameterNames[i]);
+                } else {
+                    marks.add("");
+                }
+            }
+            this.reqParamMarks = marks.toArray(new String[0]);
+            this.reqParamPolicies = allDefault ? null : policies.toArray(new ParamPolicy[0]);
+        } else {
+            this.reqParamMarks = null;
+            this.reqParamPolicies = null;
+        }
+
+        Class<?> returnType = targetClassMethod.getReturnType();
+        this.resProjection = resLogType != ReqResLogProperties.LogType.NONE && returnType != void.class
+                ? compileProjection(annotation.resFields(), null, null,
+                asyncKind == AsyncResults.Kind.NONE ? returnType : Object.class)
+                : null;
+
+        ReqResLogProperties.ResParamMark resParamMark = reqResLogProperties.getResParamMarkWithDefault(annotation);
+        this.resParamMark = resParamMark == ReqResLogProperties.ResParamMark.TYPE
+                ? targetClassMethod.getReturnType().getSimpleName() : null;
+
+        this.condition = compileCondition(annotation.condition(), parameterNames, targetClass);
+        this.unless = compileCondition(annotation.unless(), parameterNames, targetClass);
+
+        this.traceIdGenerator = resolveTraceIdGenerator(traceType);
+        this.traceIdPath = traceType == ReqResLogProperties.TraceType.METHOD
+                ? compileTraceIdPath(parameterTypes, parameterNames, reqResLogProperties.getTraceIdMethodWithDefault(annotation))
+                : null;
+    }
+
+    /**
+     * 获取当前的日志可用性
+     * 日志级别没有变化时直接返回缓存的结果，不会产生任何对象分配
+     * 没有注册日志级别变化的监听时，缓存超过LogLevelVersion的revalidateInterval后重新判断
+     *
+     * @param loggerService 判断日志级别是否可用的LoggerService
+     * @return 日志可用性
+     */
+    EnableState getEnableState(LoggerService loggerService) {
+        EnableState state = this.enableState;
+        int version = LogLevelVersion.current();
+        if (state == null || state.version != version || LogLevelVersion.isExpired(state.checkedNanos)) {
+            boolean logEnable = loggerService.isLogLevelEnable(logLevel);
+            boolean throwableLogEnable = throwableLogType != ReqResLogProperties.ThrowableLogType.NONE
+                    && loggerService.isLogLevelEnable(throwableLogLevel);
+            state = new EnableState(version, LogLevelVersion.checkedNanos(), logEnable, throwableLogEnable);
+            this.enableState = state;
+        }
+        return state;
+    }
+
+    private static ReqResLogParam findParamAnnotation(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof ReqResLogParam) {
+                return (ReqResLogParam) annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取TraceType对应的traceId生成器
+     *
+     * @param traceType 日志串联模式
+     * @return traceId生成器，不需要生成traceId时为null
+     */
+    private static TraceIdGenerator resolveTraceIdGenerator(ReqResLogProperties.TraceType traceType) {
+        if (traceType == ReqResLogProperties.TraceType.UUID) {
+            return RandomTraceIdGenerator.INSTANCE;
+        }
+        if (traceType == ReqResLogProperties.TraceType.TIME) {
+            return TimeOrderedTraceIdGenerator.INSTANCE;
+        }
+        if (traceType == ReqResLogProperties.TraceType.TRACEPARENT) {
+            return TraceparentTraceIdGenerator.INSTANCE;
+        }
+        return null;
+    }
+
+    /**
+     * 编译从请求参数中获取traceId的属性路径
+     * 编译失败时只在构建计划时输出一次warn日志
+     *
+     * @param parameterTypes 方法请求参数类型
+     * @param parameterNames 方法请求参数名字
+     * @param traceIdMethod  获取traceId的属性路径
+     * @return 编译好的属性路径，无法获取时为null
+     */
+    private PropertyPath compileTraceIdPath(Class<?>[] parameterTypes, String[] parameterNames, String traceIdMethod) {
+        if (StringUtil.isEmpty(traceIdMethod) || parameterTypes.length == 0) {
+            return null;
+        }
+        try {
+            return PropertyPath.compile(traceIdMethod, parameterTypes, parameterNames);
+        } catch (IllegalArgumentException | SecurityException e) {
+            log.warn("LogPlan compileTraceIdPath Exception", e);
+            return null;
+        }
+    }
+
+    /**
+     * 编译reqFields/resFields字段投影
+     * 编译失败时只在构建计划时输出一次warn日志，之后按没有配置投影处理
+     *
+     * @param fields         属性路径
+     * @param parameterTypes 方法请求参数类型，编译返回值的投影时为null
+     * @param parameterNames 方法请求参数名字
+     * @param resultType     返回值的声明类型，编译请求参数的投影时为null
+     * @return 字段投影，没有配置或编译失败时为null
+     */
+    private FieldProjection compileProjection(String[] fields, Class<?>[] parameterTypes, String[] parameterNames,
+                                              Class<?> resultType) {
+        if (fields.length == 0) {
+            return null;
+        }
+        try {
+            return parameterTypes != null
+                    ? FieldProjection.compileForArgs(fields, parameterTypes, parameterNames)
+                    : FieldProjection.compileForResult(fields, resultType);
+        } catch (IllegalArgumentException | SecurityException e) {
+            log.warn("LogPlan compileProjection Exception", e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析并编译condition/unless表达式
+     * 解析失败时只在构建计划时输出一次warn日志
+     *
+     * @param expression     SpEL表达式
+     * @param parameterNames 方法请求参数名字
+     * @param targetClass    被代理对象的实际类型，使用它的ClassLoader编译表达式
+     * @return 编译好的表达式，没有配置或解析失败时为null
+     */
+    private LogCondition compileCondition(String expression, String[] parameterNames, Class<?> targetClass) {
+        if (StringUtil.isEmpty(expression)) {
+            return null;
+        }
+        try {
+            return LogCondition.compile(expression, parameterNames, targetClass.getClassLoader());
+        } catch (ParseException | IllegalStateException e) {
+            log.warn("LogPlan compileCondition Exception", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param traceId 本次调用的traceId
+     * @return 本次调用是否被采样
+     */
+    boolean isSampled(String traceId) {
+        return TraceSampler.isSampled(traceId, sampleRate);
+    }
+
+    /**
+     * 按maxLogsPerSecond获取记录本次调用的令牌
+     *
+     * @return 本次调用是否可以记录req/res日志
+     */
+    boolean tryAcquireLog() {
+        return rateLimiter == null || rateLimiter.tryAcquire();
+    }
+
+    /**
+     * @return 是否只记录慢调用或发生异常的调用的req/res日志
+     */
+    boolean isSlowOnly() {
+        return slowThresholdNanos >= 0;
+    }
+
+    /**
+     * @return 请求日志是否在方法完成后确定需要记录时才从请求参数生成
+     */
+    boolean isReqLogDeferred() {
+        return isSlowOnly() && slowCapture == ReqResLogProperties.SlowCapture.REFERENCE;
+    }
+
+    /**
+     * 合并日志模式的请求日志在方法完成后才记录，保存引用会记录方法修改后的参数，与slowCapture=SNAPSHOT一样需要预先生成
+     *
+     * @return 流式日志模式下请求参数是否可以只保存引用，在记录日志时再写出
+     */
+    boolean isReqArgsStreamable() {
+        return streaming && logMode != ReqResLogProperties.LogMode.COMBINED
+                && !(isSlowOnly() && slowCapture == ReqResLogProperties.SlowCapture.SNAPSHOT);
+    }
+
+    /**
+     * 本次调用是否需要记录req/res日志
+     *
+     * @param args 方法实际的请求参数
+     * @return 没有配置condition时为true
+     */
+    boolean isConditionMatched(Object[] args) {
+        return condition == null || condition.matches(args, true);
+    }
+
+    /**
+     * 本次调用正常完成后是否不记录res日志
+     *
+     * @param args         方法实际的请求参数
+     * @param result       返回值
+     * @param elapsedNanos 耗时纳秒数
+     * @return 没有配置unless时为false
+     */
+    boolean isUnlessMatched(Object[] args, Object result, long elapsedNanos) {
+        return unless != null && unless.matches(args, result, elapsedNanos, false);
+    }
+
+    /**
+     * 某个日志级别版本下的日志可用性
+     */
+    static final class EnableState {
+
+        private final int version;
+
+        private final long checkedNanos;
+
+        /**
+         * req/res日志是否需要记录
+         */
+        final boolean logEnable;
+
+        /**
+         * throwable日志是否需要记录
+         */
+        final boolean throwableLogEnable;
+
+        private EnableState(int version, long checkedNanos, boolean logEnable, boolean throwableLogEnable) {
+            this.version = version;
+            this.checkedNanos = checkedNanos;
+            this.logEnable = logEnable;
+            this.throwableLogEnable = throwableLogEnable;
+        }
+
+        /**
+         * @return req/res与throwable日志是否有任意一种需要记录
+         */
+        boolean isAnyEnable() {
+            return logEnable || throwableLogEnable;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.yytech.logger.aspect;
+
+import com.yytech.logger.annotation.ReqResLogParam;
+import com.yytech.logger.util.SkippedParamTypes;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 一个请求参数的记录方式，在构建日志记录计划时确定
+ */
+final class ParamPolicy {
+
+    enum Kind {
+        /**
+         * 按reqLogType序列化
+         */
+        SERIALIZE,
+        /**
+         * 声明类型不会被序列化，只记录 <声明类型名>
+         */
+        SKIPPED,
+        /**
+         * byte[]，只记录长度与CRC32
+         */
+        BYTES,
+        /**
+         * 只记录运行时类型与大小的摘要
+         */
+        SUMMARY
+    }
+
+    /**
+     * 在方法实际请求参数中的下标
+     */
+    private final int argIndex;
+
+    private final Kind kind;
+
+    /**
+     * 序列化时记录的最大字节数，小于等于0时不限制
+     */
+    private final int maxLength;
+
+    /**
+     * SKIPPED时记录的内容
+     */
+    private final String placeholder;
+
+    private ParamPolicy(int argIndex, Kind kind, int maxLength, String placeholder) {
+        this.argIndex = argIndex;
+        this.kind = kind;
+        this.maxLength = maxLength;
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * 确定一个请求参数的记录方式
+     * 优先级：ReqResLogParam的ignore/summary > byte[] > 不会被序列化的类型 > 序列化
+     *
+     * @param argIndex      请求参数下标
+     * @param parameterType 请求参数的声明类型
+     * @param annotation    请求参数上的ReqResLogParam注释，可以为null
+     * @param maxReqLength  方法生效的maxReqLength
+     * @return 记录方式，不记录此参数时为null
+     */
+    static ParamPolicy resolve(int argIndex, Class<?> parameterType, ReqResLogParam annotation, int maxReqLength) {
+        if (annotation != null && annotation.ignore()) {
+            return null;
+        }
+        if (parameterType == byte[].class) {
+            return new ParamPolicy(argIndex, Kind.BYTES, 0, null);
+        }
+        if (annotation != null && annotation.summary()) {
+            return new ParamPolicy(argIndex, Kind.SUMMARY, 0, null);
+        }
+        if (SkippedParamTypes.isSkipped(parameterType)) {
+            return new ParamPolicy(argIndex, Kind.SKIPPED, 0, "<" + parameterType.getSimpleName() + ">");
+        }
+        int maxLength = annotation != null && annotation.maxLength() >= 0 ? annotation.maxLength() : maxReqLength;
+        return new ParamPolicy(argIndex, Kind.SERIALIZE, maxLength, null);
+    }
+
+    /**
+     * @param maxReqLength 方法生效的maxReqLength
+     * @return 是否与没有任何参数级配置时的记录方式相同
+     */
+    boolean isDefault(int maxReqLength) {
+        return kind == Kind.SERIALIZE && maxLength == maxReqLength;
+    }
+
+    /**
+     * @return 是否需要按reqLogType序列化
+     */
+    boolean isSerialized() {
+        return kind == Kind.SERIALIZE;
+    }
+
+    /**
+     * 不需要序列化的参数的日志内容
+     *
+     * @param arg 请求参数
+     * @return 日志内容，参数为null时为null
+     */
+    String summarize(Object arg) {
+        if (arg == null) {
+            return null;
+        }
+        if (kind == Kind.SKIPPED) {
+            return placeholder;
+        }
+        if (arg instanceof byte[]) {
+            byte[] bytes = (byte[]) arg;
+            CRC32 crc32 = new CRC32();
+            crc32.update(bytes, 0, bytes.length);
+            return "<byte[] length=" + bytes.length + " crc32=" + Long.toHexString(crc32.getValue()) + ">";
+        }
+        String typeName = arg.getClass().getSimpleName();
+        if (arg instanceof Collection) {
+            return "<" + typeName + " size=" + ((Collection<?>) arg).size() + ">";
+        }
+        if (arg instanceof Map) {
+            return "<" + typeName + " size=" + ((Map<?, ?>) arg).size() + ">";
+        }
+        if (arg instanceof CharSequence) {
+            return "<" + typeName + " length=" + ((CharSequence) arg).length() + ">";
+        }
+        if (arg.getClass().isArray()) {
+            return "<" + typeName + " length=" + Array.getLength(arg) + ">";
+        }
+        return "<" + typeName + ">";
+    }
+
+    int getArgIndex() {
+        return argIndex;
+    }
+
+    int getMaxLength() {
+        return maxLength;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.yytech.logger.aspect;
+
+import com.yytech.logger.util.TraceIdContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reactor返回值(Mono/Flux)的支持，只有reactor-core在classpath中时才会被加载
+ * -------------
+ * 1.请求日志在被订阅时记录，耗时从订阅开始计算
+ * 2.Mono记录onNext的值；Flux记录元素个数、按前N个元素估算的总字节数以及前N个元素
+ * 3.traceId通过Reactor的Context传递：订阅方的Context中已有traceId时使用它，否则把当前方法的traceId放入Context
+ * 4.只注册回调，不会阻塞任何调度线程
+ */
+final class ReactorSupport {
+
+    private ReactorSupport() {
+    }
+
+    static AsyncResults.Kind kindOf(Class<?> returnType) {
+        if (Mono.class.isAssignableFrom(returnType)) {
+            return AsyncResults.Kind.MONO;
+        }
+        if (Flux.class.isAssignableFrom(returnType)) {
+            return AsyncResults.Kind.FLUX;
+        }
+        return AsyncResults.Kind.NONE;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object decorate(Object response, AsyncResults.Kind kind, int sampleSize, String traceId,
+                           AsyncResults.Completion completion) {
+        if (kind == AsyncResults.Kind.MONO && response instanceof Mono) {
+            return decorateMono((Mono<Object>) response, traceId, completion);
+        }
+        if (kind == AsyncResults.Kind.FLUX && response instanceof Flux) {
+            return decorateFlux((Flux<Object>) response, sampleSize, traceId, completion);
+        }
+        return response;
+    }
+
+    private static Mono<Object> decorateMono(Mono<Object> mono, String traceId, AsyncResults.Completion completion) {
+        return Mono.subscriberContext()
+                .flatMap(context -> {
+                    Subscription subscription = new Subscription(completion);
+                    return mono.doOnSubscribe(s -> subscription.start(traceIdOf(context, traceId)))
+                            .doOnSuccess(value -> subscription.complete(value, null))
+                            .doOnError(throwable -> subscription.complete(null, throwable))
+                            .doOnCancel(() -> subscription.complete(null, null));
+                })
+                .subscriberContext(context -> putTraceId(context, traceId));
+    }
+
+    private static Flux<Object> decorateFlux(Flux<Object> flux, int sampleSize, String traceId,
+                                             AsyncResults.Completion completion) {
+        return Mono.subscriberContext()
+                .flatMapMany(context -> {
+                    Subscription subscription = new Subscription(completion);
+                    ElementCollector collector = new ElementCollector(sampleSize);
+                    return flux.doOnSubscribe(s -> subscription.start(traceIdOf(context, traceId)))
+                            .doOnNext(collector::onNext)
+                            .doOnComplete(() -> subscription.complete(collector.finish(false), null))
+                            .doOnError(throwable -> subscription.complete(null, throwable))
+                            .doOnCancel(() -> subscription.complete(collector.finish(true), null));
+                })
+                .subscriberContext(context -> putTraceId(context, traceId));
+    }
+
+    private static String traceIdOf(Context context, String traceId) {
+        return context.getOrDefault(TraceIdContext.KEY, traceId);
+    }
+
+    private static Context putTraceId(Context context, String traceId) {
+        if (traceId == null || context.hasKey(TraceIdContext.KEY)) {
+            return context;
+        }
+        return context.put(TraceIdContext.KEY, traceId);
+    }
+
+    /**
+     * 一次订阅的状态，完成、异常、取消只会回调一次
+     */
+    private static final class Subscription {
+
+        private final AsyncResults.Completion completion;
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private volatile long startNanos;
+
+        /**
+         * 这次订阅的完成回调，订阅之前为null
+         */
+        private volatile AsyncResults.Completion subscribed;
+
+        private Subscription(AsyncResults.Completion completion) {
+            this.completion = completion;
+        }
+
+        private void start(String traceId) {
+            startNanos = System.nanoTime();
+            subscribed = completion.onSubscribe(traceId);
+        }
+
+        private void complete(Object result, Throwable throwable) {
+            if (completed.compareAndSet(false, true)) {
+                AsyncResults.Completion current = subscribed;
+                (current == null ? completion : current).onComplete(startNanos, result, throwable);
+            }
+        }
+    }
+
+    /**
+     * 累计Flux的元素个数与前N个元素
+     */
+    private static final class ElementCollector {
+
+        private final int sampleSize;
+
+        private final List<Object> first;
+
+        private volatile long count;
+
+        private ElementCollector(int sampleSize) {
+            this.sampleSize = Math.max(0, sampleSize);
+            this.first = new ArrayList<>(this.sampleSize);
+        }
+
+        private void onNext(Object element) {
+            if (count < sampleSize) {
+                first.add(element);
+            }
+            count++;
+        }
+
+        private FluxSummary finish(boolean cancelled) {
+            return new FluxSummary(count, new ArrayList<>(first), cancelled);
+        }
+    }
+
+}
@@ -1,12 +1,21 @@
 package com.yytech.logger.aspect;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yytech.logger.LoadSheddingController;
 import com.yytech.logger.LogAttributes;
 import com.yytech.logger.LoggerService;
-import com.yytech.logger.annotation.ReqResLog;
 import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.metrics.MethodMetrics;
+import com.yytech.logger.metrics.ReqResLogMetrics;
+import com.yytech.logger.recorder.FlightRecorder;
+import com.yytech.logger.recorder.MethodFlightRecorder;
+import com.yytech.logger.util.FieldProjection;
+import com.yytech.logger.util.LogRateLimiter;
+import com.yytech.logger.util.PropertyPath;
 import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.logger.util.SerializationProfiler;
 import com.yytech.logger.util.StringUtil;
+import com.yytech.logger.util.ThrowableFingerprinter;
 import com.yytech.logger.util.TraceIdThreadLocal;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -15,8 +24,16 @@ import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.lang.reflect.InvocationTargetException;
+import javax.annotation.PreDestroy;
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 日志记录切面方式的实现
@@ -31,6 +48,34 @@ public class ReqResLoggerAspect {
     @Autowired
     LoggerService loggerService;
 
+    @Autowired(required = false)
+    ReqResLogMetrics reqResLogMetrics;
+
+    @Autowired
+    ThrowableFingerprinter throwableFingerprinter;
+
+    @Autowired(required = false)
+    LoadSheddingController loadSheddingController;
+
+    @Autowired(required = false)
+    FlightRecorder flightRecorder;
+
+    /**
+     * 每个(targetClass, method)对应的日志记录计划
+     * 第一层key为targetClass，第二层key为signature中的method
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, LogPlan>> logPlanCache = new ConcurrentHashMap<>();
+
+    /**
+     * 配置了maxLogsPerSecond的方法的限速器
+     */
+    private final List<LogRateLimiter> rateLimiters = new CopyOnWriteArrayList<>();
+
+    /**
+     * 定时输出被限制调用数的汇总，第一个配置了maxLogsPerSecond的方法被调用时才启动
+     */
+    private ScheduledExecutorService rateLimitReporter;
+
     /**
      * 代理被ReqResLog注释的方法，记录它的ReqResLog
      *
@@ -40,18 +85,67 @@ public class ReqResLoggerAspect {
      */
     @Around("@annotation(com.yytech.logger.annotation.ReqResLog)")
     public Object around(ProceedingJoinPoint pjp) throws Throwable {
-        LogAttributes logAttributes = parseLogAttributes(pjp);
+        LogPlan logPlan = getLogPlan(pjp);
+        MethodMetrics methodMetrics = logPlan == null ? null : logPlan.getMethodMetrics();
+        MethodFlightRecorder methodFlightRecorder = logPlan == null ? null : logPlan.getMethodFlightRecorder();
+        LogPlan.EnableState enableState = logPlan == null ? null : logPlan.getEnableState(loggerService);
+        if (enableState != null && !enableState.isAnyEnable()) {
+            //日志均不可用时直接调用原方法，不产生任何额外的对象分配
+            if (methodMetrics == null && methodFlightRecorder == null) {
+                return pjp.proceed();
+            }
+            return proceedWithRecording(pjp, logPlan);
+        }
+        Object[] pjpArgs = pjp.getArgs();
+        //condition在序列化任何请求参数之前求值，不满足且throwable日志不可用时与日志不可用的情况一样处理
+        boolean conditionMatched = enableState == null || !enableState.logEnable || logPlan.isConditionMatched(pjpArgs);
+        if (!conditionMatched && !enableState.throwableLogEnable) {
+            if (methodMetrics == null && methodFlightRecorder == null) {
+                return pjp.proceed();
+            }
+            return proceedWithRecording(pjp, logPlan);
+        }
+        LogAttributes logAttributes = parseLogAttributes(pjpArgs, logPlan, conditionMatched);
+        boolean combined = logPlan != null && logPlan.getLogMode() == ReqResLogProperties.LogMode.COMBINED;
+        boolean reactive = logPlan != null && logPlan.getAsyncKind().isReactive();
+        boolean slowOnly = logPlan != null && logPlan.isSlowOnly();
+        long startNanos = 0;
         try {
-            //处理请求日志
-            processReqLog(logAttributes);
+            //处理请求日志，合并模式下请求日志在方法执行完成后与返回/异常日志一起记录，Mono/Flux在被订阅时记录
+            //只记录慢调用时，请求日志在方法完成后确定需要记录时才记录
+            if (!combined && !reactive && !slowOnly) {
+                processReqLog(logAttributes);
+            }
             //实际方法调用处理
+            startNanos = System.nanoTime();
             Object response = pjp.proceed();
+            if (response != null && logPlan != null && logPlan.getAsyncKind() != AsyncResults.Kind.NONE) {
+                //异步返回值在实际结果完成时才处理返回/异常日志
+                String traceId = logAttributes == null ? null : logAttributes.getTraceId();
+                return AsyncResults.whenComplete(response, logPlan, startNanos, traceId, new AsyncResults.Completion() {
+                    @Override
+                    public AsyncResults.Completion onSubscribe(String subscribedTraceId) {
+                        //同一个Mono/Flux可能被多次或并发订阅，每次订阅使用各自的日志参数
+                        LogAttributes subscribed = subscribeLogAttributes(logAttributes, logPlan, subscribedTraceId);
+                        if (!combined && !slowOnly) {
+                            processReqLog(subscribed);
+                        }
+                        return (asyncStartNanos, result, throwable) -> processCompletion(subscribed, logPlan,
+                                methodMetrics, pjpArgs, asyncStartNanos, result, throwable);
+                    }
+
+                    @Override
+                    public void onComplete(long asyncStartNanos, Object result, Throwable throwable) {
+                        processCompletion(logAttributes, logPlan, methodMetrics, pjpArgs, asyncStartNanos, result, throwable);
+                    }
+                });
+            }
             //处理返回日志
-            processResLog(logAttributes, response);
+            processCompletion(logAttributes, logPlan, methodMetrics, pjpArgs, startNanos, response, null);
             return response;
         } catch (Throwable throwable) {
             //处理异常日志
-            processThrowableLog(logAttributes, throwable);
+            processCompletion(logAttributes, logPlan, methodMetrics, pjpArgs, startNanos, null, throwable);
             throw throwable;
         } finally {
             //释放ttl中的traceId信息
@@ -61,6 +155,288 @@ public class ReqResLoggerAspect {
         }
     }
 
+    /**
+     * Mono/Flux被订阅时，复制调用时解析的日志参数，作为这次订阅的日志参数
+     * 采样与maxLogsPerSecond按订阅时生效的traceId决定，与上游trace中其他调用的采样结果一致
+     *
+     * @param logAttributes     调用时解析的日志参数
+     * @param logPlan           日志记录计划
+     * @param subscribedTraceId 订阅时生效的traceId
+     * @return 这次订阅的日志参数，调用时没有解析到日志参数时为null
+     */
+    private LogAttributes subscribeLogAttributes(LogAttributes logAttributes, LogPlan logPlan, String subscribedTraceId) {
+        if (logAttributes == null) {
+            return null;
+        }
+        LogAttributes subscribed = logAttributes.copy();
+        subscribed.setTraceId(subscribedTraceId);
+        //沿用上游Context中的traceId时，trace的开始与结束由上游的入口方法负责
+        subscribed.setTraceIdEntry(logAttributes.isTraceIdEntry()
+                && Objects.equals(logAttributes.getTraceId(), subscribedTraceId));
+        if (!subscribed.isLogEnable() && !subscribed.isThrowableLogEnable()) {
+            return subscribed;
+        }
+        if (!logPlan.isSampled(subscribedTraceId)) {
+            subscribed.setLogEnable(false);
+            subscribed.setThrowableLogEnable(subscribed.isThrowableLogEnable() && logPlan.isSampleThrowableBypass());
+        } else if (subscribed.isLogEnable() && !logPlan.isSlowOnly() && !logPlan.tryAcquireLog()) {
+            subscribed.setLogEnable(false);
+        }
+        return subscribed;
+    }
+
+    /**
+     * 方法执行完成(异步返回值为实际结果完成)时，记录耗时并处理返回/异常日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param methodMetrics 方法调用指标，没有开启指标记录时为null
+     * @param pjpArgs       方法实际的请求参数
+     * @param startNanos    方法开始执行时的System.nanoTime()
+     * @param response      被代理的原方法返回值或异步的实际结果
+     * @param throwable     被代理的原方法的throwable，正常完成时为null
+     */
+    private void processCompletion(LogAttributes logAttributes, LogPlan logPlan, MethodMetrics methodMetrics,
+                                   Object[] pjpArgs, long startNanos, Object response, Throwable throwable) {
+        long elapsedNanos = recordElapsed(logAttributes, methodMetrics, startNanos, throwable != null);
+        if (elapsedNanos >= 0 && logPlan != null && logPlan.getMethodFlightRecorder() != null) {
+            String traceId = logAttributes == null ? null : logAttributes.getTraceId();
+            recordFlight(logPlan.getMethodFlightRecorder(), traceId == null ? TraceIdThreadLocal.getTraceId() : traceId,
+                    elapsedNanos, pjpArgs, response, throwable);
+        }
+        //正常完成且满足unless时，这次调用不记录res日志
+        if (throwable == null && logAttributes != null && logAttributes.isLogEnable()
+                && logPlan.isUnlessMatched(pjpArgs, response, logAttributes.getElapsedNanos())) {
+            logAttributes.setLogEnable(false);
+        }
+        boolean combined = logPlan != null && logPlan.getLogMode() == ReqResLogProperties.LogMode.COMBINED;
+        if (logPlan != null && logPlan.isSlowOnly()) {
+            processSlowReqLog(logAttributes, logPlan, pjpArgs, throwable, combined);
+        }
+        if (combined) {
+            processInvocationLog(logAttributes, logPlan, response, throwable);
+        } else if (throwable == null) {
+            processResLog(logAttributes, logPlan, response);
+        } else {
+            processThrowableLog(logAttributes, logPlan, throwable);
+        }
+        if (logAttributes != null && logAttributes.isTraceIdEntry()) {
+            processTraceFinished(logAttributes, throwable);
+        }
+    }
+
+    /**
+     * 入口方法执行完成时通知LoggerService这个trace已经结束
+     *
+     * @param logAttributes 日志参数
+     * @param throwable     被代理的原方法的throwable，正常完成时为null
+     */
+    private void processTraceFinished(LogAttributes logAttributes, Throwable throwable) {
+        try {
+            loggerService.traceFinished(logAttributes.getTraceId(), logAttributes.getElapsedNanos(), throwable);
+        } catch (Throwable e) {
+            log.error("ReqResLoggerAspect processTraceFinished", e);
+        }
+    }
+
+    /**
+     * 只记录慢调用时，在方法完成后决定这次调用是否记录
+     * 正常完成且耗时小于阈值时不记录req/res日志，否则生成并记录推迟的请求日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param pjpArgs       方法实际的请求参数
+     * @param throwable     被代理的原方法的throwable，正常完成时为null
+     * @param combined      是否为合并日志模式
+     */
+    private void processSlowReqLog(LogAttributes logAttributes, LogPlan logPlan, Object[] pjpArgs,
+                                   Throwable throwable, boolean combined) {
+        if (logAttributes == null) {
+            return;
+        }
+        if (throwable == null && logAttributes.getElapsedNanos() < logPlan.getSlowThresholdNanos()) {
+            logAttributes.setLogEnable(false);
+            return;
+        }
+        if (logAttributes.isLogEnable() && !logPlan.tryAcquireLog()) {
+            logAttributes.setLogEnable(false);
+        }
+        try {
+            //分开记录时只有请求日志需要请求参数，合并记录时异常日志也包含请求参数
+            if (logPlan.isReqLogDeferred() && (logAttributes.isLogEnable() || combined && logAttributes.isThrowableLogEnable())) {
+                fillReqParamLogs(logAttributes, logPlan, pjpArgs);
+            }
+        } catch (Throwable e) {
+            log.error("ReqResLoggerAspect processSlowReqLog", e);
+        }
+        if (!combined) {
+            processReqLog(logAttributes);
+        }
+    }
+
+    /**
+     * 日志均不可用但开启了指标记录或飞行记录器时，只记录方法的调用指标与最近调用
+     *
+     * @param pjp     ProceedingJoinPoint
+     * @param logPlan 日志记录计划
+     * @return 被代理的原方法返回值
+     * @throws Throwable 被代理的原方法抛的Throwable
+     */
+    private Object proceedWithRecording(ProceedingJoinPoint pjp, LogPlan logPlan) throws Throwable {
+        MethodMetrics methodMetrics = logPlan.getMethodMetrics();
+        MethodFlightRecorder methodFlightRecorder = logPlan.getMethodFlightRecorder();
+        Object[] pjpArgs = methodFlightRecorder == null ? null : pjp.getArgs();
+        String traceId = methodFlightRecorder == null ? null : TraceIdThreadLocal.getTraceId();
+        long startNanos = System.nanoTime();
+        Object response;
+        try {
+            response = pjp.proceed();
+        } catch (Throwable throwable) {
+            recordInvocation(methodMetrics, methodFlightRecorder, traceId, System.nanoTime() - startNanos,
+                    pjpArgs, null, throwable);
+            throw throwable;
+        }
+        if (response != null && logPlan.getAsyncKind() != AsyncResults.Kind.NONE) {
+            return AsyncResults.whenComplete(response, logPlan, startNanos, null, (asyncStartNanos, result, throwable) ->
+                    recordInvocation(methodMetrics, methodFlightRecorder, traceId, System.nanoTime() - asyncStartNanos,
+                            pjpArgs, result, throwable));
+        }
+        recordInvocation(methodMetrics, methodFlightRecorder, traceId, System.nanoTime() - startNanos,
+                pjpArgs, response, null);
+        return response;
+    }
+
+    /**
+     * 记录方法的调用指标与最近调用
+     *
+     * @param methodMetrics        方法调用指标，没有开启指标记录时为null
+     * @param methodFlightRecorder 飞行记录器中这个方法的环形缓冲区，不记录时为null
+     * @param traceId              traceId，没有时为null
+     * @param elapsedNanos         耗时纳秒数
+     * @param pjpArgs              方法实际的请求参数
+     * @param response             被代理的原方法返回值或异步的实际结果
+     * @param throwable            被代理的原方法的throwable，正常完成时为null
+     */
+    private void recordInvocation(MethodMetrics methodMetrics, MethodFlightRecorder methodFlightRecorder, String traceId,
+                                  long elapsedNanos, Object[] pjpArgs, Object response, Throwable throwable) {
+        if (methodMetrics != null) {
+            methodMetrics.record(elapsedNanos, throwable != null);
+        }
+        if (methodFlightRecorder != null) {
+            recordFlight(methodFlightRecorder, traceId, elapsedNanos, pjpArgs, response, throwable);
+        }
+    }
+
+    /**
+     * 把本次调用写入飞行记录器
+     *
+     * @param methodFlightRecorder 飞行记录器中这个方法的环形缓冲区
+     * @param traceId              traceId，没有时为null
+     * @param elapsedNanos         耗时纳秒数
+     * @param pjpArgs              方法实际的请求参数
+     * @param response             被代理的原方法返回值或异步的实际结果
+     * @param throwable            被代理的原方法的throwable，正常完成时为null
+     */
+    private void recordFlight(MethodFlightRecorder methodFlightRecorder, String traceId, long elapsedNanos,
+                              Object[] pjpArgs, Object response, Throwable throwable) {
+        try {
+            methodFlightRecorder.record(traceId, elapsedNanos, pjpArgs, response, throwable);
+        } catch (Throwable e) {
+            log.error("ReqResLoggerAspect recordFlight", e);
+        }
+    }
+
+    /**
+     * 获取当前被代理方法的日志记录计划，不存在时构建并缓存
+     *
+     * @param pjp ProceedingJoinPoint
+     * @return 日志记录计划，构建失败时为null
+     */
+    private LogPlan getLogPlan(ProceedingJoinPoint pjp) {
+        try {
+            Class<?> targetClass = pjp.getTarget().getClass();
+            MethodSignature signature = (MethodSignature) pjp.getSignature();
+            Method method = signature.getMethod();
+            ConcurrentMap<Method, LogPlan> methodPlans = logPlanCache.get(targetClass);
+            if (methodPlans == null) {
+                methodPlans = logPlanCache.computeIfAbsent(targetClass, k -> new ConcurrentHashMap<>());
+            }
+            LogPlan logPlan = methodPlans.get(method);
+            if (logPlan == null) {
+                logPlan = methodPlans.computeIfAbsent(method, k -> buildLogPlan(targetClass, signature));
+            }
+            return logPlan;
+        } catch (Throwable e) {
+            log.error("ReqResLoggerAspect getLogPlan", e);
+            return null;
+        }
+    }
+
+    /**
+     * 构建日志记录计划
+     *
+     * @param targetClass 被代理对象的实际类型
+     * @param signature   方法签名
+     * @return 日志记录计划
+     */
+    private LogPlan buildLogPlan(Class<?> targetClass, MethodSignature signature) {
+        try {
+            /*
+             * 获取targetClassMethod上的annotation而不是signature.getMethod()的annotation
+             * 因为signature.getMethod()的annotation在jdk动态代理的情况下取的是接口上的annotation
+             */
+            Method targetClassMethod = targetClass.getMethod(signature.getName(), signature.getParameterTypes());
+            LogPlan logPlan = new LogPlan(targetClass, targetClassMethod, signature.getParameterNames(),
+                    reqResLogProperties, reqResLogMetrics, flightRecorder, loggerService.isDeferredFormatting());
+            if (logPlan.getRateLimiter() != null) {
+                registerRateLimiter(logPlan.getRateLimiter());
+            }
+            return logPlan;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 登记限速器，由后台线程每秒检查一次，统计周期结束时输出汇总
+     *
+     * @param rateLimiter 方法的限速器
+     */
+    private synchronized void registerRateLimiter(LogRateLimiter rateLimiter) {
+        rateLimiters.add(rateLimiter);
+        if (rateLimitReporter != null) {
+            return;
+        }
+        rateLimitReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "req-res-log-rate-limit-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rateLimitReporter.scheduleWithFixedDelay(() -> {
+            try {
+                for (LogRateLimiter limiter : rateLimiters) {
+                    limiter.reportIfDue();
+                }
+            } catch (Throwable e) {
+                log.error("ReqResLoggerAspect report suppressed logs", e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 关闭容器时停止后台线程，并输出每个限速器最后一个统计周期的汇总
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (rateLimitReporter != null) {
+            rateLimitReporter.shutdownNow();
+            rateLimitReporter = null;
+        }
+        for (LogRateLimiter rateLimiter : rateLimiters) {
+            rateLimiter.flush();
+        }
+    }
+
     /**
      * 处理Req日志
      *
@@ -81,17 +457,15 @@ public class ReqResLoggerAspect {
      * 处理Res日志
      *
      * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
      * @param response      被代理的原方法返回值
      */
-    private void processResLog(LogAttributes logAttributes, Object response) {
+    private void processResLog(LogAttributes logAttributes, LogPlan logPlan, Object response) {
         try {
             if (logAttributes == null || !logAttributes.isLogEnable()) {
                 return;
             }
-            ReqResLog annotation = logAttributes.getReqResLogAnnotation();
-            ReqResLogProperties.LogType resLogType = reqResLogProperties.getResLogTypeWithDefault(annotation);
-            String resParamLog = toJsonOrString(resLogType, response);
-            logAttributes.setResParamLog(resParamLog);
+            fillResParamLog(logAttributes, logPlan, response);
             loggerService.processResLog(logAttributes);
         } catch (Throwable e) {
             log.error("ReqResLoggerAspect processResLog", e);
@@ -102,101 +476,187 @@ public class ReqResLoggerAspect {
      * 处理异常日志
      *
      * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
      * @param throwable     被代理的原方法的throwable
      */
-    private void processThrowableLog(LogAttributes logAttributes, Throwable throwable) {
+    private void processThrowableLog(LogAttributes logAttributes, LogPlan logPlan, Throwable throwable) {
         try {
             if (logAttributes == null || !logAttributes.isThrowableLogEnable()) {
                 return;
             }
-            ReqResLog annotation = logAttributes.getReqResLogAnnotation();
-            ReqResLogProperties.ThrowableLogType throwableLogType = reqResLogProperties.getThrowableLogTypeWithDefault(annotation);
-            if (throwableLogType == ReqResLogProperties.ThrowableLogType.MESSAGE) {
-                logAttributes.setThrowableLog("[" + throwable.getClass().getTypeName() + "]:" + throwable.getMessage());
-            } else if (throwableLogType == ReqResLogProperties.ThrowableLogType.STACK) {
-                logAttributes.setThrowableLog(ReqResLogUtil.getStackTrace(throwable));
-            }
+            fillThrowableLog(logAttributes, logPlan, throwable);
             loggerService.processThrowableLog(logAttributes);
         } catch (Throwable e) {
-            log.error("ReqResLoggerAspect processResLog", e);
+            log.error("ReqResLoggerAspect processThrowableLog", e);
+        }
+    }
+
+    /**
+     * 合并模式下处理整次调用的日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param response      被代理的原方法返回值
+     * @param throwable     被代理的原方法的throwable，正常返回时为null
+     */
+    private void processInvocationLog(LogAttributes logAttributes, LogPlan logPlan, Object response, Throwable throwable) {
+        try {
+            if (logAttributes == null) {
+                return;
+            }
+            if (throwable == null) {
+                if (!logAttributes.isLogEnable()) {
+                    return;
+                }
+                fillResParamLog(logAttributes, logPlan, response);
+            } else {
+                if (!logAttributes.isLogEnable() && !logAttributes.isThrowableLogEnable()) {
+                    return;
+                }
+                if (logAttributes.isThrowableLogEnable()) {
+                    fillThrowableLog(logAttributes, logPlan, throwable);
+                } else {
+                    logAttributes.setThrowable(throwable);
+                }
+            }
+            loggerService.processInvocationLog(logAttributes);
+        } catch (Throwable e) {
+            log.error("ReqResLoggerAspect processInvocationLog", e);
+        }
+    }
+
+    /**
+     * 设置返回数据日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param response      被代理的原方法返回值
+     */
+    private void fillResParamLog(LogAttributes logAttributes, LogPlan logPlan, Object response) throws JsonProcessingException {
+        FieldProjection resProjection = logPlan.getResProjection();
+        if (resProjection != null && response != null && !(response instanceof FluxSummary)) {
+            //只记录resFields中的属性
+            response = resProjection.project(response);
+        }
+        if (logAttributes.isStreaming()) {
+            logAttributes.setResponse(response);
+        } else {
+            String resParamLog = toJsonOrString(resLogTypeOf(logPlan), response, logPlan.getMaxResLength());
+            logAttributes.setResParamLog(resParamLog);
+        }
+    }
+
+    /**
+     * 设置异常日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param throwable     被代理的原方法的throwable
+     */
+    private void fillThrowableLog(LogAttributes logAttributes, LogPlan logPlan, Throwable throwable) {
+        logAttributes.setThrowable(throwable);
+        ReqResLogProperties.ThrowableLogType throwableLogType = throwableLogTypeOf(logPlan);
+        if (throwableLogType == ReqResLogProperties.ThrowableLogType.MESSAGE) {
+            logAttributes.setThrowableLog("[" + throwable.getClass().getTypeName() + "]:" + throwable.getMessage());
+        } else if (throwableLogType == ReqResLogProperties.ThrowableLogType.STACK) {
+            logAttributes.setThrowableLog(ReqResLogUtil.getStackTrace(throwable));
+        } else if (throwableLogType == ReqResLogProperties.ThrowableLogType.FINGERPRINT) {
+            logAttributes.setThrowableLog(throwableFingerprinter.render(throwable));
         }
     }
 
+    /**
+     * 设置方法执行耗时并记录调用指标
+     *
+     * @param logAttributes 日志参数
+     * @param methodMetrics 方法调用指标，没有开启指标记录时为null
+     * @param startNanos    方法开始执行时的System.nanoTime()
+     * @param error         方法是否抛出了异常
+     * @return 方法执行耗时，方法没有开始执行时为-1
+     */
+    private long recordElapsed(LogAttributes logAttributes, MethodMetrics methodMetrics, long startNanos, boolean error) {
+        if (startNanos == 0) {
+            return -1;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (logAttributes != null) {
+            logAttributes.setElapsedNanos(elapsedNanos);
+        }
+        if (methodMetrics != null) {
+            methodMetrics.record(elapsedNanos, error);
+        }
+        return elapsedNanos;
+    }
+
     /**
      * 解析日志记录可能用到的各个属性
      *
-     * @param pjp ProceedingJoinPoint
+     * @param pjpArgs          方法实际的请求参数
+     * @param logPlan          日志记录计划
+     * @param conditionMatched 本次调用是否满足condition
      * @return 当前可以解析到的日志参数
      */
-    private LogAttributes parseLogAttributes(ProceedingJoinPoint pjp) {
+    private LogAttributes parseLogAttributes(Object[] pjpArgs, LogPlan logPlan, boolean conditionMatched) {
         try {
-            Class<?> targetClass = pjp.getTarget().getClass();
-            Object[] pjpArgs = pjp.getArgs();
-            MethodSignature signature = (MethodSignature) pjp.getSignature();
-            String methodName = signature.getName();
-            Class[] parameterTypes = signature.getParameterTypes();
-            String[] parameterNames = signature.getParameterNames();
-            Class returnType = signature.getReturnType();
-            /*
-             * 获取targetClassMethod上的annotation而不是signature.getMethod()的annotation
-             * 因为signature.getMethod()的annotation在jdk动态代理的情况下取的是接口上的annotation
-             */
-            Method targetClassMethod = targetClass.getMethod(methodName, parameterTypes);
-            ReqResLog annotation = targetClassMethod.getAnnotation(ReqResLog.class);
-            ReqResLogProperties.Level logLevel = reqResLogProperties.getLevelWithDefault(annotation);
-            boolean logEnable = loggerService.isLogLevelEnable(logLevel);
-            ReqResLogProperties.Level throwableLogLevel = reqResLogProperties.getThrowableLogLevelWithDefault(annotation);
-            boolean throwableLogLevelEnable = loggerService.isLogLevelEnable(throwableLogLevel);
-            ReqResLogProperties.ThrowableLogType throwableLogType = reqResLogProperties.getThrowableLogTypeWithDefault(annotation);
-            boolean throwableLogEnable = throwableLogLevelEnable && (throwableLogType != ReqResLogProperties.ThrowableLogType.NONE);
+            if (logPlan == null) {
+                return null;
+            }
+            LogPlan.EnableState enableState = logPlan.getEnableState(loggerService);
+            boolean logEnable = enableState.logEnable && conditionMatched;
+            boolean throwableLogEnable = enableState.throwableLogEnable;
 
             //设置日志级别以及可用性
             LogAttributes logAttributes = new LogAttributes();
-            logAttributes.setLogLevel(logLevel);
-            logAttributes.setThrowableLogLevel(throwableLogLevel);
+            logAttributes.setLogLevel(logPlan.getLogLevel());
+            logAttributes.setThrowableLogLevel(logPlan.getThrowableLogLevel());
             logAttributes.setLogEnable(logEnable);
             logAttributes.setThrowableLogEnable(throwableLogEnable);
-            logAttributes.setReqResLogAnnotation(annotation);
+            logAttributes.setReqResLogAnnotation(logPlan.getAnnotation());
             if (!logEnable && !throwableLogEnable) {
                 return logAttributes;
             }
-            //设置当前context的title
-            String title = reqResLogProperties.getTitleWithDefault(annotation);
-            logAttributes.setTitle(title);
+            //设置当前context的title与日志前缀
+            logAttributes.setTitle(logPlan.getTitle());
+            logAttributes.setLogPrefix(logPlan.getLogPrefix());
             //设置traceId
-            parseAndSetTraceId(logAttributes, annotation, parameterTypes, pjpArgs);
-            //设置类名和方法名
-            logAttributes.setTargetClassSimpleName(targetClass.getSimpleName());
-            logAttributes.setTargetClassTypeName(targetClass.getTypeName());
-            logAttributes.setMethodName(methodName);
-            //设置请求参数标记与请求参数日志
-            ReqResLogProperties.ReqParamMark reqParamMark = reqResLogProperties.getReqParamMarkWithDefault(annotation);
-            ReqResLogProperties.LogType reqLogType = reqResLogProperties.getReqLogTypeWithDefault(annotation);
-            if (reqLogType != ReqResLogProperties.LogType.NONE && parameterTypes != null && parameterTypes.length > 0) {
-                String[] reqParamMarks = new String[parameterTypes.length];
-                if (reqParamMark == ReqResLogProperties.ReqParamMark.TYPE) {
-                    for (int i = 0; i < parameterTypes.length; i++) {
-                        reqParamMarks[i] = parameterTypes[i].getSimpleName();
-                    }
-                } else if (reqParamMark == ReqResLogProperties.ReqParamMark.NAME) {
-                    System.arraycopy(parameterNames, 0, reqParamMarks, 0, parameterNames.length);
-                } else {
-                    for (int i = 0; i < parameterTypes.length; i++) {
-                        reqParamMarks[i] = "";
-                    }
+            parseAndSetTraceId(logAttributes, logPlan, pjpArgs);
+            //按traceId的hash采样，在序列化请求参数之前决定，同一个trace内的调用一起保留或丢弃
+            //Mono/Flux的traceId在被订阅时才确定，采样与maxLogsPerSecond推迟到订阅时决定
+            boolean subscribeDecided = logPlan.getAsyncKind().isReactive();
+            boolean sampled = subscribeDecided || logPlan.isSampled(logAttributes.getTraceId());
+            if (!sampled) {
+                logAttributes.setLogEnable(false);
+                logAttributes.setThrowableLogEnable(throwableLogEnable && logPlan.isSampleThrowableBypass());
+                if (!logAttributes.isThrowableLogEnable()) {
+                    return logAttributes;
                 }
-                logAttributes.setReqParamMarks(reqParamMarks);
-                String[] reqParamLogs = new String[parameterTypes.length];
-                for (int i = 0; i < pjpArgs.length; i++) {
-                    reqParamLogs[i] = toJsonOrString(reqLogType, pjpArgs[i]);
+            }
+            //超过maxLogsPerSecond的调用不记录req/res日志，只计数；只记录慢调用时在确定需要记录后才获取令牌
+            boolean limited = sampled && logEnable && !subscribeDecided && !logPlan.isSlowOnly() && !logPlan.tryAcquireLog();
+            if (limited) {
+                logAttributes.setLogEnable(false);
+                if (!throwableLogEnable) {
+                    return logAttributes;
                 }
-                logAttributes.setReqParamLogs(reqParamLogs);
             }
-            //设置返回数据标记与返回数据日志
-            ReqResLogProperties.ResParamMark resParamMark = reqResLogProperties.getResParamMarkWithDefault(annotation);
-            if (resParamMark == ReqResLogProperties.ResParamMark.TYPE) {
-                logAttributes.setResParamMark(returnType.getSimpleName());
+            //设置类名和方法名
+            logAttributes.setTargetClassSimpleName(logPlan.getTargetClassSimpleName());
+            logAttributes.setTargetClassTypeName(logPlan.getTargetClassTypeName());
+            logAttributes.setMethodName(logPlan.getMethodName());
+            //设置请求参数标记与请求参数日志
+            logAttributes.setStreaming(logPlan.isStreaming());
+            logAttributes.setReqLogType(reqLogTypeOf(logPlan));
+            logAttributes.setResLogType(resLogTypeOf(logPlan));
+            logAttributes.setMaxReqLength(logPlan.getMaxReqLength());
+            logAttributes.setMaxResLength(logPlan.getMaxResLength());
+            //不满足condition时分开记录的异常日志不包含请求参数，不需要序列化；合并记录时异常日志包含请求参数
+            boolean reqParamsNeeded = logAttributes.isLogEnable()
+                    || logPlan.getLogMode() == ReqResLogProperties.LogMode.COMBINED;
+            if (sampled && !limited && reqParamsNeeded && !logPlan.isReqLogDeferred()) {
+                fillReqParamLogs(logAttributes, logPlan, pjpArgs);
             }
+            //设置返回数据标记
+            logAttributes.setResParamMark(logPlan.getResParamMark());
             return logAttributes;
         } catch (Throwable e) {
             log.error("ReqResLoggerAspect parseLogAttributes", e);
@@ -204,15 +664,66 @@ public class ReqResLoggerAspect {
         }
     }
 
+    /**
+     * 设置请求参数标记与请求参数日志
+     *
+     * @param logAttributes 日志参数
+     * @param logPlan       日志记录计划
+     * @param pjpArgs       方法实际的请求参数
+     */
+    private void fillReqParamLogs(LogAttributes logAttributes, LogPlan logPlan, Object[] pjpArgs) throws JsonProcessingException {
+        ReqResLogProperties.LogType reqLogType = reqLogTypeOf(logPlan);
+        if (reqLogType == ReqResLogProperties.LogType.NONE) {
+            //自适应降级为NONE时与配置NONE的方法一样，请求参数标记也不记录
+            return;
+        }
+        String[] reqParamMarks = logPlan.getReqParamMarks();
+        ParamPolicy[] reqParamPolicies = logPlan.getReqParamPolicies();
+        FieldProjection reqProjection = logPlan.getReqProjection();
+        if (reqProjection != null) {
+            //只记录reqFields中的属性
+            logAttributes.setReqParamMarks(reqParamMarks);
+            FieldProjection.Projected projected = reqProjection.project(pjpArgs);
+            if (logPlan.isReqArgsStreamable()) {
+                logAttributes.setReqArgs(new Object[]{projected});
+            } else {
+                logAttributes.setReqParamLogs(new String[]{
+                        toJsonOrString(reqLogType, projected, logPlan.getMaxReqLength())});
+            }
+        } else if (reqParamMarks != null && logPlan.isReqArgsStreamable() && reqParamPolicies == null) {
+            //流式日志模式下只记录参数引用，在记录日志时再直接写出
+            logAttributes.setReqParamMarks(reqParamMarks);
+            logAttributes.setReqArgs(pjpArgs);
+        } else if (reqParamMarks != null && reqParamPolicies != null) {
+            //有参数级配置时按每个参数的记录方式预先生成请求参数日志
+            logAttributes.setReqParamMarks(reqParamMarks);
+            String[] reqParamLogs = new String[reqParamMarks.length];
+            for (int i = 0; i < reqParamPolicies.length; i++) {
+                ParamPolicy policy = reqParamPolicies[i];
+                Object arg = pjpArgs[policy.getArgIndex()];
+                reqParamLogs[i] = policy.isSerialized()
+                        ? toJsonOrString(reqLogType, arg, policy.getMaxLength())
+                        : policy.summarize(arg);
+            }
+            logAttributes.setReqParamLogs(reqParamLogs);
+        } else if (reqParamMarks != null) {
+            logAttributes.setReqParamMarks(reqParamMarks);
+            String[] reqParamLogs = new String[reqParamMarks.length];
+            for (int i = 0; i < pjpArgs.length; i++) {
+                reqParamLogs[i] = toJsonOrString(reqLogType, pjpArgs[i], logPlan.getMaxReqLength());
+            }
+            logAttributes.setReqParamLogs(reqParamLogs);
+        }
+    }
+
     /**
      * 解析traceId
      *
-     * @param logAttributes  日志解析属性
-     * @param annotation     方法上注解的内容
-     * @param parameterTypes 方法请求参数类型
-     * @param pjpArgs        方法实际的请求参数
+     * @param logAttributes 日志解析属性
+     * @param logPlan       日志记录计划
+     * @param pjpArgs       方法实际的请求参数
      */
-    private void parseAndSetTraceId(LogAttributes logAttributes, ReqResLog annotation, Class[] parameterTypes, Object[] pjpArgs) {
+    private void parseAndSetTraceId(LogAttributes logAttributes, LogPlan logPlan, Object[] pjpArgs) {
         //从ttl获取traceId如果不为空的话，则直接使用
         String traceIdFromTtl = TraceIdThreadLocal.getTraceId();
         if (StringUtil.isNotEmpty(traceIdFromTtl)) {
@@ -221,54 +732,104 @@ public class ReqResLoggerAspect {
         }
         //尝试获取新的traceId
         String traceId = null;
-        ReqResLogProperties.TraceType traceType = reqResLogProperties.getTraceTypeWithDefault(annotation);
-        if (traceType == ReqResLogProperties.TraceType.UUID) {
-            //使用uuid记录trace信息
-            traceId = ReqResLogUtil.generateUuidId();
+        ReqResLogProperties.TraceType traceType = logPlan.getTraceType();
+        if (logPlan.getTraceIdGenerator() != null) {
+            //使用uuid等生成器生成的traceId记录trace信息
+            traceId = logPlan.getTraceIdGenerator().generate();
         } else if (traceType == ReqResLogProperties.TraceType.METHOD) {
             //从请求参数中获取traceId信息
-            String traceIdMethod = reqResLogProperties.getTraceIdMethodWithDefault(annotation);
-            if (StringUtil.isNotEmpty(traceIdMethod)) {
-                if (pjpArgs != null && pjpArgs.length > 0 && pjpArgs[0] != null) {
-                    if (parameterTypes != null && parameterTypes.length > 0) {
-                        try {
-                            Class<?> firstParameterType = parameterTypes[0];
-                            Method traceMethod = firstParameterType.getMethod(traceIdMethod, null);
-                            Object traceIdObj = traceMethod.invoke(pjpArgs[0]);
-                            if (traceIdObj != null) {
-                                traceId = traceIdObj.toString();
-                            }
-                        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                            log.warn("ReqResLoggerAspect parseTraceId Exception", e);
-                        }
+            PropertyPath traceIdPath = logPlan.getTraceIdPath();
+            if (traceIdPath != null) {
+                try {
+                    Object traceIdObj = traceIdPath.get(pjpArgs);
+                    if (traceIdObj != null) {
+                        traceId = traceIdObj.toString();
                     }
+                } catch (Throwable e) {
+                    log.warn("ReqResLoggerAspect parseTraceId Exception", e);
                 }
             }
         }
         if (StringUtil.isNotEmpty(traceId)) {
             logAttributes.setTraceId(traceId);
-            boolean traceIdEntry = annotation.traceIdEntry();
-            if (traceIdEntry && TraceIdThreadLocal.setTraceId(traceId)) {
+            if (logPlan.isTraceIdEntry() && TraceIdThreadLocal.setTraceId(traceId)) {
                 logAttributes.setTraceIdEntry(true);
+                loggerService.traceStarted(traceId);
             }
         }
     }
 
+    /**
+     * 转换成json，并按采样统计这个类型的序列化代价；超过预算的类型按fallback记录
+     *
+     * @param object    要被转换的对象
+     * @param maxLength 最多输出的字节数，小于等于0时不限制
+     * @return 转换后的字符串
+     * @throws JsonProcessingException json处理异常
+     */
+    private String toJsonWithProfiler(Object object, int maxLength) throws JsonProcessingException {
+        SerializationProfiler.TypeStats typeStats = SerializationProfiler.statsOf(object.getClass());
+        if (typeStats.isFallback()) {
+            return ReqResLogUtil.truncate(SerializationProfiler.fallbackOf(object), maxLength);
+        }
+        if (!typeStats.sample()) {
+            return ReqResLogUtil.toJsonWithoutNull(object, maxLength);
+        }
+        long startNanos = System.nanoTime();
+        String json = ReqResLogUtil.toJsonWithoutNull(object, maxLength);
+        typeStats.record(System.nanoTime() - startNanos, json.length());
+        return json;
+    }
+
+    /**
+     * @param logPlan 日志记录计划
+     * @return 自适应降级后实际使用的请求数据记录类别
+     */
+    private ReqResLogProperties.LogType reqLogTypeOf(LogPlan logPlan) {
+        LoadSheddingController controller = loadSheddingController;
+        return controller == null ? logPlan.getReqLogType() : controller.effectiveLogType(logPlan.getReqLogType());
+    }
+
+    /**
+     * @param logPlan 日志记录计划
+     * @return 自适应降级后实际使用的返回数据记录类别
+     */
+    private ReqResLogProperties.LogType resLogTypeOf(LogPlan logPlan) {
+        LoadSheddingController controller = loadSheddingController;
+        return controller == null ? logPlan.getResLogType() : controller.effectiveLogType(logPlan.getResLogType());
+    }
+
+    /**
+     * @param logPlan 日志记录计划
+     * @return 自适应降级后实际使用的异常日志记录类别
+     */
+    private ReqResLogProperties.ThrowableLogType throwableLogTypeOf(LogPlan logPlan) {
+        LoadSheddingController controller = loadSheddingController;
+        return controller == null ? logPlan.getThrowableLogType()
+                : controller.effectiveThrowableLogType(logPlan.getThrowableLogType());
+    }
+
     /**
      * 根据LogType把对象转换成Json格式或者toString格式的字符串
      *
-     * @param logType 日志记录类别
-     * @param object  要被记录的对象
+     * @param logType   日志记录类别
+     * @param object    要被记录的对象
+     * @param maxLength 最多记录的字节数，小于等于0时不限制
      * @return
      */
-    private String toJsonOrString(ReqResLogProperties.LogType logType, Object object) throws JsonProcessingException {
+    private String toJsonOrString(ReqResLogProperties.LogType logType, Object object, int maxLength) throws JsonProcessingException {
         if (object == null) {
             return null;
         }
         if (logType == ReqResLogProperties.LogType.JSON) {
-            return ReqResLogUtil.toJsonWithoutNull(object);
+            if (!SerializationProfiler.isEnabled()) {
+                return ReqResLogUtil.toJsonWithoutNull(object, maxLength);
+            }
+            return toJsonWithProfiler(object, maxLength);
         } else if (logType == ReqResLogProperties.LogType.TO_STRING) {
-            return object.toString();
+            return ReqResLogUtil.truncate(object.toString(), maxLength);
+        } else if (logType == ReqResLogProperties.LogType.SUMMARY) {
+            return ReqResLogUtil.truncate(ReqResLogUtil.summarize(object), maxLength);
         }
         return null;
     }
@@ -1,12 +1,34 @@
 package com.yytech.logger.autoconfig;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yytech.logger.AsyncLoggerService;
 import com.yytech.logger.DefaultLoggerServiceImpl;
+import com.yytech.logger.LoadSheddingController;
 import com.yytech.logger.LoggerService;
+import com.yytech.logger.TailSamplingLoggerService;
+import com.yytech.logger.metrics.ReqResLogMeterBinder;
+import com.yytech.logger.metrics.ReqResLogMetrics;
+import com.yytech.logger.recorder.FlightRecorder;
+import com.yytech.logger.trace.TimeOrderedTraceIdGenerator;
+import com.yytech.logger.util.LogLevelVersion;
+import com.yytech.logger.util.LogbackLevelChangeListener;
+import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.logger.util.SerializationProfiler;
+import com.yytech.logger.util.SkippedParamTypes;
+import com.yytech.logger.util.ThrowableFingerprinter;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * 全局配置
@@ -16,12 +38,188 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 @EnableAspectJAutoProxy
 public class ReqResLogAutoConfiguration {
 
+    /**
+     * 专门用于记录json日志的ObjectMapper的bean名字
+     */
+    public static final String REQ_RES_LOG_OBJECT_MAPPER = "reqResLogObjectMapper";
+
+    private static final String LOGBACK_LOGGER_CONTEXT = "ch.qos.logback.classic.LoggerContext";
+
     @Autowired
     ReqResLogProperties reqResLogProperties;
 
+    @Autowired
+    ObjectProvider<ObjectMapper> objectMapperProvider;
+
+    @Autowired
+    BeanFactory beanFactory;
+
+    /**
+     * 默认的日志记录实现
+     * req-res-log.async=true时用AsyncLoggerService包装，关闭容器时会调用其shutdown方法写完队列中的日志
+     * req-res-log.tail-sampling=true时再用TailSamplingLoggerService包装，关闭容器时调用的是TailSamplingLoggerService的shutdown方法，
+     * 它处理完仍在缓冲中的trace后再关闭被包装的AsyncLoggerService
+     *
+     * @return LoggerService
+     */
     @Bean
     public LoggerService defaultLoggerService() {
-        return new DefaultLoggerServiceImpl();
+        LoggerService loggerService = new DefaultLoggerServiceImpl();
+        if (reqResLogProperties.isAsync()) {
+            loggerService = new AsyncLoggerService(loggerService,
+                    reqResLogProperties.getAsyncQueueSize(),
+                    reqResLogProperties.getAsyncOverflowPolicyWithDefault(),
+                    reqResLogProperties.getAsyncConsumers(),
+                    reqResLogProperties.getAsyncShutdownTimeoutMillis());
+        }
+        if (reqResLogProperties.isTailSampling()) {
+            loggerService = new TailSamplingLoggerService(loggerService,
+                    reqResLogProperties.getTailLatencyBudgetMs(),
+                    reqResLogProperties.getTailMaxTraces(),
+                    reqResLogProperties.getTailMaxRecordsPerTrace(),
+                    reqResLogProperties.getTailMaxBufferedKb(),
+                    reqResLogProperties.getTailMaxTraceAgeMs());
+        }
+        return loggerService;
+    }
+
+    /**
+     * throwableLogType为FINGERPRINT时使用的异常日志渲染
+     *
+     * @return ThrowableFingerprinter
+     */
+    @Bean
+    public ThrowableFingerprinter throwableFingerprinter() {
+        return new ThrowableFingerprinter(reqResLogProperties.getThrowableMaxDepth(),
+                reqResLogProperties.getThrowableDedupWindowMillis(),
+                reqResLogProperties.getThrowableDedupMaxSize());
+    }
+
+    /**
+     * 方法调用指标注册表
+     * req-res-log.metrics-enabled=true时生效
+     *
+     * @return ReqResLogMetrics
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "req-res-log", name = "metrics-enabled", havingValue = "true")
+    public ReqResLogMetrics reqResLogMetrics() {
+        return new ReqResLogMetrics();
+    }
+
+    /**
+     * 自适应降级控制器
+     * req-res-log.load-shedding=true时生效，关闭容器时会调用其shutdown方法停止采集线程
+     *
+     * @param loggerService            实际使用的LoggerService
+     * @param reqResLogMetricsProvider 方法调用指标
+     * @return LoadSheddingController
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "req-res-log", name = "load-shedding", havingValue = "true")
+    public LoadSheddingController loadSheddingController(LoggerService loggerService,
+                                                         ObjectProvider<ReqResLogMetrics> reqResLogMetricsProvider) {
+        LoadSheddingController loadSheddingController = new LoadSheddingController(reqResLogProperties,
+                LoadSheddingController.findAsyncLoggerService(loggerService), reqResLogMetricsProvider.getIfAvailable());
+        loadSheddingController.start();
+        return loadSheddingController;
+    }
+
+    /**
+     * 飞行记录器
+     * req-res-log.flight-recorder=true时生效，同时注册JMX，关闭容器时会调用其shutdown方法注销
+     *
+     * @return FlightRecorder
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "req-res-log", name = "flight-recorder", havingValue = "true")
+    public FlightRecorder flightRecorder() {
+        FlightRecorder flightRecorder = new FlightRecorder(reqResLogProperties);
+        flightRecorder.start();
+        return flightRecorder;
+    }
+
+    /**
+     * 使用logback时监听日志级别变化，让每个方法缓存的日志可用性及时失效
+     * 其他日志实现没有监听，缓存按logLevelRevalidateMs定时重新判断
+     */
+    @PostConstruct
+    public void registerLogLevelChangeListener() {
+        boolean listening = ClassUtils.isPresent(LOGBACK_LOGGER_CONTEXT, getClass().getClassLoader())
+                && LogbackLevelChangeListener.register();
+        LogLevelVersion.setRevalidateIntervalMs(reqResLogProperties.getLogLevelRevalidateMs());
+        LogLevelVersion.setListening(listening);
+    }
+
+    /**
+     * 配置按时间有序的traceId中的节点号
+     */
+    @PostConstruct
+    public void configureTraceNodeId() {
+        if (reqResLogProperties.getTraceNodeId() != null) {
+            TimeOrderedTraceIdGenerator.INSTANCE.setNodeId(reqResLogProperties.getTraceNodeId());
+        }
+    }
+
+    /**
+     * 追加不会被序列化的请求参数类型
+     */
+    @PostConstruct
+    public void configureSkippedParamTypes() {
+        SkippedParamTypes.register(reqResLogProperties.getSkipParamTypes());
+    }
+
+    /**
+     * 配置按类型统计json序列化代价
+     */
+    @PostConstruct
+    public void configureSerializationProfiler() {
+        Long budgetMicros = reqResLogProperties.getSerializationBudgetMicros();
+        SerializationProfiler.configure(reqResLogProperties.isSerializationProfile(),
+                reqResLogProperties.getSerializationProfileSampleEvery(),
+                budgetMicros == null ? 0 : budgetMicros,
+                reqResLogProperties.getSerializationFallbackWithDefault());
+    }
+
+    /**
+     * 配置记录json日志使用的ObjectMapper
+     * 优先使用名为reqResLogObjectMapper的bean，其次使用容器中唯一的ObjectMapper(例如SpringBoot自动配置的)
+     * 这样jsr310模块、命名策略等配置也会在日志中生效，同时注册全局配置的字段脱敏
+     * 配置是进程内共享的，同一个JVM中有多个容器时只有第一个注册的生效，关闭容器时撤销
+     */
+    @PostConstruct
+    public void configureObjectMapper() {
+        ObjectMapper objectMapper;
+        if (beanFactory.containsBean(REQ_RES_LOG_OBJECT_MAPPER)) {
+            objectMapper = beanFactory.getBean(REQ_RES_LOG_OBJECT_MAPPER, ObjectMapper.class);
+        } else {
+            objectMapper = objectMapperProvider.getIfUnique();
+        }
+        ReqResLogUtil.registerObjectMapper(this, objectMapper, reqResLogProperties.getObjectWriterCacheSize(),
+                reqResLogProperties.getMaskFields());
+    }
+
+    /**
+     * 关闭容器时撤销注册的ObjectMapper，之后其他容器可以重新注册
+     */
+    @PreDestroy
+    public void releaseObjectMapper() {
+        ReqResLogUtil.unregisterObjectMapper(this);
+    }
+
+    /**
+     * Micrometer在classpath中时，把方法调用指标桥接到Micrometer
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(prefix = "req-res-log", name = "metrics-enabled", havingValue = "true")
+    static class MicrometerConfiguration {
+
+        @Bean
+        public ReqResLogMeterBinder reqResLogMeterBinder(ReqResLogMetrics reqResLogMetrics) {
+            return new ReqResLogMeterBinder(reqResLogMetrics);
+        }
+
     }
 
 }
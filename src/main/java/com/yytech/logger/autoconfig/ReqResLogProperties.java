@@ -1,12 +1,16 @@
 package com.yytech.logger.autoconfig;
 
 import com.yytech.logger.annotation.ReqResLog;
+import com.yytech.logger.util.ObjectWriterCache;
 import com.yytech.logger.util.ReqResLogUtil;
 import com.yytech.logger.util.StringUtil;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * ReqResLog的全局配置
  * 属性值与ReqResLog属性值一致，配置属性请参考ReqResLog
@@ -60,6 +64,20 @@ public class ReqResLogProperties {
      */
     private String resLogType;
 
+    /**
+     * 每个请求参数记录的最大字节数
+     *
+     * @see ReqResLog#maxReqLength()
+     */
+    private Integer maxReqLength;
+
+    /**
+     * 返回数据记录的最大字节数
+     *
+     * @see ReqResLog#maxResLength()
+     */
+    private Integer maxResLength;
+
     /**
      * 异常日志的记录方式
      *
@@ -74,6 +92,27 @@ public class ReqResLogProperties {
      */
     private String throwableLogLevel;
 
+    /**
+     * throwableLogType为FINGERPRINT时，每个异常(包括cause)最多记录的堆栈帧数，折叠的代理帧不计入
+     * -------------
+     * 默认生效配置: 30
+     */
+    private int throwableMaxDepth = 30;
+
+    /**
+     * throwableLogType为FINGERPRINT时，相同指纹的异常只记录一次堆栈的时间窗口(毫秒)
+     * -------------
+     * 默认生效配置: 60000
+     */
+    private long throwableDedupWindowMillis = 60000L;
+
+    /**
+     * throwableLogType为FINGERPRINT时，最多同时记录的异常指纹数
+     * -------------
+     * 默认生效配置: 4096
+     */
+    private int throwableDedupMaxSize = 4096;
+
     /**
      * 日志串联模式
      *
@@ -88,6 +127,368 @@ public class ReqResLogProperties {
      */
     private String traceIdMethod;
 
+    /**
+     * traceType为TIME时traceId中的节点号(0~65535)，多实例部署时建议为每个实例指定不同的值
+     * -------------
+     * 默认生效配置: 进程号@主机名 的hash
+     */
+    private Integer traceNodeId;
+
+    /**
+     * 没有监听日志级别变化时(logback以外的日志实现)，每个方法缓存的日志可用性重新判断的间隔(毫秒)，小于等于0时不缓存
+     * 使用logback时日志级别的变化会立即让缓存失效，这个配置不生效
+     * -------------
+     * 默认生效配置: 1000
+     *
+     * @see com.yytech.logger.util.LogLevelVersion
+     */
+    private long logLevelRevalidateMs = 1000L;
+
+    /**
+     * 日志记录模式
+     *
+     * @see ReqResLog#logMode()
+     */
+    private String logMode;
+
+    /**
+     * 记录json日志时最多缓存的ObjectWriter类型数量
+     * 记录json日志使用的ObjectMapper优先取名为reqResLogObjectMapper的bean，其次取容器中唯一的ObjectMapper
+     * -------------
+     * 默认生效配置: 512
+     */
+    private int objectWriterCacheSize = ObjectWriterCache.DEFAULT_MAX_SIZE;
+
+    /**
+     * 记录json日志时需要脱敏的字段名模式，对请求日志与返回日志都生效
+     * 格式为 字段名模式[:keepFirst[:keepLast]]，忽略大小写，*匹配任意字符
+     * 例如 password、*cardNo*:0:4、*phone*:3:4
+     * 字段上有ReqResLogMask注释时以注释为准
+     * -------------
+     * 默认生效配置: 空
+     *
+     * @see com.yytech.logger.annotation.ReqResLogMask
+     */
+    private List<String> maskFields = new ArrayList<>();
+
+    /**
+     * 在默认类型之外追加不会被序列化的请求参数类型(全限定名)
+     * 请求参数的声明类型是这些类型或其子类型时，请求日志中只记录 <类型名>
+     * -------------
+     * 默认生效配置: 空(默认类型见SkippedParamTypes)
+     *
+     * @see com.yytech.logger.util.SkippedParamTypes
+     */
+    private List<String> skipParamTypes = new ArrayList<>();
+
+    /**
+     * 是否使用流式日志模式
+     * 为true时请求参数与返回值不再预先转换成字符串，而是在记录日志时与日志前缀一起
+     * 通过同一个JsonGenerator直接写入线程内复用的缓冲区，减少大对象日志的内存拷贝
+     * 自定义LoggerService需要继承DefaultLoggerServiceImpl才能支持这种模式
+     * 与异步日志或尾部采样同时使用时不生效(见LoggerService#isDeferredFormatting)
+     * -------------
+     * 默认生效配置: false
+     */
+    private boolean streamSerialization;
+
+    /**
+     * 是否异步记录日志
+     * 为true时默认的LoggerService会被AsyncLoggerService包装，日志在后台线程中格式化并写出
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.AsyncLoggerService
+     */
+    private boolean async;
+
+    /**
+     * 异步日志队列的总容量，平均分给每个消费线程的队列，每个队列的容量会向上取整为2的幂
+     * -------------
+     * 默认生效配置: 8192
+     */
+    private int asyncQueueSize = 8192;
+
+    /**
+     * 异步日志队列满时的处理策略
+     * BLOCK：阻塞等待队列有空位
+     * DROP_NEWEST：丢弃当前这条日志
+     * DROP_OLDEST：丢弃队列中最早的一条日志
+     * SYNC：在当前线程同步记录这条日志
+     * -------------
+     * 默认生效配置: SYNC
+     */
+    private String asyncOverflowPolicy;
+
+    /**
+     * 异步日志后台消费线程数
+     * 日志按traceId分配给消费线程，同一个trace的日志总是由同一个消费线程按顺序记录
+     * -------------
+     * 默认生效配置: 1
+     */
+    private int asyncConsumers = 1;
+
+    /**
+     * 关闭时等待异步日志队列写完的最长时间(毫秒)
+     * -------------
+     * 默认生效配置: 3000
+     */
+    private long asyncShutdownTimeoutMillis = 3000L;
+
+    /**
+     * 是否按运行时类型统计json序列化的代价
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.util.SerializationProfiler
+     */
+    private boolean serializationProfile;
+
+    /**
+     * 统计序列化代价时每多少次调用采样一次
+     * -------------
+     * 默认生效配置: 64
+     */
+    private int serializationProfileSampleEvery = 64;
+
+    /**
+     * 每个类型平均json序列化耗时的预算(微秒)，超过后这个类型按serializationFallback记录，需要开启serializationProfile
+     * -------------
+     * 默认生效配置: 空(不切换)
+     */
+    private Long serializationBudgetMicros;
+
+    /**
+     * 超过序列化预算的类型的记录方式 TO_STRING/SUMMARY
+     * TO_STRING：记录toString()，不经过字段脱敏，只适合没有敏感字段的类型
+     * SUMMARY：只记录类型名，集合/Map/数组额外记录大小
+     * -------------
+     * 默认生效配置: SUMMARY
+     */
+    private String serializationFallback;
+
+    /**
+     * 是否开启飞行记录器
+     * 为true时在内存中为每个被ReqResLog注释的方法保留最近的调用，与日志级别无关，可以通过JMX导出或在异常时自动写入文件
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.recorder.FlightRecorder
+     */
+    private boolean flightRecorder;
+
+    /**
+     * 飞行记录器中每个方法的内存预算(KB)，小于等于0表示不记录
+     *
+     * @see ReqResLog#flightRecorderBudgetKb()
+     */
+    private Integer flightRecorderBudgetKb;
+
+    /**
+     * 飞行记录器如何保存请求参数与返回值 REFERENCE/TRUNCATED/NONE
+     * REFERENCE：只保存引用，导出时才序列化，记录的代价最小；导出的是对象当前的内容，被引用的对象在被覆盖前不会被回收，内存预算不包含这部分
+     * TRUNCATED：记录时序列化成json，超过flightRecorderMaxLength后立即停止，内存预算按最大长度估算
+     * NONE：只保存traceId、耗时与是否发生异常
+     * -------------
+     * 默认生效配置: TRUNCATED
+     */
+    private String flightRecorderCapture;
+
+    /**
+     * 飞行记录器中每个请求参数与返回值最多记录的字节数，小于等于0表示不限制
+     * -------------
+     * 默认生效配置: 256
+     */
+    private int flightRecorderMaxLength = 256;
+
+    /**
+     * 方法抛出这些异常类型(全限定名，包括子类)时，自动把所有方法最近的调用写入文件
+     * -------------
+     * 默认生效配置: 空(不自动导出)
+     */
+    private List<String> flightRecorderDumpOn = new ArrayList<>();
+
+    /**
+     * 飞行记录器导出文件的目录
+     * -------------
+     * 默认生效配置: java.io.tmpdir
+     */
+    private String flightRecorderDumpDir;
+
+    /**
+     * 两次自动导出的最小间隔(毫秒)
+     * -------------
+     * 默认生效配置: 60000
+     */
+    private long flightRecorderDumpIntervalMs = 60000L;
+
+    /**
+     * 是否开启自适应降级
+     * 为true时后台线程定时采集CPU、GC、异步日志队列与方法p99耗时，压力大时逐级降低日志的详细程度
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.LoadSheddingController
+     */
+    private boolean loadShedding;
+
+    /**
+     * 自适应降级的采集周期(毫秒)
+     * -------------
+     * 默认生效配置: 1000
+     */
+    private long sheddingIntervalMs = 1000L;
+
+    /**
+     * 进程CPU使用率达到这个值(0~1)时认为压力大，小于等于0表示不使用这个信号
+     * -------------
+     * 默认生效配置: 0.85
+     */
+    private double sheddingCpuThreshold = 0.85;
+
+    /**
+     * 采集周期内GC耗时占比达到这个值(0~1)时认为压力大，小于等于0表示不使用这个信号
+     * -------------
+     * 默认生效配置: 0.1
+     */
+    private double sheddingGcThreshold = 0.1;
+
+    /**
+     * 异步日志队列使用率达到这个值(0~1)时认为压力大，小于等于0表示不使用这个信号
+     * -------------
+     * 默认生效配置: 0.8
+     */
+    private double sheddingQueueThreshold = 0.8;
+
+    /**
+     * 某个方法采集周期内的p99耗时达到其基线的这个倍数时认为压力大，需要开启metrics-enabled，小于等于0表示不使用这个信号
+     * -------------
+     * 默认生效配置: 3
+     */
+    private double sheddingP99Factor = 3;
+
+    /**
+     * 压力值(各信号除以阈值的最大值)小于这个值时认为压力已经缓解
+     * -------------
+     * 默认生效配置: 0.7
+     */
+    private double sheddingRecoveryRatio = 0.7;
+
+    /**
+     * 连续多少个采集周期压力大时降一级
+     * -------------
+     * 默认生效配置: 2
+     */
+    private int sheddingStepDownTicks = 2;
+
+    /**
+     * 连续多少个采集周期压力缓解时升一级
+     * -------------
+     * 默认生效配置: 10
+     */
+    private int sheddingStepUpTicks = 10;
+
+    /**
+     * 采样率[0, 1]，按traceId的hash决定一次调用是否记录req/res日志
+     * -------------
+     * 默认生效配置: 1(全部记录)
+     *
+     * @see com.yytech.logger.trace.TraceSampler
+     */
+    private Double sampleRate;
+
+    /**
+     * 没有被采样的调用抛出异常时是否仍然记录throwable日志
+     * -------------
+     * 默认生效配置: true
+     */
+    private boolean sampleThrowableBypass = true;
+
+    /**
+     * 每个方法每秒最多记录的req/res日志数(按调用计)，小于等于0表示不限制
+     * -------------
+     * 默认生效配置: 空(不限制)
+     */
+    private Integer maxLogsPerSecond;
+
+    /**
+     * 是否按trace缓冲日志(尾部采样)
+     * 为true时默认的LoggerService会被TailSamplingLoggerService包装，入口方法(traceIdEntry=true)完成时
+     * 只有trace内发生过异常或入口方法耗时达到tailLatencyBudgetMs的trace才会被记录
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.TailSamplingLoggerService
+     */
+    private boolean tailSampling;
+
+    /**
+     * 尾部采样时入口方法耗时达到这个值(毫秒)则记录整个trace
+     * -------------
+     * 默认生效配置: 1000
+     */
+    private long tailLatencyBudgetMs = 1000L;
+
+    /**
+     * 尾部采样时同时缓冲的最大trace数，达到后新的trace不再缓冲，日志直接记录
+     * -------------
+     * 默认生效配置: 10000
+     */
+    private int tailMaxTraces = 10000;
+
+    /**
+     * 尾部采样时单个trace最多缓冲的日志数，超过后先丢弃这个trace中最早的普通日志
+     * -------------
+     * 默认生效配置: 256
+     */
+    private int tailMaxRecordsPerTrace = 256;
+
+    /**
+     * 尾部采样时所有trace缓冲日志的最大估算大小(KB)，超过后先丢弃同一trace中最早的普通日志
+     * -------------
+     * 默认生效配置: 65536
+     */
+    private long tailMaxBufferedKb = 65536L;
+
+    /**
+     * 尾部采样时trace最长缓冲时间(毫秒)，超过后被驱逐
+     * -------------
+     * 默认生效配置: 60000
+     */
+    private long tailMaxTraceAgeMs = 60000L;
+
+    /**
+     * 慢调用阈值(毫秒)，大于0时开启
+     * -------------
+     * 默认生效配置: 空(不开启)
+     */
+    private Long slowThresholdMs;
+
+    /**
+     * 开启慢调用阈值时，方法执行前如何保存请求参数 REFERENCE/SNAPSHOT
+     * -------------
+     * 默认生效配置: REFERENCE
+     */
+    private String slowCapture;
+
+    /**
+     * 被代理方法返回Flux时，返回日志中记录的前N个元素个数，同时用于估算全部元素的字节数
+     * -------------
+     * 默认生效配置: 3
+     */
+    private int fluxSampleSize = 3;
+
+    /**
+     * 是否记录每个方法的调用指标(调用次数、异常次数、耗时百分位)
+     * 为true时容器中会有一个ReqResLogMetrics，Micrometer在classpath中时还会自动桥接到Micrometer
+     * 日志不可用的方法同样会记录指标
+     * -------------
+     * 默认生效配置: false
+     *
+     * @see com.yytech.logger.metrics.ReqResLogMetrics
+     */
+    private boolean metricsEnabled;
+
     public Level getLevelWithDefault(ReqResLog annotation) {
         Level first = Level.fromStr(annotation.level());
         Level second = Level.fromStr(this.level);
@@ -123,6 +524,16 @@ public class ReqResLogProperties {
         return ReqResLogUtil.getWithDefault(first, second, LogType.JSON);
     }
 
+    public int getMaxReqLengthWithDefault(ReqResLog annotation) {
+        Integer first = annotation.maxReqLength() > 0 ? annotation.maxReqLength() : null;
+        return ReqResLogUtil.getWithDefault(first, this.maxReqLength, 0);
+    }
+
+    public int getMaxResLengthWithDefault(ReqResLog annotation) {
+        Integer first = annotation.maxResLength() > 0 ? annotation.maxResLength() : null;
+        return ReqResLogUtil.getWithDefault(first, this.maxResLength, 0);
+    }
+
     public ThrowableLogType getThrowableLogTypeWithDefault(ReqResLog annotation) {
         ThrowableLogType first = ThrowableLogType.fromStr(annotation.throwableLogType());
         ThrowableLogType second = ThrowableLogType.fromStr(this.throwableLogType);
@@ -146,6 +557,54 @@ public class ReqResLogProperties {
                 traceIdMethod, "");
     }
 
+    public LogMode getLogModeWithDefault(ReqResLog annotation) {
+        LogMode first = LogMode.fromStr(annotation.logMode());
+        LogMode second = LogMode.fromStr(this.logMode);
+        return ReqResLogUtil.getWithDefault(first, second, LogMode.SEPARATE);
+    }
+
+    public double getSampleRateWithDefault(ReqResLog annotation) {
+        Double first = annotation.sampleRate() >= 0 ? annotation.sampleRate() : null;
+        double sampleRate = ReqResLogUtil.getWithDefault(first, this.sampleRate, 1D);
+        return Math.min(1D, Math.max(0D, sampleRate));
+    }
+
+    public int getMaxLogsPerSecondWithDefault(ReqResLog annotation) {
+        Integer first = annotation.maxLogsPerSecond() >= 0 ? annotation.maxLogsPerSecond() : null;
+        return ReqResLogUtil.getWithDefault(first, this.maxLogsPerSecond, 0);
+    }
+
+    public long getSlowThresholdMsWithDefault(ReqResLog annotation) {
+        Long first = annotation.slowThresholdMs() >= 0 ? annotation.slowThresholdMs() : null;
+        long slowThresholdMs = ReqResLogUtil.getWithDefault(first, this.slowThresholdMs, 0L);
+        return Math.max(0L, slowThresholdMs);
+    }
+
+    public SlowCapture getSlowCaptureWithDefault(ReqResLog annotation) {
+        SlowCapture first = SlowCapture.fromStr(annotation.slowCapture());
+        SlowCapture second = SlowCapture.fromStr(this.slowCapture);
+        return ReqResLogUtil.getWithDefault(first, second, SlowCapture.REFERENCE);
+    }
+
+    public SerializationFallback getSerializationFallbackWithDefault() {
+        return ReqResLogUtil.getWithDefault(null, SerializationFallback.fromStr(this.serializationFallback),
+                SerializationFallback.SUMMARY);
+    }
+
+    public int getFlightRecorderBudgetKbWithDefault(ReqResLog annotation) {
+        Integer first = annotation.flightRecorderBudgetKb() >= 0 ? annotation.flightRecorderBudgetKb() : null;
+        return ReqResLogUtil.getWithDefault(first, this.flightRecorderBudgetKb, 512);
+    }
+
+    public FlightRecorderCapture getFlightRecorderCaptureWithDefault() {
+        return ReqResLogUtil.getWithDefault(null, FlightRecorderCapture.fromStr(this.flightRecorderCapture),
+                FlightRecorderCapture.TRUNCATED);
+    }
+
+    public OverflowPolicy getAsyncOverflowPolicyWithDefault() {
+        return ReqResLogUtil.getWithDefault(null, OverflowPolicy.fromStr(this.asyncOverflowPolicy), OverflowPolicy.SYNC);
+    }
+
     public enum Level {
         TRACE, DEBUG, INFO, WARN, ERROR;
 
@@ -192,7 +651,7 @@ public class ReqResLogProperties {
     }
 
     public enum LogType {
-        JSON, TO_STRING, NONE;
+        JSON, TO_STRING, SUMMARY, NONE;
 
         public static LogType fromStr(String str) {
             if (StringUtil.isNotEmpty(str)) {
@@ -207,7 +666,7 @@ public class ReqResLogProperties {
     }
 
     public enum ThrowableLogType {
-        STACK, MESSAGE, NONE;
+        STACK, MESSAGE, FINGERPRINT, NONE;
 
         public static ThrowableLogType fromStr(String str) {
             if (StringUtil.isNotEmpty(str)) {
@@ -222,7 +681,7 @@ public class ReqResLogProperties {
     }
 
     public enum TraceType {
-        UUID, METHOD, NONE;
+        UUID, TIME, TRACEPARENT, METHOD, NONE;
 
         public static TraceType fromStr(String str) {
             if (StringUtil.isNotEmpty(str)) {
@@ -236,4 +695,79 @@ public class ReqResLogProperties {
         }
     }
 
+    public enum LogMode {
+        SEPARATE, COMBINED;
+
+        public static LogMode fromStr(String str) {
+            if (StringUtil.isNotEmpty(str)) {
+                for (LogMode value : LogMode.values()) {
+                    if (value.toString().equalsIgnoreCase(str)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum SlowCapture {
+        REFERENCE, SNAPSHOT;
+
+        public static SlowCapture fromStr(String str) {
+            if (StringUtil.isNotEmpty(str)) {
+                for (SlowCapture value : SlowCapture.values()) {
+                    if (value.toString().equalsIgnoreCase(str)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum SerializationFallback {
+        TO_STRING, SUMMARY;
+
+        public static SerializationFallback fromStr(String str) {
+            if (StringUtil.isNotEmpty(str)) {
+                for (SerializationFallback value : SerializationFallback.values()) {
+                    if (value.toString().equalsIgnoreCase(str)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum FlightRecorderCapture {
+        REFERENCE, TRUNCATED, NONE;
+
+        public static FlightRecorderCapture fromStr(String str) {
+            if (StringUtil.isNotEmpty(str)) {
+                for (FlightRecorderCapture value : FlightRecorderCapture.values()) {
+                    if (value.toString().equalsIgnoreCase(str)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    public enum OverflowPolicy {
+        BLOCK, DROP_NEWEST, DROP_OLDEST, SYNC;
+
+        public static OverflowPolicy fromStr(String str) {
+            if (StringUtil.isNotEmpty(str)) {
+                for (OverflowPolicy value : OverflowPolicy.values()) {
+                    if (value.toString().equalsIgnoreCase(str)) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,207 @@
+package com.yytech.logger.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 无锁的耗时直方图
+ * 采用与HdrHistogram类似的对数-线性分桶：每个2的幂区间再均分为16个子桶，相对误差不超过1/16
+ * 记录范围为0 ~ 2^40纳秒(约18分钟)，超出的值记录在最后一个桶中
+ * -------------
+ * 为了避免高并发下多个线程竞争同一个计数，桶计数按线程分散到多个条带(stripe)中
+ * 开始时只使用一个条带，更新计数的CAS失败(出现竞争)时才把使用的条带数翻倍，最多为CPU数(不超过16)
+ * 条带在第一次被使用时才分配，没有竞争的方法只占用一个条带，读取时把所有条带合并
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_VALUE_BITS = 40;
+
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+    /**
+     * 当前使用的条带数，为2的幂，出现竞争时翻倍
+     */
+    private volatile int activeStripes = 1;
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, processors)) * 2 - 1);
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+    }
+
+    /**
+     * 记录一个耗时
+     *
+     * @param valueNanos 耗时(纳秒)
+     */
+    public void record(long valueNanos) {
+        long value = valueNanos < 0 ? 0 : Math.min(valueNanos, MAX_VALUE);
+        int active = activeStripes;
+        AtomicLongArray stripe = stripe((int) Thread.currentThread().getId() & (active - 1));
+        int bucket = bucketIndex(value);
+        long count = stripe.get(bucket);
+        if (!stripe.compareAndSet(bucket, count, count + 1)) {
+            //出现竞争，之后的记录分散到更多的条带上
+            if (active < stripes.length() && activeStripes == active) {
+                activeStripes = active << 1;
+            }
+            stripe.incrementAndGet(bucket);
+        }
+        max.accumulate(value);
+    }
+
+    /**
+     * @return 当前使用的条带数
+     */
+    int getActiveStripes() {
+        return activeStripes;
+    }
+
+    private AtomicLongArray stripe(int stripeIndex) {
+        AtomicLongArray stripe = stripes.get(stripeIndex);
+        if (stripe == null) {
+            stripes.compareAndSet(stripeIndex, null, new AtomicLongArray(BUCKET_COUNT));
+            stripe = stripes.get(stripeIndex);
+        }
+        return stripe;
+    }
+
+    /**
+     * 合并所有条带，生成当前的快照
+     *
+     * @return 直方图快照
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            for (int j = 0; j < BUCKET_COUNT; j++) {
+                counts[j] += stripe.get(j);
+            }
+        }
+        return new Snapshot(counts, max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * 直方图某一时刻的快照
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long totalCount;
+
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+            this.max = max;
+        }
+
+        /**
+         * @return 记录的总次数
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * @return 记录到的最大耗时(纳秒)
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * 计算两个快照之间新记录的部分，用于统计一段时间内的百分位耗时
+         * 区间内的最大耗时无法精确得到，取最高的非空桶的上界(不超过当前记录到的最大耗时)
+         *
+         * @param previous 更早的快照，为null时返回this
+         * @return 两个快照之间的直方图
+         */
+        public Snapshot minus(Snapshot previous) {
+            if (previous == null) {
+                return this;
+            }
+            long[] delta = new long[counts.length];
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = Math.max(0, counts[i] - previous.counts[i]);
+                if (delta[i] > 0) {
+                    highest = i;
+                }
+            }
+            return new Snapshot(delta, highest < 0 ? 0 : Math.min(bucketUpperBound(highest), max));
+        }
+
+        /**
+         * 获取百分位耗时，返回值所在桶的上界，且不会超过记录到的最大耗时
+         *
+         * @param percentile 百分位，取值0~100，如99.9
+         * @return 耗时(纳秒)，没有记录时为0
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            double p = Math.min(Math.max(percentile, 0), 100);
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.yytech.logger.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 某个方法的调用指标
+ * 包括调用次数、异常次数与耗时直方图，记录过程无锁，可以在高并发下使用
+ */
+@Getter
+public final class MethodMetrics {
+
+    /**
+     * 被代理对象的实际类型名
+     */
+    private final String targetClassTypeName;
+
+    /**
+     * 方法名字
+     */
+    private final String methodName;
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    MethodMetrics(String targetClassTypeName, String methodName) {
+        this.targetClassTypeName = targetClassTypeName;
+        this.methodName = methodName;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param elapsedNanos 方法执行耗时(纳秒)
+     * @param error        方法是否抛出了异常
+     */
+    public void record(long elapsedNanos, boolean error) {
+        calls.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalNanos.add(elapsedNanos);
+        latency.record(elapsedNanos);
+    }
+
+    /**
+     * @return 当前指标的快照
+     */
+    public MethodMetricsSnapshot snapshot() {
+        return new MethodMetricsSnapshot(targetClassTypeName, methodName,
+                calls.sum(), errors.sum(), totalNanos.sum(), latency.snapshot());
+    }
+
+}
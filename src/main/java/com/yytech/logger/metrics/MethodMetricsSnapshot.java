@@ -0,0 +1,49 @@
+package com.yytech.logger.metrics;
+
+import lombok.Getter;
+
+/**
+ * 某个方法的调用指标快照，耗时单位均为纳秒
+ */
+@Getter
+public final class MethodMetricsSnapshot {
+
+    private final String targetClassTypeName;
+
+    private final String methodName;
+
+    private final long calls;
+
+    private final long errors;
+
+    private final long meanNanos;
+
+    private final long p50Nanos;
+
+    private final long p99Nanos;
+
+    private final long p999Nanos;
+
+    private final long maxNanos;
+
+    MethodMetricsSnapshot(String targetClassTypeName, String methodName, long calls, long errors,
+                          long totalNanos, LatencyHistogram.Snapshot latency) {
+        this.targetClassTypeName = targetClassTypeName;
+        this.methodName = methodName;
+        this.calls = calls;
+        this.errors = errors;
+        this.meanNanos = calls == 0 ? 0 : totalNanos / calls;
+        this.p50Nanos = latency.getValueAtPercentile(50);
+        this.p99Nanos = latency.getValueAtPercentile(99);
+        this.p999Nanos = latency.getValueAtPercentile(99.9);
+        this.maxNanos = latency.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return targetClassTypeName + "." + methodName + " calls:" + calls + " errors:" + errors
+                + " mean:" + meanNanos + "ns p50:" + p50Nanos + "ns p99:" + p99Nanos
+                + "ns p999:" + p999Nanos + "ns max:" + maxNanos + "ns";
+    }
+
+}
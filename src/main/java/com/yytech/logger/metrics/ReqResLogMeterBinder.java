@@ -0,0 +1,100 @@
+package com.yytech.logger.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把ReqResLogMetrics桥接到Micrometer
+ * 只有Micrometer在classpath中时才会被加载，之后新出现的方法也会自动注册
+ * -------------
+ * 注册的指标(tag为class与method)：
+ * req.res.log.calls：调用次数
+ * req.res.log.errors：异常次数
+ * req.res.log.latency：耗时百分位(秒)，tag quantile为0.5/0.99/0.999
+ * req.res.log.latency.max：最大耗时(秒)
+ * -------------
+ * 同一个方法的耗时指标共用一个快照，一次抓取(scrape)只合并一次直方图
+ */
+public class ReqResLogMeterBinder implements MeterBinder {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    /**
+     * 耗时快照的有效时间，一次抓取内读取的各个耗时指标使用同一个快照
+     */
+    private static final long SNAPSHOT_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReqResLogMetrics reqResLogMetrics;
+
+    public ReqResLogMeterBinder(ReqResLogMetrics reqResLogMetrics) {
+        this.reqResLogMetrics = reqResLogMetrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        //同名同tag的指标重复注册时Micrometer会返回已存在的指标，因此重复回调是安全的
+        reqResLogMetrics.addListener(methodMetrics -> register(registry, methodMetrics));
+    }
+
+    private void register(MeterRegistry registry, MethodMetrics methodMetrics) {
+        Tags tags = Tags.of("class", methodMetrics.getTargetClassTypeName(), "method", methodMetrics.getMethodName());
+        FunctionCounter.builder("req.res.log.calls", methodMetrics, m -> m.getCalls().sum())
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder("req.res.log.errors", methodMetrics, m -> m.getErrors().sum())
+                .tags(tags)
+                .register(registry);
+        CachedSnapshot latency = new CachedSnapshot(methodMetrics.getLatency());
+        for (double quantile : QUANTILES) {
+            double percentile = quantile * 100;
+            Gauge.builder("req.res.log.latency", latency,
+                    l -> toSeconds(l.get().getValueAtPercentile(percentile)))
+                    .tags(tags)
+                    .tag("quantile", String.valueOf(quantile))
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+        Gauge.builder("req.res.log.latency.max", latency,
+                l -> toSeconds(l.get().getMax()))
+                .tags(tags)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private static double toSeconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * 在SNAPSHOT_TTL_NANOS内复用的直方图快照
+     */
+    static final class CachedSnapshot {
+
+        private final LatencyHistogram histogram;
+
+        private volatile LatencyHistogram.Snapshot snapshot;
+
+        private volatile long takenNanos;
+
+        CachedSnapshot(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        LatencyHistogram.Snapshot get() {
+            long now = System.nanoTime();
+            LatencyHistogram.Snapshot current = snapshot;
+            if (current == null || now - takenNanos >= SNAPSHOT_TTL_NANOS) {
+                current = histogram.snapshot();
+                snapshot = current;
+                takenNanos = now;
+            }
+            return current;
+        }
+    }
+
+}
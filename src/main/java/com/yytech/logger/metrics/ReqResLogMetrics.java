@@ -0,0 +1,78 @@
+package com.yytech.logger.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 被ReqResLog注释的方法的调用指标注册表
+ * 以 targetClassTypeName + methodName 区分方法，同名的重载方法共用一份指标
+ * -------------
+ * 切面在构建每个方法的日志记录计划时获取对应的MethodMetrics并直接持有，之后的记录不再查找注册表
+ */
+public class ReqResLogMetrics {
+
+    private final ConcurrentMap<String, MethodMetrics> methodMetricsMap = new ConcurrentHashMap<>();
+
+    private final List<Consumer<MethodMetrics>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 获取某个方法的调用指标，不存在时创建
+     *
+     * @param targetClassTypeName 被代理对象的实际类型名
+     * @param methodName          方法名字
+     * @return 调用指标
+     */
+    public MethodMetrics getMethodMetrics(String targetClassTypeName, String methodName) {
+        String key = targetClassTypeName + "." + methodName;
+        MethodMetrics methodMetrics = methodMetricsMap.get(key);
+        if (methodMetrics != null) {
+            return methodMetrics;
+        }
+        MethodMetrics created = new MethodMetrics(targetClassTypeName, methodName);
+        methodMetrics = methodMetricsMap.putIfAbsent(key, created);
+        if (methodMetrics != null) {
+            return methodMetrics;
+        }
+        for (Consumer<MethodMetrics> listener : listeners) {
+            listener.accept(created);
+        }
+        return created;
+    }
+
+    /**
+     * @return 当前所有方法的调用指标
+     */
+    public Collection<MethodMetrics> getAllMethodMetrics() {
+        return Collections.unmodifiableCollection(methodMetricsMap.values());
+    }
+
+    /**
+     * @return 当前所有方法的调用指标快照
+     */
+    public List<MethodMetricsSnapshot> snapshot() {
+        List<MethodMetricsSnapshot> snapshots = new ArrayList<>(methodMetricsMap.size());
+        for (MethodMetrics methodMetrics : methodMetricsMap.values()) {
+            snapshots.add(methodMetrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 注册监听，对已存在和之后新建的每个方法指标各回调一次
+     *
+     * @param listener 监听
+     */
+    public void addListener(Consumer<MethodMetrics> listener) {
+        listeners.add(listener);
+        for (MethodMetrics methodMetrics : methodMetricsMap.values()) {
+            listener.accept(methodMetrics);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.yytech.logger.recorder;
+
+import com.yytech.logger.util.ReqResLogUtil;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 飞行记录器中的一次调用，创建后不再修改
+ * 按flightRecorderCapture的不同，args/result保存的是请求参数与返回值的引用或截断后的json，NONE时为null
+ */
+@Getter
+public final class FlightRecord {
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * 在所属方法内的序号，从0开始递增
+     */
+    private final long sequence;
+
+    /**
+     * 方法完成时的System.currentTimeMillis()
+     */
+    private final long endMillis;
+
+    private final String traceId;
+
+    private final long elapsedNanos;
+
+    private final Object[] args;
+
+    private final Object result;
+
+    /**
+     * 异常的类型名，正常完成时为null
+     */
+    private final String throwableType;
+
+    private final String throwableMessage;
+
+    FlightRecord(long sequence, long endMillis, String traceId, long elapsedNanos, Object[] args, Object result,
+                 String throwableType, String throwableMessage) {
+        this.sequence = sequence;
+        this.endMillis = endMillis;
+        this.traceId = traceId;
+        this.elapsedNanos = elapsedNanos;
+        this.args = args;
+        this.result = result;
+        this.throwableType = throwableType;
+        this.throwableMessage = throwableMessage;
+    }
+
+    /**
+     * @return 是否正常完成
+     */
+    public boolean isSucceeded() {
+        return throwableType == null;
+    }
+
+    /**
+     * 输出一行记录，保存引用的请求参数与返回值在这时才序列化
+     *
+     * @param builder   输出
+     * @param maxLength 每个请求参数与返回值最多输出的字节数，小于等于0时不限制
+     */
+    void render(StringBuilder builder, int maxLength) {
+        builder.append(TIME_FORMATTER.format(Instant.ofEpochMilli(endMillis)));
+        if (traceId != null) {
+            builder.append(" traceId:").append(traceId);
+        }
+        builder.append(" elapsed:").append(TimeUnit.NANOSECONDS.toMicros(elapsedNanos)).append("us");
+        if (throwableType == null) {
+            builder.append(" OK");
+        } else {
+            builder.append(" [").append(throwableType).append("]:").append(throwableMessage);
+        }
+        if (args != null) {
+            builder.append(" args:[");
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) {
+                    builder.append(",");
+                }
+                builder.append(renderValue(args[i], maxLength));
+            }
+            builder.append("]");
+        }
+        if (args != null && throwableType == null) {
+            builder.append(" result:").append(renderValue(result, maxLength));
+        }
+    }
+
+    private static String renderValue(Object value, int maxLength) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        try {
+            return ReqResLogUtil.toJsonWithoutNull(value, maxLength);
+        } catch (Throwable e) {
+            //不能序列化的参数(如流、连接等)记录toString()
+            return ReqResLogUtil.truncate(String.valueOf(value), maxLength);
+        }
+    }
+
+}
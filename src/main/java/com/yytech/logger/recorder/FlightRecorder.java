@@ -0,0 +1,313 @@
+package com.yytech.logger.recorder;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.SkippedParamTypes;
+import com.yytech.logger.util.StringUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 飞行记录器：在内存中为每个被ReqResLog注释的方法保留最近的调用，与日志级别无关，日志不可用的方法同样会记录
+ * 每个方法一个{@link MethodFlightRecorder}环形缓冲区，写入无锁，缓冲区满后覆盖最旧的记录
+ * -------------
+ * 缓冲区大小按内存预算估算：预算 / 每条记录的估算字节数，向下取2的幂，最少16条
+ * REFERENCE模式只保存请求参数与返回值的引用，导出时才序列化，估算中不包含被引用对象本身的大小
+ * TRUNCATED模式在记录时保存序列化到maxLength后停止的json，估算按最大长度计算
+ * 两种模式下SkippedParamTypes中的类型(流、Servlet请求等)都只保存 &lt;类型名&gt;，不会被缓冲区引用
+ * -------------
+ * 导出方式：
+ * 1. JMX：{@link #start()}后注册为com.yytech.logger:type=FlightRecorder，可以在jconsole等工具中调用dump/dumpToFile
+ * 2. 代码中直接调用{@link #dump()}、{@link #dumpMethod(String)}，例如在自定义的actuator endpoint中
+ * 3. 方法抛出dumpOn中的异常类型(包括子类)时，在抛出时取得所有方法的快照，由后台线程写入dumpDir下的文件
+ * 两次自动导出的间隔不小于dumpInterval，避免异常集中出现时反复写文件
+ */
+@Slf4j
+public class FlightRecorder implements FlightRecorderMBean {
+
+    public static final String OBJECT_NAME = "com.yytech.logger:type=FlightRecorder";
+
+    /**
+     * 每条记录固定的估算字节数：FlightRecord对象、槽位引用与请求参数数组头
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static final int REFERENCE_BYTES = 8;
+
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    /**
+     * TRUNCATED模式不限制长度时，按这个长度估算每个字符串
+     */
+    private static final int UNLIMITED_LENGTH_ESTIMATE = 256;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final DateTimeFormatter FILE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+    @Getter
+    private final ReqResLogProperties.FlightRecorderCapture capture;
+
+    @Getter
+    private final int maxLength;
+
+    private final Set<String> dumpOnTypes;
+
+    private final Path dumpDir;
+
+    private final long dumpIntervalNanos;
+
+    private final ConcurrentMap<String, MethodFlightRecorder> methodRecorders = new ConcurrentHashMap<>();
+
+    /**
+     * 某个异常类型是否匹配dumpOn，对每个类型只判断一次
+     */
+    private final ClassValue<Boolean> dumpOnMatches = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> k = type; k != null; k = k.getSuperclass()) {
+                if (dumpOnTypes.contains(k.getName())) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
+    /**
+     * 某个类型的对象在记录时是否只保存 &lt;类型名&gt;，对每个类型只判断一次
+     */
+    private final ClassValue<String> skippedPlaceholders = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return SkippedParamTypes.isSkipped(type) ? "<" + type.getSimpleName() + ">" : null;
+        }
+    };
+
+    private final AtomicLong lastAutoDumpNanos;
+
+    private final AtomicLong dumpFileSequence = new AtomicLong();
+
+    private final LongAdder autoDumpCount = new LongAdder();
+
+    private volatile ObjectName registeredName;
+
+    public FlightRecorder(ReqResLogProperties reqResLogProperties) {
+        this.capture = reqResLogProperties.getFlightRecorderCaptureWithDefault();
+        this.maxLength = reqResLogProperties.getFlightRecorderMaxLength();
+        this.dumpOnTypes = Collections.unmodifiableSet(new HashSet<>(reqResLogProperties.getFlightRecorderDumpOn()));
+        String dir = reqResLogProperties.getFlightRecorderDumpDir();
+        this.dumpDir = Paths.get(StringUtil.isNotEmpty(dir) ? dir : System.getProperty("java.io.tmpdir"));
+        this.dumpIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reqResLogProperties.getFlightRecorderDumpIntervalMs()));
+        this.lastAutoDumpNanos = new AtomicLong(System.nanoTime() - dumpIntervalNanos);
+    }
+
+    /**
+     * 获取某个方法的环形缓冲区，不存在时按内存预算创建
+     * 以 targetClassTypeName + methodName 区分方法，同名的重载方法共用一个缓冲区，大小以第一次创建时为准
+     *
+     * @param targetClassTypeName 被代理对象的实际类型名
+     * @param methodName          方法名字
+     * @param argCount            请求参数个数
+     * @param budgetKb            内存预算(KB)，小于等于0时不记录这个方法
+     * @return 环形缓冲区，不记录时为null
+     */
+    public MethodFlightRecorder getMethodRecorder(String targetClassTypeName, String methodName, int argCount, int budgetKb) {
+        if (budgetKb <= 0) {
+            return null;
+        }
+        String name = targetClassTypeName + "." + methodName;
+        return methodRecorders.computeIfAbsent(name,
+                k -> new MethodFlightRecorder(this, name, capacityOf(argCount, budgetKb)));
+    }
+
+    /**
+     * @param argCount 请求参数个数
+     * @param budgetKb 内存预算(KB)
+     * @return 预算内可以保留的记录数
+     */
+    int capacityOf(int argCount, int budgetKb) {
+        long entryBytes = ENTRY_OVERHEAD_BYTES + (long) REFERENCE_BYTES * argCount;
+        if (capture == ReqResLogProperties.FlightRecorderCapture.TRUNCATED) {
+            long length = maxLength > 0 ? maxLength : UNLIMITED_LENGTH_ESTIMATE;
+            entryBytes += (argCount + 1L) * (STRING_OVERHEAD_BYTES + 2 * length);
+        }
+        long entries = budgetKb * 1024L / entryBytes;
+        return Integer.highestOneBit((int) Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, entries)));
+    }
+
+    /**
+     * @param value 请求参数或返回值
+     * @return 不会被记录的类型返回 &lt;类型名&gt;，否则为null
+     */
+    String skippedPlaceholder(Object value) {
+        return value == null ? null : skippedPlaceholders.get(value.getClass());
+    }
+
+    /**
+     * 方法抛出异常时判断是否需要自动导出
+     *
+     * @param source    抛出异常的方法
+     * @param throwable 方法的throwable
+     */
+    void onThrowable(MethodFlightRecorder source, Throwable throwable) {
+        if (dumpOnTypes.isEmpty() || !dumpOnMatches.get(throwable.getClass())) {
+            return;
+        }
+        long now = System.nanoTime();
+        long lastAutoDump = lastAutoDumpNanos.get();
+        if (now - lastAutoDump < dumpIntervalNanos || !lastAutoDumpNanos.compareAndSet(lastAutoDump, now)) {
+            return;
+        }
+        autoDumpCount.increment();
+        //在抛出时取得快照，序列化与写文件在后台线程完成，不阻塞业务线程
+        String reason = source.getName() + " threw [" + throwable.getClass().getTypeName() + "]:" + throwable.getMessage();
+        Map<String, List<FlightRecord>> snapshot = snapshot(null);
+        Thread dumpThread = new Thread(() -> writeDump(reason, snapshot), "req-res-log-flight-dump");
+        dumpThread.setDaemon(true);
+        dumpThread.start();
+    }
+
+    @Override
+    public String dump() {
+        return render("dump", snapshot(null));
+    }
+
+    @Override
+    public String dumpMethod(String method) {
+        if (StringUtil.isEmpty(method)) {
+            return "";
+        }
+        Map<String, List<FlightRecord>> snapshot = snapshot(method);
+        return snapshot.isEmpty() ? "" : render("dump " + method, snapshot);
+    }
+
+    @Override
+    public String dumpToFile() {
+        return writeDump("dumpToFile", snapshot(null));
+    }
+
+    @Override
+    public int getMethodCount() {
+        return methodRecorders.size();
+    }
+
+    @Override
+    public long getRecordedCount() {
+        long recorded = 0;
+        for (MethodFlightRecorder methodRecorder : methodRecorders.values()) {
+            recorded += methodRecorder.getRecordedCount();
+        }
+        return recorded;
+    }
+
+    @Override
+    public long getAutoDumpCount() {
+        return autoDumpCount.sum();
+    }
+
+    /**
+     * 注册JMX，同名的MBean已经存在时(例如同一个JVM中有多个容器)只输出warn日志
+     */
+    public void start() {
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                log.warn("FlightRecorder {} is already registered", OBJECT_NAME);
+                return;
+            }
+            mBeanServer.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (Exception e) {
+            log.warn("FlightRecorder registerMBean", e);
+        }
+    }
+
+    /**
+     * 注销JMX
+     */
+    public void shutdown() {
+        ObjectName objectName = registeredName;
+        if (objectName == null) {
+            return;
+        }
+        registeredName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            log.warn("FlightRecorder unregisterMBean", e);
+        }
+    }
+
+    /**
+     * @param method 类名.方法名，为null时取所有方法
+     * @return 按方法名排列的快照
+     */
+    private Map<String, List<FlightRecord>> snapshot(String method) {
+        Map<String, List<FlightRecord>> snapshot = new TreeMap<>();
+        for (MethodFlightRecorder methodRecorder : methodRecorders.values()) {
+            String name = methodRecorder.getName();
+            if (method == null || name.equals(method) || name.endsWith("." + method)) {
+                snapshot.put(name, methodRecorder.snapshot());
+            }
+        }
+        return snapshot;
+    }
+
+    private String render(String reason, Map<String, List<FlightRecord>> snapshot) {
+        StringBuilder builder = new StringBuilder("# req-res-log flight recorder ")
+                .append(TIME_FORMATTER.format(Instant.now())).append(" ").append(reason);
+        for (Map.Entry<String, List<FlightRecord>> entry : snapshot.entrySet()) {
+            List<FlightRecord> records = entry.getValue();
+            builder.append("\n## ").append(entry.getKey()).append(" (").append(records.size()).append(" records)");
+            for (FlightRecord flightRecord : records) {
+                builder.append("\n");
+                flightRecord.render(builder, maxLength);
+            }
+        }
+        return builder.append("\n").toString();
+    }
+
+    private String writeDump(String reason, Map<String, List<FlightRecord>> snapshot) {
+        try {
+            Files.createDirectories(dumpDir);
+            Path file = dumpDir.resolve("req-res-log-flight-" + FILE_TIME_FORMATTER.format(Instant.now())
+                    + "-" + dumpFileSequence.incrementAndGet() + ".log");
+            Files.write(file, render(reason, snapshot).getBytes(StandardCharsets.UTF_8));
+            log.warn("FlightRecorder {} dumped to {}", reason, file);
+            return file.toString();
+        } catch (Throwable e) {
+            log.error("FlightRecorder dumpToFile", e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.yytech.logger.recorder;
+
+/**
+ * 飞行记录器的JMX接口，注册名为com.yytech.logger:type=FlightRecorder
+ */
+public interface FlightRecorderMBean {
+
+    /**
+     * @return 所有方法最近调用的文本
+     */
+    String dump();
+
+    /**
+     * @param method 类名.方法名，类名可以是简单类名或全限定名
+     * @return 这个方法最近调用的文本，没有记录时为空字符串
+     */
+    String dumpMethod(String method);
+
+    /**
+     * 把所有方法最近调用写入dumpDir下的文件
+     *
+     * @return 文件路径，写入失败时为null
+     */
+    String dumpToFile();
+
+    /**
+     * @return 被记录的方法数
+     */
+    int getMethodCount();
+
+    /**
+     * @return 所有方法累计记录的调用次数
+     */
+    long getRecordedCount();
+
+    /**
+     * @return 因异常自动写入文件的次数
+     */
+    long getAutoDumpCount();
+
+}
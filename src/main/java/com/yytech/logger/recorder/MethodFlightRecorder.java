@@ -0,0 +1,141 @@
+package com.yytech.logger.recorder;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.ReqResLogUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 单个方法最近调用的环形缓冲区
+ * 写入时用一次getAndIncrement取得序号，再把不可变的FlightRecord放到序号对应的槽位，没有锁也没有CAS重试
+ * 缓冲区满后新的记录覆盖最旧的记录；读取时按序号校验槽位，被覆盖或还没有写入完成的槽位会被跳过
+ */
+public final class MethodFlightRecorder {
+
+    private final FlightRecorder owner;
+
+    private final String name;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<FlightRecord> slots;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    MethodFlightRecorder(FlightRecorder owner, String name, int capacity) {
+        this.owner = owner;
+        this.name = name;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param traceId      traceId，没有时为null
+     * @param elapsedNanos 耗时纳秒数
+     * @param args         方法实际的请求参数
+     * @param result       返回值或异步的实际结果
+     * @param throwable    方法的throwable，正常完成时为null
+     */
+    public void record(String traceId, long elapsedNanos, Object[] args, Object result, Throwable throwable) {
+        long seq = sequence.getAndIncrement();
+        Object[] capturedArgs = null;
+        Object capturedResult = null;
+        ReqResLogProperties.FlightRecorderCapture capture = owner.getCapture();
+        if (capture == ReqResLogProperties.FlightRecorderCapture.REFERENCE) {
+            capturedArgs = args;
+            if (args != null) {
+                for (int i = 0; i < args.length; i++) {
+                    String placeholder = owner.skippedPlaceholder(args[i]);
+                    if (placeholder != null) {
+                        if (capturedArgs == args) {
+                            capturedArgs = args.clone();
+                        }
+                        capturedArgs[i] = placeholder;
+                    }
+                }
+            }
+            String placeholder = owner.skippedPlaceholder(result);
+            capturedResult = placeholder != null ? placeholder : result;
+        } else if (capture == ReqResLogProperties.FlightRecorderCapture.TRUNCATED) {
+            int maxLength = owner.getMaxLength();
+            capturedArgs = new Object[args == null ? 0 : args.length];
+            for (int i = 0; i < capturedArgs.length; i++) {
+                capturedArgs[i] = truncatedJson(args[i], maxLength);
+            }
+            capturedResult = truncatedJson(result, maxLength);
+        }
+        FlightRecord flightRecord = new FlightRecord(seq, System.currentTimeMillis(), traceId, elapsedNanos,
+                capturedArgs, capturedResult,
+                throwable == null ? null : throwable.getClass().getTypeName(),
+                throwable == null ? null : throwable.getMessage());
+        slots.lazySet((int) (seq & mask), flightRecord);
+        if (throwable != null) {
+            owner.onThrowable(this, throwable);
+        }
+    }
+
+    /**
+     * @return 缓冲区中的记录，按序号从旧到新排列
+     */
+    public List<FlightRecord> snapshot() {
+        long end = sequence.get();
+        long start = Math.max(0, end - capacity);
+        List<FlightRecord> records = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            FlightRecord flightRecord = slots.get((int) (seq & mask));
+            if (flightRecord != null && flightRecord.getSequence() == seq) {
+                records.add(flightRecord);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return 类名.方法名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 最多保留的记录数
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 累计记录的调用次数
+     */
+    public long getRecordedCount() {
+        return sequence.get();
+    }
+
+    /**
+     * 在记录时序列化，超过maxLength后立即停止，不会先生成完整的json或toString()
+     */
+    private String truncatedJson(Object value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        String placeholder = owner.skippedPlaceholder(value);
+        if (placeholder != null) {
+            return placeholder;
+        }
+        try {
+            return ReqResLogUtil.toJsonWithoutNull(value, maxLength);
+        } catch (Throwable e) {
+            //不能序列化的对象记录toString()
+            return ReqResLogUtil.truncate(String.valueOf(value), maxLength);
+        }
+    }
+
+}
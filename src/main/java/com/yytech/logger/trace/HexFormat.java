@@ -0,0 +1,28 @@
+package com.yytech.logger.trace;
+
+/**
+ * 把数字直接写成小写16进制字符，不经过正则或中间字符串
+ */
+final class HexFormat {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexFormat() {
+    }
+
+    /**
+     * 把value的低(length * 4)位写入dst，高位在前，不足时补0
+     *
+     * @param value  要写入的数字
+     * @param dst    目标字符数组
+     * @param offset 写入的起始位置
+     * @param length 写入的16进制字符数，最多16个
+     */
+    static void write(long value, char[] dst, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            dst[i] = DIGITS[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+}
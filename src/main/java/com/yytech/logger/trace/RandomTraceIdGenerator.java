@@ -0,0 +1,26 @@
+package com.yytech.logger.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 128位随机traceId，32个小写16进制字符
+ * 格式与去掉"-"的UUID(版本4)一致，但使用ThreadLocalRandom，多线程下没有竞争
+ * 不适用于需要密码学安全随机数的场景
+ */
+public final class RandomTraceIdGenerator implements TraceIdGenerator {
+
+    public static final RandomTraceIdGenerator INSTANCE = new RandomTraceIdGenerator();
+
+    @Override
+    public String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        //与UUID.randomUUID()一样设置版本号与变体位
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & ~(0xC000000000000000L)) | 0x8000000000000000L;
+        char[] chars = new char[32];
+        HexFormat.write(mostSigBits, chars, 0, 16);
+        HexFormat.write(leastSigBits, chars, 16, 16);
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.yytech.logger.trace;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按时间有序的traceId，32个小写16进制字符，按字符串排序即为按生成时间排序(毫秒精度)
+ * 组成：48位毫秒时间戳 + 16位节点号 + 24位线程标记 + 16位序号 + 24位随机数
+ * -------------
+ * 序号在每个线程内独立递增，生成过程不访问任何共享的可变状态，可以随核数线性扩展
+ * 同一线程同一毫秒内序号用尽时，时间戳逻辑上向后借1毫秒，保证同一线程内严格递增
+ * 节点号默认取 进程号@主机名 的hash，多实例部署时可以通过 req-res-log.trace-node-id 指定
+ */
+public final class TimeOrderedTraceIdGenerator implements TraceIdGenerator {
+
+    public static final TimeOrderedTraceIdGenerator INSTANCE = new TimeOrderedTraceIdGenerator();
+
+    private static final int SEQUENCE_MASK = 0xFFFF;
+
+    private static final ThreadLocal<ThreadState> THREAD_STATE = ThreadLocal.withInitial(ThreadState::new);
+
+    private volatile int nodeId = defaultNodeId();
+
+    /**
+     * @return 当前的节点号
+     */
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 设置节点号，只取低16位
+     *
+     * @param nodeId 节点号
+     */
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId & 0xFFFF;
+    }
+
+    @Override
+    public String generate() {
+        ThreadState state = THREAD_STATE.get();
+        long now = System.currentTimeMillis();
+        if (now > state.lastMillis) {
+            state.lastMillis = now;
+            state.sequence = 0;
+        } else if (++state.sequence > SEQUENCE_MASK) {
+            state.lastMillis++;
+            state.sequence = 0;
+        }
+        char[] chars = new char[32];
+        HexFormat.write(state.lastMillis, chars, 0, 12);
+        HexFormat.write(nodeId, chars, 12, 4);
+        HexFormat.write(state.threadTag, chars, 16, 6);
+        HexFormat.write(state.sequence, chars, 22, 4);
+        HexFormat.write(ThreadLocalRandom.current().nextInt(), chars, 26, 6);
+        return new String(chars);
+    }
+
+    private static int defaultNodeId() {
+        return ManagementFactory.getRuntimeMXBean().getName().hashCode() & 0xFFFF;
+    }
+
+    private static final class ThreadState {
+
+        /**
+         * 线程id与随机数混合，降低不同线程标记相同的概率
+         */
+        private final int threadTag = (int) (Thread.currentThread().getId() * 0x9E3779B9L
+                ^ ThreadLocalRandom.current().nextInt()) & 0xFFFFFF;
+
+        private long lastMillis;
+
+        private int sequence;
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.yytech.logger.trace;
+
+/**
+ * traceId生成器
+ * 实现类必须是线程安全的，并且不应在生成过程中加锁或依赖共享的随机数源
+ */
+public interface TraceIdGenerator {
+
+    /**
+     * 生成一个新的traceId
+     *
+     * @return traceId
+     */
+    String generate();
+
+}
@@ -0,0 +1,65 @@
+package com.yytech.logger.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按traceId的hash决定一次调用是否被采样
+ * 同一个traceId总是得到相同的结果，所以同一个trace内的方法、以及共享这个traceId的其他服务会一起保留或丢弃
+ * -------------
+ * 算法：对traceId的每个char(UTF-16)做64位FNV-1a，再经过MurmurHash3的fmix64混合
+ * 取结果的高53位作为[0, 1)之间的值，小于采样率时保留
+ * 其他服务使用同样的算法和采样率即可得到一致的结果
+ */
+public final class TraceSampler {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private TraceSampler() {
+    }
+
+    /**
+     * @param traceId    traceId，为空时按随机数采样
+     * @param sampleRate 采样率[0, 1]
+     * @return 是否保留
+     */
+    public static boolean isSampled(String traceId, double sampleRate) {
+        if (sampleRate >= 1) {
+            return true;
+        }
+        if (sampleRate <= 0) {
+            return false;
+        }
+        if (traceId == null || traceId.isEmpty()) {
+            return ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+        return toUnitInterval(hash(traceId)) < sampleRate;
+    }
+
+    /**
+     * @param traceId traceId
+     * @return traceId的64位hash
+     */
+    public static long hash(String traceId) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < traceId.length(); i++) {
+            hash ^= traceId.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        //FNV-1a的低位分布较差，再混合一次让相近的traceId(如按时间递增的)也均匀分布
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static double toUnitInterval(long hash) {
+        return (hash >>> 11) * DOUBLE_UNIT;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.yytech.logger.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 与W3C Trace Context兼容的traceparent，格式为 00-{32位trace-id}-{16位parent-id}-01
+ * trace-id与parent-id均为ThreadLocalRandom生成的非全0随机数，可以直接作为traceparent请求头传给下游
+ *
+ * @see <a href="https://www.w3.org/TR/trace-context/#traceparent-header">traceparent</a>
+ */
+public final class TraceparentTraceIdGenerator implements TraceIdGenerator {
+
+    public static final TraceparentTraceIdGenerator INSTANCE = new TraceparentTraceIdGenerator();
+
+    @Override
+    public String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long traceIdHigh = random.nextLong();
+        long traceIdLow = random.nextLong();
+        if (traceIdHigh == 0 && traceIdLow == 0) {
+            traceIdLow = 1;
+        }
+        long parentId = random.nextLong();
+        if (parentId == 0) {
+            parentId = 1;
+        }
+        char[] chars = new char[55];
+        chars[0] = '0';
+        chars[1] = '0';
+        chars[2] = '-';
+        HexFormat.write(traceIdHigh, chars, 3, 16);
+        HexFormat.write(traceIdLow, chars, 19, 16);
+        chars[35] = '-';
+        HexFormat.write(parentId, chars, 36, 16);
+        chars[52] = '-';
+        chars[53] = '0';
+        chars[54] = '1';
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.yytech.logger.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * 可复用、可限制长度的字符缓冲区
+ * 开启长度限制后按UTF-8编码统计写入的字节数，超过限制时只保留限制以内的内容并抛出异常
+ * 让正在进行的序列化立即停止，而不是序列化完整个对象之后再截断
+ */
+public final class BoundedCharWriter extends Writer {
+
+    private char[] chars;
+
+    private int length;
+
+    /**
+     * 长度限制开始的位置，小于0表示没有开启长度限制
+     */
+    private int budgetStart = -1;
+
+    private long budgetBytes;
+
+    private long countedBytes;
+
+    private boolean exceeded;
+
+    public BoundedCharWriter(int initialCapacity) {
+        this.chars = new char[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * 生成截断标记
+     *
+     * @param countedBytes 截断时已经统计到的字节数
+     * @return 截断标记
+     */
+    public static String truncatedMarker(long countedBytes) {
+        return "...(truncated, " + countedBytes + "+ bytes)";
+    }
+
+    /**
+     * 统计字符串的UTF-8字节数，不需要编码成byte[]
+     *
+     * @param str 字符串
+     * @return UTF-8字节数
+     */
+    public static int utf8Length(CharSequence str) {
+        int bytes = 0;
+        for (int i = 0; i < str.length(); i++) {
+            bytes += utf8Length(str.charAt(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * 从当前位置开始限制写入的字节数
+     *
+     * @param maxBytes 最多写入的字节数
+     */
+    public void startBudget(long maxBytes) {
+        this.budgetStart = length;
+        this.budgetBytes = maxBytes;
+        this.countedBytes = 0;
+        this.exceeded = false;
+    }
+
+    /**
+     * 结束长度限制
+     */
+    public void endBudget() {
+        this.budgetStart = -1;
+    }
+
+    /**
+     * @return 本次长度限制内是否发生了截断
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * @return 本次长度限制内已经统计到的字节数，发生截断时包含被丢弃的那部分
+     */
+    public long getCountedBytes() {
+        return countedBytes;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int accepted = budgetStart < 0 ? len : accept(cbuf, null, off, len);
+        ensureCapacity(accepted);
+        System.arraycopy(cbuf, off, chars, length, accepted);
+        length += accepted;
+        if (accepted < len) {
+            throw new BudgetExceededException();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int accepted = budgetStart < 0 ? len : accept(null, str, off, len);
+        ensureCapacity(accepted);
+        str.getChars(off, off + accepted, chars, length);
+        length += accepted;
+        if (accepted < len) {
+            throw new BudgetExceededException();
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (budgetStart >= 0) {
+            char[] single = {(char) c};
+            write(single, 0, 1);
+            return;
+        }
+        ensureCapacity(1);
+        chars[length++] = (char) c;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * 统计这段字符的UTF-8字节数，返回长度限制内可以写入的字符数
+     */
+    private int accept(char[] cbuf, String str, int off, int len) {
+        if (exceeded) {
+            return 0;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = cbuf != null ? cbuf[off + i] : str.charAt(off + i);
+            int bytes = utf8Length(c);
+            if (countedBytes + bytes > budgetBytes) {
+                exceeded = true;
+                for (int j = i; j < len; j++) {
+                    countedBytes += utf8Length(cbuf != null ? cbuf[off + j] : str.charAt(off + j));
+                }
+                return i;
+            }
+            countedBytes += bytes;
+        }
+        return len;
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        if (Character.isHighSurrogate(c)) {
+            //代理对按4个字节统计在高位上
+            return 4;
+        }
+        if (Character.isLowSurrogate(c)) {
+            return 0;
+        }
+        return 3;
+    }
+
+    private void ensureCapacity(int len) {
+        int required = length + len;
+        if (required > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(required, chars.length << 1));
+        }
+    }
+
+    /**
+     * 清空内容，保留已经分配的缓冲区
+     */
+    public void reset() {
+        length = 0;
+        budgetStart = -1;
+        exceeded = false;
+    }
+
+    /**
+     * @return 已经写入的字符数
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return 缓冲区容量
+     */
+    public int capacity() {
+        return chars.length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * 超过长度限制时抛出，用于中断正在进行的序列化
+     * 不记录堆栈，创建的代价很小
+     */
+    private static final class BudgetExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private BudgetExceededException() {
+            super("log length budget exceeded");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+}
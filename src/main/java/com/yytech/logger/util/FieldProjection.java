@@ -0,0 +1,160 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * 字段投影：只记录请求参数或返回值中的几个属性，而不是序列化整个对象
+ * 每个属性路径在构建日志记录计划时编译为PropertyPath，每次调用只执行取值与几个值的序列化
+ * -------------
+ * 投影结果是一个json对象，key为属性路径原文，如 {"order.id":1001,"order.items.size()":3}
+ * 值为null的属性不输出；属性名匹配字段脱敏规则时输出脱敏后的值
+ */
+public final class FieldProjection {
+
+    private final PropertyPath[] paths;
+
+    /**
+     * 与paths一一对应的脱敏规则，不需要脱敏时为null
+     */
+    private final MaskRule[] maskRules;
+
+    /**
+     * 是否从请求参数开始取值，为false时从返回值开始取值
+     */
+    private final boolean fromArgs;
+
+    private FieldProjection(PropertyPath[] paths, boolean fromArgs) {
+        this.paths = paths;
+        this.fromArgs = fromArgs;
+        this.maskRules = new MaskRule[paths.length];
+        MaskingSerializerModifier maskingModifier = ReqResLogUtil.getMaskingModifier();
+        for (int i = 0; i < paths.length; i++) {
+            String leafName = paths[i].getLeafName();
+            if (leafName != null) {
+                maskRules[i] = maskingModifier.ruleOf(paths[i].getLeafOwnerType(), leafName);
+            }
+        }
+    }
+
+    /**
+     * 编译从请求参数开始的字段投影，路径的第一段是请求参数的名字或argN
+     *
+     * @param fields         属性路径，如 order.id、order.items.size()、user.tier
+     * @param parameterTypes 方法请求参数类型
+     * @param parameterNames 方法请求参数名字，无法获取时为null
+     * @return 字段投影
+     * @throws IllegalArgumentException 某个属性路径不合法
+     */
+    public static FieldProjection compileForArgs(String[] fields, Class<?>[] parameterTypes, String[] parameterNames) {
+        PropertyPath[] paths = new PropertyPath[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            paths[i] = PropertyPath.compile(fields[i], parameterTypes, parameterNames);
+        }
+        return new FieldProjection(paths, true);
+    }
+
+    /**
+     * 编译从返回值开始的字段投影，路径的每一段都是返回值上的属性
+     *
+     * @param fields     属性路径，如 id、items.size()
+     * @param resultType 返回值的声明类型，异步返回值为Object.class
+     * @return 字段投影
+     * @throws IllegalArgumentException 某个属性路径不合法
+     */
+    public static FieldProjection compileForResult(String[] fields, Class<?> resultType) {
+        PropertyPath[] paths = new PropertyPath[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            paths[i] = PropertyPath.compile(fields[i], resultType);
+        }
+        return new FieldProjection(paths, false);
+    }
+
+    /**
+     * 生成本次调用的投影结果，只保存引用，在序列化时才取值
+     *
+     * @param source 请求参数数组或返回值
+     * @return 可以直接按JSON/TO_STRING记录的投影结果
+     */
+    public Projected project(Object source) {
+        return new Projected(this, source);
+    }
+
+    private Object valueAt(int index, Object source) throws Throwable {
+        return fromArgs ? paths[index].get((Object[]) source) : paths[index].getFrom(source);
+    }
+
+    /**
+     * 一次调用的投影结果
+     * 实现JsonSerializable，因此可以经过共享的ObjectWriter序列化，同样支持长度限制与流式日志模式
+     */
+    public static final class Projected implements JsonSerializable {
+
+        private final FieldProjection projection;
+
+        private final Object source;
+
+        private Projected(FieldProjection projection, Object source) {
+            this.projection = projection;
+            this.source = source;
+        }
+
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartObject();
+            PropertyPath[] paths = projection.paths;
+            for (int i = 0; i < paths.length; i++) {
+                Object value = valueAt(i);
+                if (value == null) {
+                    continue;
+                }
+                gen.writeFieldName(paths[i].getExpression());
+                MaskRule maskRule = projection.maskRules[i];
+                if (maskRule != null) {
+                    gen.writeString(maskRule.mask(value));
+                } else {
+                    serializers.defaultSerializeValue(value, gen);
+                }
+            }
+            gen.writeEndObject();
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+
+        private Object valueAt(int index) {
+            try {
+                return projection.valueAt(index, source);
+            } catch (Throwable e) {
+                //取值失败时只记录异常类型，不影响其他属性
+                return "<" + e.getClass().getSimpleName() + ">";
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            PropertyPath[] paths = projection.paths;
+            for (int i = 0; i < paths.length; i++) {
+                Object value = valueAt(i);
+                if (value == null) {
+                    continue;
+                }
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                MaskRule maskRule = projection.maskRules[i];
+                sb.append(paths[i].getExpression()).append("=").append(maskRule != null ? maskRule.mask(value) : value);
+            }
+            return sb.append("}").toString();
+        }
+    }
+
+}
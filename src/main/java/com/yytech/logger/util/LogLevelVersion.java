@@ -0,0 +1,78 @@
+package com.yytech.logger.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 日志级别配置的版本号
+ * 每个方法的日志是否可用会被缓存起来，版本号变化后缓存失效，下次调用时重新判断
+ * -------------
+ * 使用logback时会自动监听日志级别变化，其他情况下(如自定义LoggerService的可用性发生变化)
+ * 需要主动调用{@link #increment()}
+ * 没有注册监听时(如log4j2等其他日志实现)，缓存还会每隔revalidateInterval重新判断一次，
+ * revalidateInterval小于等于0时不缓存，每次调用都重新判断
+ */
+public class LogLevelVersion {
+
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private static volatile boolean listening;
+
+    private static volatile long revalidateIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * @return 当前版本号
+     */
+    public static int current() {
+        return version.get();
+    }
+
+    /**
+     * 日志级别发生变化，让所有缓存的日志可用性失效
+     */
+    public static void increment() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * @param listening 是否已经注册了日志级别变化的监听，为true时缓存只在版本号变化时失效
+     */
+    public static void setListening(boolean listening) {
+        LogLevelVersion.listening = listening;
+        increment();
+    }
+
+    /**
+     * @return 是否已经注册了日志级别变化的监听
+     */
+    public static boolean isListening() {
+        return listening;
+    }
+
+    /**
+     * @param revalidateIntervalMs 没有注册监听时重新判断日志可用性的间隔(毫秒)，小于等于0时不缓存
+     */
+    public static void setRevalidateIntervalMs(long revalidateIntervalMs) {
+        revalidateIntervalNanos = TimeUnit.MILLISECONDS.toNanos(revalidateIntervalMs);
+    }
+
+    /**
+     * @return 记录在缓存中的判断时间，注册了监听时不需要按时间失效，为0
+     */
+    public static long checkedNanos() {
+        return listening ? 0L : System.nanoTime();
+    }
+
+    /**
+     * @param checkedNanos 缓存的判断时间
+     * @return 没有注册监听时，缓存是否已经超过revalidateInterval需要重新判断
+     */
+    public static boolean isExpired(long checkedNanos) {
+        if (listening) {
+            return false;
+        }
+        long interval = revalidateIntervalNanos;
+        return interval <= 0 || System.nanoTime() - checkedNanos >= interval;
+    }
+
+}
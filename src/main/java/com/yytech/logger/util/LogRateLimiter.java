@@ -0,0 +1,172 @@
+package com.yytech.logger.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个方法每秒最多记录的日志数
+ * 令牌桶按GCRA(通用信元速率算法)实现，每个桶只有一个"理论到达时间"，用CAS更新，没有锁
+ * 为了避免所有线程竞争同一个CAS，速率被平均分到多个条带上，线程优先使用自己的条带
+ * 自己的条带没有令牌时再依次尝试其他条带，所以少数几个线程也能用满整个速率
+ * -------------
+ * 被限制的调用只计数，每个统计周期结束后输出一行汇总：N calls suppressed in last 10000ms，时间为实际的统计时长
+ * 汇总由周期结束后的第一次调用，或定时调用{@link #reportIfDue()}输出；关闭时调用{@link #flush()}输出最后一个周期
+ */
+@Slf4j
+public final class LogRateLimiter {
+
+    /**
+     * 每个条带占用的long个数，让不同条带落在不同的缓存行上
+     */
+    private static final int PADDING = 8;
+
+    private static final int MIN_STRIPE_RATE = 64;
+
+    private static final long DEFAULT_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String name;
+
+    private final int maxPerSecond;
+
+    private final int stripeMask;
+
+    /**
+     * 每个条带发放一个令牌的间隔
+     */
+    private final long intervalNanos;
+
+    /**
+     * 理论到达时间最多可以领先当前时间多少，相当于每个条带1秒的突发容量
+     */
+    private final long toleranceNanos;
+
+    private final AtomicLongArray theoreticalArrivals;
+
+    private final long reportIntervalNanos;
+
+    private final AtomicLong nextReportNanos;
+
+    /**
+     * 当前统计周期的开始时间
+     */
+    private final AtomicLong windowStartNanos;
+
+    private final LongAdder windowSuppressed = new LongAdder();
+
+    private final LongAdder totalSuppressed = new LongAdder();
+
+    /**
+     * @param name         出现在汇总日志中的名字，一般为类名.方法名
+     * @param maxPerSecond 每秒最多记录的日志数
+     */
+    public LogRateLimiter(String name, int maxPerSecond) {
+        this(name, maxPerSecond, DEFAULT_REPORT_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param name                出现在汇总日志中的名字，一般为类名.方法名
+     * @param maxPerSecond        每秒最多记录的日志数
+     * @param reportIntervalNanos 汇总被限制调用数的周期
+     */
+    public LogRateLimiter(String name, int maxPerSecond, long reportIntervalNanos) {
+        this.name = name;
+        this.maxPerSecond = Math.max(1, maxPerSecond);
+        int cpuStripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        //每个条带每秒至少MIN_STRIPE_RATE个令牌，避免速率不能被条带数整除时的误差
+        int stripes = Math.min(cpuStripes, Integer.highestOneBit(Math.max(1, this.maxPerSecond / MIN_STRIPE_RATE)));
+        this.stripeMask = stripes - 1;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(stripes) / this.maxPerSecond;
+        this.toleranceNanos = Math.max(0, TimeUnit.SECONDS.toNanos(1) - intervalNanos);
+        this.theoreticalArrivals = new AtomicLongArray(stripes * PADDING);
+        long now = System.nanoTime();
+        for (int i = 0; i < stripes; i++) {
+            theoreticalArrivals.set(i * PADDING, now);
+        }
+        this.reportIntervalNanos = reportIntervalNanos;
+        this.nextReportNanos = new AtomicLong(now + reportIntervalNanos);
+        this.windowStartNanos = new AtomicLong(now);
+    }
+
+    /**
+     * 尝试获取一个令牌，获取失败时计入被限制的调用数
+     *
+     * @return 本次调用是否可以记录日志
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        reportIfDue(now);
+        int home = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= stripeMask; i++) {
+            if (tryAcquire(((home + i) & stripeMask) * PADDING, now)) {
+                return true;
+            }
+        }
+        windowSuppressed.increment();
+        totalSuppressed.increment();
+        return false;
+    }
+
+    private boolean tryAcquire(int index, long now) {
+        for (; ; ) {
+            long tat = theoreticalArrivals.get(index);
+            long base = tat - now < 0 ? now : tat;
+            if (base - now > toleranceNanos) {
+                return false;
+            }
+            if (theoreticalArrivals.compareAndSet(index, tat, base + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 统计周期已经结束时输出汇总，没有调用的方法也能按时输出
+     */
+    public void reportIfDue() {
+        reportIfDue(System.nanoTime());
+    }
+
+    /**
+     * 立即输出当前统计周期的汇总，并开始新的统计周期，用于关闭时输出最后一个周期
+     */
+    public void flush() {
+        long now = System.nanoTime();
+        nextReportNanos.set(now + reportIntervalNanos);
+        report(now);
+    }
+
+    private void reportIfDue(long now) {
+        long nextReport = nextReportNanos.get();
+        if (now - nextReport >= 0 && nextReportNanos.compareAndSet(nextReport, now + reportIntervalNanos)) {
+            report(now);
+        }
+    }
+
+    private void report(long now) {
+        long windowNanos = now - windowStartNanos.getAndSet(now);
+        long suppressed = windowSuppressed.sumThenReset();
+        if (suppressed > 0) {
+            log.warn("{} {} calls suppressed in last {}ms by maxLogsPerSecond={}", name, suppressed,
+                    TimeUnit.NANOSECONDS.toMillis(windowNanos), maxPerSecond);
+        }
+    }
+
+    /**
+     * @return 每秒最多记录的日志数
+     */
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    /**
+     * @return 累计被限制的调用数
+     */
+    public long getSuppressedCount() {
+        return totalSuppressed.sum();
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.yytech.logger.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 监听logback的日志级别变化与重新配置，变化时让缓存的日志可用性失效
+ * 只有logback在classpath中时才会被加载
+ */
+public class LogbackLevelChangeListener implements LoggerContextListener {
+
+    /**
+     * 当前slf4j的实现是logback时注册监听
+     *
+     * @return 是否注册成功
+     */
+    public static boolean register() {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if (!(loggerFactory instanceof LoggerContext)) {
+            return false;
+        }
+        LoggerContext loggerContext = (LoggerContext) loggerFactory;
+        for (LoggerContextListener listener : loggerContext.getCopyOfListenerList()) {
+            if (listener instanceof LogbackLevelChangeListener) {
+                return true;
+            }
+        }
+        loggerContext.addListener(new LogbackLevelChangeListener());
+        return true;
+    }
+
+    @Override
+    public boolean isResetResistant() {
+        return true;
+    }
+
+    @Override
+    public void onStart(LoggerContext context) {
+        LogLevelVersion.increment();
+    }
+
+    @Override
+    public void onReset(LoggerContext context) {
+        LogLevelVersion.increment();
+    }
+
+    @Override
+    public void onStop(LoggerContext context) {
+        LogLevelVersion.increment();
+    }
+
+    @Override
+    public void onLevelChange(Logger logger, Level level) {
+        LogLevelVersion.increment();
+    }
+
+}
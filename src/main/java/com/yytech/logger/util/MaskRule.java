@@ -0,0 +1,70 @@
+package com.yytech.logger.util;
+
+/**
+ * 一个字段的脱敏规则：保留前keepFirst个字符与后keepLast个字符，中间替换为****
+ */
+public final class MaskRule {
+
+    /**
+     * 替换被隐藏部分的固定内容，不暴露被隐藏部分的长度
+     */
+    public static final String MASK = "****";
+
+    /**
+     * 整体替换的规则
+     */
+    public static final MaskRule ALL = new MaskRule(0, 0);
+
+    private final int keepFirst;
+
+    private final int keepLast;
+
+    public MaskRule(int keepFirst, int keepLast) {
+        this.keepFirst = Math.max(0, keepFirst);
+        this.keepLast = Math.max(0, keepLast);
+    }
+
+    /**
+     * 解析脱敏字段配置，格式为 字段名模式[:keepFirst[:keepLast]]，例如 password、*phone*:3:4
+     *
+     * @param config 脱敏字段配置中的一项
+     * @return 字段名模式为key的规则
+     */
+    static MaskRule parse(String[] config) {
+        int keepFirst = config.length > 1 ? Integer.parseInt(config[1].trim()) : 0;
+        int keepLast = config.length > 2 ? Integer.parseInt(config[2].trim()) : 0;
+        return keepFirst == 0 && keepLast == 0 ? ALL : new MaskRule(keepFirst, keepLast);
+    }
+
+    /**
+     * 脱敏
+     *
+     * @param value 非null的字段值
+     * @return 脱敏后的字符串
+     */
+    public String mask(Object value) {
+        if (!(value instanceof CharSequence || value instanceof Number
+                || value instanceof Boolean || value instanceof Character)) {
+            return MASK;
+        }
+        String str = value.toString();
+        int length = str.length();
+        if (length <= keepFirst + keepLast) {
+            return MASK;
+        }
+        return new StringBuilder(keepFirst + MASK.length() + keepLast)
+                .append(str, 0, keepFirst)
+                .append(MASK)
+                .append(str, length - keepLast, length)
+                .toString();
+    }
+
+    public int getKeepFirst() {
+        return keepFirst;
+    }
+
+    public int getKeepLast() {
+        return keepLast;
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.yytech.logger.annotation.ReqResLogMask;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 字段脱敏
+ * Jackson为每个类型创建BeanSerializer时，把需要脱敏的属性替换为直接输出脱敏结果的BeanPropertyWriter
+ * 因此字段是否需要脱敏、使用哪个规则在每个类型上只判断一次，之后的序列化没有额外的匹配与后处理
+ * -------------
+ * 需要脱敏的属性：
+ * 1.字段或getter上有ReqResLogMask注释
+ * 2.属性名匹配全局配置的字段名模式(忽略大小写，*匹配任意字符)
+ * 注释优先于全局配置，只对bean的属性生效，Map的key不会被匹配
+ */
+public class MaskingSerializerModifier extends BeanSerializerModifier {
+
+    private final Map<Pattern, MaskRule> patternRules;
+
+    /**
+     * @param maskFields 字段名模式配置，格式为 字段名模式[:keepFirst[:keepLast]]，例如 password、*phone*:3:4
+     */
+    public MaskingSerializerModifier(List<String> maskFields) {
+        Map<Pattern, MaskRule> rules = new LinkedHashMap<>();
+        if (maskFields != null) {
+            for (String maskField : maskFields) {
+                if (StringUtil.isEmpty(maskField)) {
+                    continue;
+                }
+                String[] config = maskField.split(":");
+                rules.put(compileGlob(config[0].trim()), MaskRule.parse(config));
+            }
+        }
+        this.patternRules = Collections.unmodifiableMap(rules);
+    }
+
+    /**
+     * 创建注册了字段脱敏的Jackson模块
+     *
+     * @param modifier 字段脱敏
+     * @return Jackson模块
+     */
+    public static SimpleModule module(MaskingSerializerModifier modifier) {
+        SimpleModule module = new SimpleModule(MaskingSerializerModifier.class.getSimpleName());
+        module.setSerializerModifier(modifier);
+        return module;
+    }
+
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        String[] parts = glob.split("\\*", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (!parts[i].isEmpty()) {
+                regex.append(Pattern.quote(parts[i]));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    @Override
+    public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+                                                     List<BeanPropertyWriter> beanProperties) {
+        List<BeanPropertyWriter> changed = null;
+        for (int i = 0; i < beanProperties.size(); i++) {
+            BeanPropertyWriter writer = beanProperties.get(i);
+            MaskRule rule = writer instanceof MaskingPropertyWriter ? null : ruleOf(writer);
+            if (rule == null) {
+                continue;
+            }
+            if (changed == null) {
+                changed = new ArrayList<>(beanProperties);
+            }
+            changed.set(i, new MaskingPropertyWriter(writer, rule));
+        }
+        return changed == null ? beanProperties : changed;
+    }
+
+    /**
+     * @return 属性的脱敏规则，不需要脱敏时为null
+     */
+    MaskRule ruleOf(BeanPropertyWriter writer) {
+        ReqResLogMask mask = writer.getAnnotation(ReqResLogMask.class);
+        if (mask != null) {
+            return new MaskRule(mask.keepFirst(), mask.keepLast());
+        }
+        return ruleOfName(writer.getName());
+    }
+
+    /**
+     * 获取某个类型上某个属性的脱敏规则，用于不经过BeanSerializer直接输出的属性值(如字段投影)
+     *
+     * @param ownerType    属性所在的类型，未知时为null，此时只按全局配置的字段名模式匹配
+     * @param propertyName 属性名
+     * @return 脱敏规则，不需要脱敏时为null
+     */
+    public MaskRule ruleOf(Class<?> ownerType, String propertyName) {
+        if (ownerType != null) {
+            Field field = ReflectionUtils.findField(ownerType, propertyName);
+            ReqResLogMask mask = field == null ? null : field.getAnnotation(ReqResLogMask.class);
+            if (mask == null) {
+                String capitalized = StringUtils.capitalize(propertyName);
+                Method getter = ReflectionUtils.findMethod(ownerType, "get" + capitalized);
+                if (getter == null) {
+                    getter = ReflectionUtils.findMethod(ownerType, "is" + capitalized);
+                }
+                mask = getter == null ? null : getter.getAnnotation(ReqResLogMask.class);
+            }
+            if (mask != null) {
+                return new MaskRule(mask.keepFirst(), mask.keepLast());
+            }
+        }
+        return ruleOfName(propertyName);
+    }
+
+    private MaskRule ruleOfName(String propertyName) {
+        for (Map.Entry<Pattern, MaskRule> entry : patternRules.entrySet()) {
+            if (entry.getKey().matcher(propertyName).matches()) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 直接输出脱敏结果的属性
+     * 值为null时按原来的方式处理(例如不输出null字段)；非null的值同样按@JsonInclude(NON_EMPTY等)判断是否输出，
+     * 需要输出时输出脱敏后的字符串
+     */
+    static final class MaskingPropertyWriter extends BeanPropertyWriter {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MaskRule rule;
+
+        MaskingPropertyWriter(BeanPropertyWriter base, MaskRule rule) {
+            super(base);
+            this.rule = rule;
+        }
+
+        private MaskingPropertyWriter(MaskingPropertyWriter base, PropertyName name) {
+            super(base, name);
+            this.rule = base.rule;
+        }
+
+        @Override
+        protected BeanPropertyWriter _new(PropertyName newName) {
+            return new MaskingPropertyWriter(this, newName);
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            Object value = get(bean);
+            if (value == null) {
+                super.serializeAsField(bean, gen, prov);
+                return;
+            }
+            if (isSuppressed(value, prov)) {
+                return;
+            }
+            gen.writeFieldName(_name);
+            gen.writeString(rule.mask(value));
+        }
+
+        /**
+         * 与BeanPropertyWriter#serializeAsField中对非null值的判断一致
+         */
+        private boolean isSuppressed(Object value, SerializerProvider prov) throws JsonMappingException {
+            if (_suppressableValue == null) {
+                return false;
+            }
+            if (MARKER_FOR_EMPTY == _suppressableValue) {
+                JsonSerializer<Object> serializer = _serializer != null ? _serializer
+                        : prov.findValueSerializer(value.getClass(), this);
+                return serializer.isEmpty(prov, value);
+            }
+            return _suppressableValue.equals(value);
+        }
+
+        @Override
+        public void serializeAsElement(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            Object value = get(bean);
+            if (value == null) {
+                super.serializeAsElement(bean, gen, prov);
+                return;
+            }
+            gen.writeString(rule.mask(value));
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.yytech.logger.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界、无锁的多生产者多消费者环形队列
+ * 每个槽位带一个序号，生产者与消费者各自通过一次CAS占用位置，不使用任何锁
+ * -------------
+ * 容量会向上取整为2的幂
+ *
+ * @param <E> 元素类型
+ */
+public final class MpmcRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    /**
+     * 下一个写入位置
+     */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    /**
+     * 下一个读取位置
+     */
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+    public MpmcRingBuffer(int capacity) {
+        if (capacity < 2) {
+            capacity = 2;
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) {
+            throw new IllegalArgumentException("capacity too large: " + capacity);
+        }
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 尝试写入一个元素
+     *
+     * @param element 非空元素
+     * @return 队列已满时返回false
+     */
+    public boolean offer(E element) {
+        long pos = tail.get();
+        for (; ; ) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 尝试取出一个元素
+     *
+     * @return 队列为空时返回null
+     */
+    public E poll() {
+        long pos = head.get();
+        for (; ; ) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, pos + mask + 1);
+                    return element;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return 当前队列中元素的近似数量
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity());
+    }
+
+    /**
+     * @return 队列容量
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 填充缓存行，避免head与tail的伪共享
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+}
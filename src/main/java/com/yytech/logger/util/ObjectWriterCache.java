@@ -0,0 +1,92 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 基于共享ObjectMapper的ObjectWriter缓存
+ * 每种运行时类型只创建一次ObjectWriter，从而复用Jackson内部的序列化器缓存
+ * -------------
+ * 缓存的类型数量有上限，超过上限时按加入的顺序逐个淘汰最早缓存的类型，常用类型不会因为一次整体清空而全部重建
+ * 避免在大量动态ClassLoader的应用中长期持有Class引用
+ */
+public final class ObjectWriterCache {
+
+    /**
+     * 默认最多缓存的类型数量
+     */
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectWriter defaultWriter;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存类型的加入顺序，用于淘汰最早缓存的类型
+     */
+    private final Queue<Class<?>> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param objectMapper 共享的ObjectMapper，创建之后不应该再修改它的配置
+     * @param maxSize      最多缓存的类型数量，小于等于0时不缓存
+     */
+    public ObjectWriterCache(ObjectMapper objectMapper, int maxSize) {
+        this.objectMapper = objectMapper;
+        this.defaultWriter = objectMapper.writer();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取某个运行时类型对应的ObjectWriter
+     *
+     * @param type 运行时类型
+     * @return ObjectWriter
+     */
+    public ObjectWriter getWriter(Class<?> type) {
+        if (maxSize <= 0) {
+            return defaultWriter;
+        }
+        ObjectWriter writer = writers.get(type);
+        if (writer != null) {
+            return writer;
+        }
+        writer = objectMapper.writerFor(type);
+        ObjectWriter exists = writers.putIfAbsent(type, writer);
+        if (exists != null) {
+            return exists;
+        }
+        insertionOrder.offer(type);
+        while (writers.size() > maxSize) {
+            Class<?> eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            writers.remove(eldest);
+        }
+        return writer;
+    }
+
+    /**
+     * @return 共享的ObjectMapper
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return 当前缓存的类型数量
+     */
+    public int size() {
+        return writers.size();
+    }
+
+}
@@ -0,0 +1,320 @@
+package com.yytech.logger.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 编译好的属性路径，用于从方法请求参数中取值，如 arg1.header.requestId
+ * 路径在构建日志记录计划时编译一次，之后每次调用只执行缓存的MethodHandle链，不再有反射查找
+ * -------------
+ * 路径的第一段决定从哪个请求参数开始取值：
+ * 1.argN：第N个请求参数(从0开始)
+ * 2.请求参数的名字：该请求参数(需要编译时保留参数名，例如-g或-parameters)
+ * 3.其他情况：兼容旧的traceIdMethod写法，整个路径从第一个请求参数开始取值
+ * 备注：只有一段且第一个请求参数有同名无参方法时，按旧写法处理
+ * 之后的每一段依次按 无参方法name() > getName()/isName() > public字段name > Map.get("name") 的顺序取值
+ * 每一段可以带有"()"后缀，如 order.items.size()，与不带后缀时的解析方式相同
+ * 任意一段取到null时，整个路径的结果为null
+ * -------------
+ * 也可以通过{@link #compile(String, Class)}编译从某个对象(如返回值)开始的路径，此时每一段都是该对象上的属性
+ * -------------
+ * 每一段按声明类型预先解析；声明类型上找不到时(如声明为接口或Object)，按运行时类型解析并缓存最近一次的类型(单态缓存)
+ */
+public final class PropertyPath {
+
+    private static final Pattern ARG_INDEX = Pattern.compile("arg(\\d+)");
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final String expression;
+
+    private final int argIndex;
+
+    private final Segment[] segments;
+
+    /**
+     * 最后一段所在的声明类型，无法静态确定时为null
+     */
+    private final Class<?> leafOwnerType;
+
+    private PropertyPath(String expression, int argIndex, Segment[] segments, Class<?> leafOwnerType) {
+        this.expression = expression;
+        this.argIndex = argIndex;
+        this.segments = segments;
+        this.leafOwnerType = leafOwnerType;
+    }
+
+    /**
+     * 编译属性路径
+     *
+     * @param expression     属性路径
+     * @param parameterTypes 方法请求参数类型
+     * @param parameterNames 方法请求参数名字，无法获取时为null
+     * @return 编译好的属性路径
+     * @throws IllegalArgumentException 路径不合法，或某一段在一个final的声明类型上不存在
+     */
+    public static PropertyPath compile(String expression, Class<?>[] parameterTypes, String[] parameterNames) {
+        if (StringUtil.isEmpty(expression)) {
+            throw new IllegalArgumentException("empty property path");
+        }
+        String[] parts = expression.trim().split("\\.");
+        boolean legacy = parts.length == 1 && parameterTypes.length > 0 && hasNoArgMethod(parameterTypes[0], parts[0]);
+        int argIndex = legacy ? -1 : resolveArgIndex(parts[0], parameterNames);
+        int start = 1;
+        if (argIndex < 0) {
+            //兼容旧写法，从第一个参数开始
+            argIndex = 0;
+            start = 0;
+        }
+        if (argIndex >= parameterTypes.length) {
+            throw new IllegalArgumentException("property path " + expression + " refers to argument " + argIndex
+                    + " but method has " + parameterTypes.length + " parameters");
+        }
+        return compileSegments(expression, parts, start, argIndex, parameterTypes[argIndex]);
+    }
+
+    /**
+     * 编译从某个对象开始的属性路径，如返回值上的 order.items.size()
+     *
+     * @param expression 属性路径，每一段都是rootType上的属性
+     * @param rootType   路径起点的声明类型，未知时可以为Object.class
+     * @return 编译好的属性路径，通过{@link #getFrom(Object)}取值
+     * @throws IllegalArgumentException 路径不合法，或某一段在一个final的声明类型上不存在
+     */
+    public static PropertyPath compile(String expression, Class<?> rootType) {
+        if (StringUtil.isEmpty(expression)) {
+            throw new IllegalArgumentException("empty property path");
+        }
+        return compileSegments(expression, expression.trim().split("\\."), 0, 0, rootType);
+    }
+
+    private static PropertyPath compileSegments(String expression, String[] parts, int start, int argIndex,
+                                                Class<?> declaredType) {
+        Segment[] segments = new Segment[parts.length - start];
+        Class<?> ownerType = declaredType;
+        for (int i = start; i < parts.length; i++) {
+            String name = parts[i].endsWith("()") ? parts[i].substring(0, parts[i].length() - 2) : parts[i];
+            if (StringUtil.isEmpty(name)) {
+                throw new IllegalArgumentException("illegal property path " + expression);
+            }
+            ownerType = declaredType;
+            Segment segment = new Segment(name);
+            Resolved resolved = declaredType == null ? null : Segment.resolve(declaredType, name);
+            if (resolved != null && resolved.handle != null) {
+                segment.declared = resolved;
+                declaredType = resolved.returnType;
+            } else if (declaredType != null && isFinal(declaredType)) {
+                throw new IllegalArgumentException("no property " + name + " on " + declaredType.getTypeName()
+                        + " in property path " + expression);
+            } else {
+                declaredType = null;
+            }
+            segments[i - start] = segment;
+        }
+        return new PropertyPath(expression, argIndex, segments, ownerType);
+    }
+
+    private static int resolveArgIndex(String root, String[] parameterNames) {
+        Matcher matcher = ARG_INDEX.matcher(root);
+        if (matcher.matches()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        if (parameterNames != null) {
+            for (int i = 0; i < parameterNames.length; i++) {
+                if (root.equals(parameterNames[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasNoArgMethod(Class<?> type, String name) {
+        try {
+            type.getMethod(name);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean isFinal(Class<?> type) {
+        return type.isPrimitive() || type.isArray() || Modifier.isFinal(type.getModifiers());
+    }
+
+    /**
+     * 从请求参数中取值
+     *
+     * @param args 方法实际的请求参数
+     * @return 取到的值，任意一段为null时返回null
+     * @throws Throwable 取值方法抛出的异常
+     */
+    public Object get(Object[] args) throws Throwable {
+        if (args == null || args.length <= argIndex) {
+            return null;
+        }
+        return getFrom(args[argIndex]);
+    }
+
+    /**
+     * 从路径起点的对象开始取值
+     *
+     * @param root 路径起点的对象，对于从请求参数开始的路径是对应的请求参数
+     * @return 取到的值，任意一段为null时返回null
+     * @throws Throwable 取值方法抛出的异常
+     */
+    public Object getFrom(Object root) throws Throwable {
+        Object value = root;
+        for (Segment segment : segments) {
+            if (value == null) {
+                return null;
+            }
+            value = segment.get(value);
+        }
+        return value;
+    }
+
+    /**
+     * @return 最后一段属性名
+     */
+    public String getLeafName() {
+        return segments.length == 0 ? null : segments[segments.length - 1].name;
+    }
+
+    /**
+     * @return 最后一段所在的声明类型，无法静态确定时为null
+     */
+    public Class<?> getLeafOwnerType() {
+        return segments.length == 0 ? null : leafOwnerType;
+    }
+
+    /**
+     * @return 属性路径原文
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * 路径中的一段
+     */
+    private static final class Segment {
+
+        private final String name;
+
+        /**
+         * 按声明类型解析的结果，所有子类型都适用
+         */
+        private Resolved declared;
+
+        /**
+         * 按运行时类型解析的最近一次结果
+         */
+        private volatile Resolved runtime;
+
+        private Segment(String name) {
+            this.name = name;
+        }
+
+        private Object get(Object target) throws Throwable {
+            Resolved resolved = declared;
+            if (resolved == null) {
+                resolved = runtime;
+                Class<?> targetClass = target.getClass();
+                if (resolved == null || resolved.ownerClass != targetClass) {
+                    resolved = resolve(targetClass, name);
+                    runtime = resolved;
+                }
+            }
+            if (resolved.handle == null) {
+                return null;
+            }
+            return (Object) resolved.handle.invokeExact(target);
+        }
+
+        /**
+         * 在type上解析name对应的取值方法，找不到时返回handle为null的结果
+         */
+        private static Resolved resolve(Class<?> type, String name) {
+            try {
+                Method method = findMethod(type, name);
+                if (method != null) {
+                    method.setAccessible(true);
+                    MethodHandle handle = LOOKUP.unreflect(method).asType(GETTER_TYPE);
+                    return new Resolved(type, handle, method.getReturnType());
+                }
+                Field field = findField(type, name);
+                if (field != null) {
+                    field.setAccessible(true);
+                    MethodHandle handle = LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+                    return new Resolved(type, handle, field.getType());
+                }
+                if (Map.class.isAssignableFrom(type)) {
+                    MethodHandle mapGet = LOOKUP.findVirtual(Map.class, "get", MethodType.methodType(Object.class, Object.class));
+                    MethodHandle handle = MethodHandles.insertArguments(mapGet, 1, name).asType(GETTER_TYPE);
+                    return new Resolved(type, handle, Object.class);
+                }
+            } catch (IllegalAccessException | NoSuchMethodException | RuntimeException e) {
+                throw new IllegalArgumentException("can not access property " + name + " on " + type.getTypeName(), e);
+            }
+            return new Resolved(type, null, null);
+        }
+
+        private static Method findMethod(Class<?> type, String name) {
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            String[] candidates = {name, "get" + capitalized, "is" + capitalized};
+            for (String candidate : candidates) {
+                try {
+                    Method method = type.getMethod(candidate);
+                    if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+                        return method;
+                    }
+                } catch (NoSuchMethodException ignore) {
+                }
+            }
+            return null;
+        }
+
+        private static Field findField(Class<?> type, String name) {
+            try {
+                Field field = type.getField(name);
+                return Modifier.isStatic(field.getModifiers()) ? null : field;
+            } catch (NoSuchFieldException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 某个类型上一段路径的解析结果
+     */
+    private static final class Resolved {
+
+        private final Class<?> ownerClass;
+
+        private final MethodHandle handle;
+
+        private final Class<?> returnType;
+
+        private Resolved(Class<?> ownerClass, MethodHandle handle, Class<?> returnType) {
+            this.ownerClass = ownerClass;
+            this.handle = handle;
+            this.returnType = returnType;
+        }
+    }
+
+}
@@ -2,11 +2,17 @@ package com.yytech.logger.util;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yytech.logger.trace.RandomTraceIdGenerator;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.util.UUID;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 工具类
@@ -14,13 +20,144 @@ import java.util.UUID;
 @Slf4j
 public class ReqResLogUtil {
 
+    /**
+     * 记录json日志使用的配置，ObjectWriter缓存与字段脱敏总是一起替换
+     */
+    private static volatile JsonConfig jsonConfig = JsonConfig.defaults();
+
+    /**
+     * 设置记录json日志使用的ObjectMapper
+     * 会复制一份传入的ObjectMapper并设置为不输出null字段，不会修改传入的ObjectMapper
+     *
+     * @param objectMapper 例如Spring容器中已经注册了jsr310模块与命名策略的ObjectMapper
+     * @param cacheSize    最多缓存的ObjectWriter类型数量
+     */
+    public static void setObjectMapper(ObjectMapper objectMapper, int cacheSize) {
+        setObjectMapper(objectMapper, cacheSize, Collections.emptyList());
+    }
+
+    /**
+     * 设置记录json日志使用的ObjectMapper，并注册字段脱敏
+     * 会复制一份传入的ObjectMapper并设置为不输出null字段，不会修改传入的ObjectMapper
+     * -------------
+     * 会覆盖{@link #registerObjectMapper(Object, ObjectMapper, int, List)}注册的配置
+     *
+     * @param objectMapper 例如Spring容器中已经注册了jsr310模块与命名策略的ObjectMapper
+     * @param cacheSize    最多缓存的ObjectWriter类型数量
+     * @param maskFields   需要脱敏的字段名模式，格式为 字段名模式[:keepFirst[:keepLast]]
+     * @see MaskingSerializerModifier
+     */
+    public static synchronized void setObjectMapper(ObjectMapper objectMapper, int cacheSize, List<String> maskFields) {
+        jsonConfig = JsonConfig.of(null, objectMapper, cacheSize, maskFields);
+    }
+
+    /**
+     * 以owner的名义设置记录json日志使用的ObjectMapper，并注册字段脱敏
+     * 配置是进程内共享的，同一个JVM中有多个Spring容器时只有第一个注册的生效，
+     * 其他容器的注册被忽略并输出warn日志，直到第一个容器调用{@link #unregisterObjectMapper(Object)}
+     *
+     * @param owner        注册者，一般为自动配置类的实例
+     * @param objectMapper 例如Spring容器中已经注册了jsr310模块与命名策略的ObjectMapper
+     * @param cacheSize    最多缓存的ObjectWriter类型数量
+     * @param maskFields   需要脱敏的字段名模式，格式为 字段名模式[:keepFirst[:keepLast]]
+     * @return 是否注册成功
+     */
+    public static synchronized boolean registerObjectMapper(Object owner, ObjectMapper objectMapper, int cacheSize,
+                                                            List<String> maskFields) {
+        Object current = jsonConfig.owner;
+        if (current != null && current != owner) {
+            log.warn("ReqResLog json ObjectMapper already registered by {}, registration from {} ignored", current, owner);
+            return false;
+        }
+        jsonConfig = JsonConfig.of(owner, objectMapper, cacheSize, maskFields);
+        return true;
+    }
+
+    /**
+     * 撤销owner注册的ObjectMapper，恢复默认配置，之后其他容器可以重新注册
+     *
+     * @param owner 注册者
+     */
+    public static synchronized void unregisterObjectMapper(Object owner) {
+        if (owner != null && jsonConfig.owner == owner) {
+            jsonConfig = JsonConfig.defaults();
+        }
+    }
+
+    /**
+     * 获取记录json日志使用的ObjectMapper
+     *
+     * @return 共享的ObjectMapper，请勿修改它的配置
+     */
+    public static ObjectMapper getObjectMapper() {
+        return jsonConfig.objectWriterCache.getObjectMapper();
+    }
+
+    /**
+     * 获取记录json日志使用的ObjectWriter缓存
+     *
+     * @return ObjectWriter缓存
+     */
+    public static ObjectWriterCache getObjectWriterCache() {
+        return jsonConfig.objectWriterCache;
+    }
+
+    /**
+     * 获取当前生效的字段脱敏
+     *
+     * @return 与记录json日志使用的ObjectMapper中注册的是同一个
+     */
+    public static MaskingSerializerModifier getMaskingModifier() {
+        return jsonConfig.maskingModifier;
+    }
+
+    /**
+     * 一次注册的json配置
+     */
+    private static final class JsonConfig {
+
+        /**
+         * 注册者，默认配置或通过setObjectMapper设置时为null
+         */
+        private final Object owner;
+
+        /**
+         * 字段脱敏，已经注册在objectWriterCache的ObjectMapper中，字段投影等不经过BeanSerializer的输出用它查找脱敏规则
+         */
+        private final MaskingSerializerModifier maskingModifier;
+
+        /**
+         * 记录json日志使用的ObjectWriter缓存
+         */
+        private final ObjectWriterCache objectWriterCache;
+
+        private JsonConfig(Object owner, MaskingSerializerModifier maskingModifier, ObjectWriterCache objectWriterCache) {
+            this.owner = owner;
+            this.maskingModifier = maskingModifier;
+            this.objectWriterCache = objectWriterCache;
+        }
+
+        private static JsonConfig defaults() {
+            return of(null, null, ObjectWriterCache.DEFAULT_MAX_SIZE, Collections.emptyList());
+        }
+
+        private static JsonConfig of(Object owner, ObjectMapper objectMapper, int cacheSize, List<String> maskFields) {
+            MaskingSerializerModifier modifier = new MaskingSerializerModifier(maskFields);
+            ObjectMapper copy = objectMapper == null ? new ObjectMapper() : objectMapper.copy();
+            copy.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+            copy.registerModule(MaskingSerializerModifier.module(modifier));
+            return new JsonConfig(owner, modifier, new ObjectWriterCache(copy, cacheSize));
+        }
+    }
+
     /**
      * 生成一个uuid
      *
-     * @return 一个随机生成的uuid
+     * @return 一个随机生成的uuid，不包含"-"
+     * @see RandomTraceIdGenerator
      */
     public static String generateUuidId() {
-        return UUID.randomUUID().toString().replaceAll("-", "");
+        return RandomTraceIdGenerator.INSTANCE.generate();
     }
 
     /**
@@ -31,9 +168,96 @@ public class ReqResLogUtil {
      * @throws JsonProcessingException json处理异常
      */
     public static String toJsonWithoutNull(Object object) throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        return objectMapper.writeValueAsString(object);
+        if (object == null) {
+            return getObjectWriterCache().getObjectMapper().writeValueAsString(null);
+        }
+        return getObjectWriterCache().getWriter(object.getClass()).writeValueAsString(object);
+    }
+
+    /**
+     * 把对象转换成json，并限制json的字节数
+     * 超过限制时立即停止序列化，只保留限制以内的内容，并追加 ...(truncated, N+ bytes) 标记
+     *
+     * @param object   要转换成json的对象
+     * @param maxBytes 最多输出的字节数，小于等于0时不限制
+     * @return json字符串
+     * @throws JsonProcessingException json处理异常
+     */
+    public static String toJsonWithoutNull(Object object, int maxBytes) throws JsonProcessingException {
+        if (maxBytes <= 0 || object == null) {
+            return toJsonWithoutNull(object);
+        }
+        BoundedCharWriter writer = new BoundedCharWriter(Math.min(maxBytes, 1024));
+        writer.startBudget(maxBytes);
+        try {
+            getObjectWriterCache().getWriter(object.getClass()).writeValue(writer, object);
+        } catch (JsonProcessingException e) {
+            if (!writer.isExceeded()) {
+                throw e;
+            }
+        } catch (IOException e) {
+            if (!writer.isExceeded()) {
+                throw JsonMappingException.fromUnexpectedIOE(e);
+            }
+        }
+        return truncatedResult(writer);
+    }
+
+    /**
+     * 限制字符串的字节数，超过限制时只保留限制以内的内容，并追加 ...(truncated, N+ bytes) 标记
+     *
+     * @param str      字符串
+     * @param maxBytes 最多输出的字节数，小于等于0时不限制
+     * @return 限制长度后的字符串
+     */
+    public static String truncate(String str, int maxBytes) {
+        if (maxBytes <= 0 || str == null || str.length() <= maxBytes / 4) {
+            return str;
+        }
+        BoundedCharWriter writer = new BoundedCharWriter(Math.min(maxBytes, str.length()));
+        writer.startBudget(maxBytes);
+        try {
+            writer.write(str);
+        } catch (IOException e) {
+            //超过长度限制
+        }
+        return truncatedResult(writer);
+    }
+
+    /**
+     * 不序列化也不调用toString()的摘要，不会输出需要脱敏的字段
+     * 字符串、数字、布尔与枚举记录本身的值，集合/Map记录size，数组记录length，其他对象只记录类型名
+     *
+     * @param value 被记录的对象
+     * @return 摘要，对象为null时为null
+     */
+    public static String summarize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum) {
+            return value.toString();
+        }
+        String typeName = value.getClass().getSimpleName();
+        if (value instanceof Collection) {
+            return "<" + typeName + " size=" + ((Collection<?>) value).size() + ">";
+        }
+        if (value instanceof Map) {
+            return "<" + typeName + " size=" + ((Map<?, ?>) value).size() + ">";
+        }
+        if (value.getClass().isArray()) {
+            return "<" + typeName + " length=" + Array.getLength(value) + ">";
+        }
+        return "<" + typeName + ">";
+    }
+
+    private static String truncatedResult(BoundedCharWriter writer) {
+        writer.endBudget();
+        if (!writer.isExceeded()) {
+            return writer.toString();
+        }
+        return writer.toString() + BoundedCharWriter.truncatedMarker(writer.getCountedBytes());
     }
 
     /**
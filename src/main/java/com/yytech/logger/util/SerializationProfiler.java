@@ -0,0 +1,262 @@
+package com.yytech.logger.util;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按运行时类型统计json序列化的代价
+ * 每个类型记录调用次数，并按1/sampleEvery的概率采样记录耗时与输出的字符数，采样之外的调用只多一次计数
+ * {@link #report()}按估算的总耗时(平均耗时 * 调用次数)从高到低排列，用于找出序列化代价高的DTO
+ * -------------
+ * 配置了budgetMicros时，某个类型采样次数足够且平均耗时超过预算后，之后这个类型不再序列化成json
+ * 而是按fallback记录为摘要或toString()，避免单个类型占用大量CPU；切换时输出一行warn日志，可以通过{@link #reset()}恢复
+ */
+@Slf4j
+public final class SerializationProfiler {
+
+    /**
+     * 采样次数少于这个值时不判断是否超过预算
+     */
+    private static final int MIN_SAMPLES_FOR_FALLBACK = 16;
+
+    private static final ClassValue<TypeStats> TYPE_STATS = new ClassValue<TypeStats>() {
+        @Override
+        protected TypeStats computeValue(Class<?> type) {
+            TypeStats typeStats = new TypeStats(type.getTypeName());
+            ALL_TYPE_STATS.add(typeStats);
+            return typeStats;
+        }
+    };
+
+    private static final Queue<TypeStats> ALL_TYPE_STATS = new ConcurrentLinkedQueue<>();
+
+    private static volatile boolean enabled;
+
+    private static volatile int sampleEvery = 64;
+
+    private static volatile long budgetNanos;
+
+    private static volatile ReqResLogProperties.SerializationFallback fallback = ReqResLogProperties.SerializationFallback.SUMMARY;
+
+    private SerializationProfiler() {
+    }
+
+    /**
+     * 配置序列化代价统计
+     *
+     * @param enabled      是否开启
+     * @param sampleEvery  每多少次调用采样一次，小于等于1时每次都采样
+     * @param budgetMicros 每个类型平均序列化耗时的预算(微秒)，小于等于0时不切换
+     * @param fallback     超过预算后的记录方式
+     */
+    public static void configure(boolean enabled, int sampleEvery, long budgetMicros,
+                                 ReqResLogProperties.SerializationFallback fallback) {
+        SerializationProfiler.sampleEvery = Math.max(1, sampleEvery);
+        SerializationProfiler.budgetNanos = budgetMicros <= 0 ? 0 : TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        SerializationProfiler.fallback = fallback == null ? ReqResLogProperties.SerializationFallback.SUMMARY : fallback;
+        SerializationProfiler.enabled = enabled;
+    }
+
+    /**
+     * @return 是否开启了序列化代价统计
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param type 被序列化对象的运行时类型
+     * @return 这个类型的统计
+     */
+    public static TypeStats statsOf(Class<?> type) {
+        return TYPE_STATS.get(type);
+    }
+
+    /**
+     * 超过预算的类型按fallback生成日志内容
+     *
+     * @param value 被记录的对象
+     * @return 摘要或toString()
+     */
+    public static String fallbackOf(Object value) {
+        if (fallback == ReqResLogProperties.SerializationFallback.TO_STRING) {
+            return value.toString();
+        }
+        return ReqResLogUtil.summarize(value);
+    }
+
+    /**
+     * @return 各类型的统计，按估算的总耗时从高到低排列
+     */
+    public static List<Entry> report() {
+        List<Entry> entries = new ArrayList<>();
+        for (TypeStats typeStats : ALL_TYPE_STATS) {
+            Entry entry = typeStats.toEntry();
+            if (entry.calls > 0) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.estimatedTotalNanos, a.estimatedTotalNanos));
+        return entries;
+    }
+
+    /**
+     * @param top 最多输出的类型数
+     * @return 便于直接输出到日志的统计报告
+     */
+    public static String reportString(int top) {
+        StringBuilder report = new StringBuilder("serialization cost by type (estimated total ms, calls, avg us, max us, avg chars)");
+        List<Entry> entries = report();
+        for (int i = 0; i < entries.size() && i < top; i++) {
+            report.append("\n").append(i + 1).append(". ").append(entries.get(i));
+        }
+        return report.toString();
+    }
+
+    /**
+     * 清空所有类型的统计，并恢复已经切换的类型
+     */
+    public static void reset() {
+        for (TypeStats typeStats : ALL_TYPE_STATS) {
+            typeStats.reset();
+        }
+    }
+
+    /**
+     * 某个类型的序列化统计，记录过程无锁
+     */
+    public static final class TypeStats {
+
+        private final String typeName;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder samples = new LongAdder();
+
+        private final LongAdder sampledNanos = new LongAdder();
+
+        private final LongAdder sampledChars = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private volatile boolean fallback;
+
+        private TypeStats(String typeName) {
+            this.typeName = typeName;
+        }
+
+        /**
+         * @return 这个类型是否已经因超过预算而不再序列化成json
+         */
+        public boolean isFallback() {
+            return fallback;
+        }
+
+        /**
+         * 记录一次调用，并决定这次调用是否需要采样
+         *
+         * @return 是否需要记录这次调用的耗时与字符数
+         */
+        public boolean sample() {
+            calls.increment();
+            int every = sampleEvery;
+            return every <= 1 || ThreadLocalRandom.current().nextInt(every) == 0;
+        }
+
+        /**
+         * 记录一次采样
+         *
+         * @param elapsedNanos 序列化耗时
+         * @param chars        输出的字符数
+         */
+        public void record(long elapsedNanos, long chars) {
+            samples.increment();
+            sampledNanos.add(elapsedNanos);
+            sampledChars.add(chars);
+            maxNanos.accumulate(elapsedNanos);
+            long budget = budgetNanos;
+            if (budget <= 0 || fallback) {
+                return;
+            }
+            long sampleCount = samples.sum();
+            if (sampleCount >= MIN_SAMPLES_FOR_FALLBACK && sampledNanos.sum() / sampleCount > budget) {
+                fallback = true;
+                log.warn("SerializationProfiler {} average serialization cost {}us exceeds budget {}us, switched to {}",
+                        typeName, TimeUnit.NANOSECONDS.toMicros(sampledNanos.sum() / sampleCount),
+                        TimeUnit.NANOSECONDS.toMicros(budget), SerializationProfiler.fallback);
+            }
+        }
+
+        private Entry toEntry() {
+            long sampleCount = samples.sum();
+            long avgNanos = sampleCount == 0 ? 0 : sampledNanos.sum() / sampleCount;
+            long avgChars = sampleCount == 0 ? 0 : sampledChars.sum() / sampleCount;
+            return new Entry(typeName, calls.sum(), sampleCount, avgNanos, maxNanos.get(), avgChars, fallback);
+        }
+
+        private void reset() {
+            calls.reset();
+            samples.reset();
+            sampledNanos.reset();
+            sampledChars.reset();
+            maxNanos.reset();
+            fallback = false;
+        }
+    }
+
+    /**
+     * 某个类型的统计结果，耗时单位均为纳秒
+     */
+    @Getter
+    public static final class Entry {
+
+        private final String typeName;
+
+        private final long calls;
+
+        private final long samples;
+
+        private final long avgNanos;
+
+        private final long maxNanos;
+
+        private final long avgChars;
+
+        /**
+         * 平均耗时 * 调用次数
+         */
+        private final long estimatedTotalNanos;
+
+        private final boolean fallback;
+
+        private Entry(String typeName, long calls, long samples, long avgNanos, long maxNanos, long avgChars,
+                      boolean fallback) {
+            this.typeName = typeName;
+            this.calls = calls;
+            this.samples = samples;
+            this.avgNanos = avgNanos;
+            this.maxNanos = maxNanos;
+            this.avgChars = avgChars;
+            this.estimatedTotalNanos = avgNanos * calls;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public String toString() {
+            return typeName + " " + TimeUnit.NANOSECONDS.toMillis(estimatedTotalNanos) + "ms " + calls + " calls "
+                    + TimeUnit.NANOSECONDS.toMicros(avgNanos) + "us avg " + TimeUnit.NANOSECONDS.toMicros(maxNanos)
+                    + "us max " + avgChars + " chars" + (fallback ? " (fallback)" : "");
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.yytech.logger.util;
+
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 不会被序列化的请求参数类型
+ * 请求参数的声明类型是这些类型(或其子类型)时，请求日志中只记录 &lt;声明类型名&gt;
+ * 这些对象要么无法序列化(序列化会消费流或抛异常)，要么序列化的代价远大于它在日志中的价值
+ * -------------
+ * 默认包含流、Channel、Servlet的请求/响应/会话、Spring的MultipartFile/InputStreamSource/Errors等
+ * classpath中不存在的类型会被忽略，可以通过{@link #register(List)}追加
+ */
+public final class SkippedParamTypes {
+
+    private static final List<String> DEFAULT_TYPE_NAMES = Arrays.asList(
+            "java.io.InputStream",
+            "java.io.OutputStream",
+            "java.io.Reader",
+            "java.io.Writer",
+            "java.nio.channels.Channel",
+            "javax.servlet.ServletRequest",
+            "javax.servlet.ServletResponse",
+            "javax.servlet.http.HttpSession",
+            "org.springframework.core.io.InputStreamSource",
+            "org.springframework.validation.Errors",
+            "org.springframework.web.context.request.WebRequest",
+            "org.springframework.http.server.reactive.ServerHttpRequest",
+            "org.springframework.http.server.reactive.ServerHttpResponse",
+            "org.springframework.web.server.ServerWebExchange");
+
+    private static volatile Class<?>[] types = resolve(DEFAULT_TYPE_NAMES);
+
+    private SkippedParamTypes() {
+    }
+
+    /**
+     * 在默认类型的基础上追加不会被序列化的类型
+     * 只对之后构建的日志记录计划生效
+     *
+     * @param typeNames 类型的全限定名
+     */
+    public static void register(List<String> typeNames) {
+        if (typeNames == null || typeNames.isEmpty()) {
+            return;
+        }
+        List<String> all = new ArrayList<>(DEFAULT_TYPE_NAMES);
+        all.addAll(typeNames);
+        types = resolve(all);
+    }
+
+    /**
+     * @param type 请求参数的声明类型
+     * @return 是否不会被序列化
+     */
+    public static boolean isSkipped(Class<?> type) {
+        for (Class<?> skippedType : types) {
+            if (skippedType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Class<?>[] resolve(List<String> typeNames) {
+        ClassLoader classLoader = SkippedParamTypes.class.getClassLoader();
+        List<Class<?>> resolved = new ArrayList<>(typeNames.size());
+        for (String typeName : typeNames) {
+            if (StringUtil.isNotEmpty(typeName) && ClassUtils.isPresent(typeName.trim(), classLoader)) {
+                resolved.add(ClassUtils.resolveClassName(typeName.trim(), classLoader));
+            }
+        }
+        return resolved.toArray(new Class<?>[0]);
+    }
+
+}
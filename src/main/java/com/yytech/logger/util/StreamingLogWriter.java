@@ -0,0 +1,195 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+
+import java.io.IOException;
+
+/**
+ * 流式拼接一行日志
+ * 日志前缀、参数标记与json数据都通过同一个JsonGenerator直接写入线程内复用的字符缓冲区
+ * 不再为每个参数生成单独的字符串，也不再把它们二次拷贝到StringBuilder中
+ * -------------
+ * 使用方式：acquire() -> append/appendValue -> finish() -> release()
+ * 同一个线程重入时(例如序列化过程中又触发了日志记录)会使用一个临时的实例
+ */
+public final class StreamingLogWriter {
+
+    /**
+     * 缓冲区超过这个大小时，用完后不再保留，避免个别大日志长期占用内存
+     */
+    private static final int MAX_RETAINED_CHARS = 128 * 1024;
+
+    private static final int INITIAL_CHARS = 1024;
+
+    private static final ThreadLocal<StreamingLogWriter> LOCAL_WRITER = new ThreadLocal<>();
+
+    private final BoundedCharWriter buffer = new BoundedCharWriter(INITIAL_CHARS);
+
+    private final ObjectWriterCache objectWriterCache;
+
+    private JsonGenerator generator;
+
+    private final boolean pooled;
+
+    private boolean inUse;
+
+    /**
+     * 上一次使用没有正常finish时，JsonGenerator中可能残留了内容，需要重新创建
+     */
+    private boolean broken;
+
+    private boolean finished;
+
+    private StreamingLogWriter(ObjectWriterCache objectWriterCache, boolean pooled) throws IOException {
+        this.objectWriterCache = objectWriterCache;
+        this.pooled = pooled;
+        this.generator = createGenerator();
+    }
+
+    private JsonGenerator createGenerator() throws IOException {
+        JsonGenerator jsonGenerator = objectWriterCache.getObjectMapper().getFactory().createGenerator(buffer);
+        jsonGenerator.setRootValueSeparator(null);
+        return jsonGenerator;
+    }
+
+    /**
+     * 获取当前线程可用的StreamingLogWriter
+     *
+     * @return 已清空的StreamingLogWriter
+     */
+    public static StreamingLogWriter acquire() {
+        ObjectWriterCache objectWriterCache = ReqResLogUtil.getObjectWriterCache();
+        try {
+            StreamingLogWriter writer = LOCAL_WRITER.get();
+            if (writer != null && writer.inUse) {
+                writer = new StreamingLogWriter(objectWriterCache, false);
+            } else if (writer == null || writer.broken || writer.objectWriterCache != objectWriterCache) {
+                writer = new StreamingLogWriter(objectWriterCache, true);
+                LOCAL_WRITER.set(writer);
+            }
+            writer.inUse = true;
+            writer.finished = false;
+            writer.buffer.reset();
+            return writer;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 写入一段原始文本
+     *
+     * @param text 原始文本
+     * @return this
+     * @throws IOException 写入异常
+     */
+    public StreamingLogWriter append(String text) throws IOException {
+        generator.writeRaw(text == null ? "null" : text);
+        return this;
+    }
+
+    /**
+     * 按LogType写入一个对象
+     *
+     * @param logType 日志记录类别
+     * @param value   要被记录的对象
+     * @return this
+     * @throws IOException json处理异常
+     */
+    public StreamingLogWriter appendValue(ReqResLogProperties.LogType logType, Object value) throws IOException {
+        if (value == null) {
+            generator.writeRaw("null");
+        } else if (logType == ReqResLogProperties.LogType.JSON) {
+            if (!SerializationProfiler.isEnabled()) {
+                objectWriterCache.getWriter(value.getClass()).writeValue(generator, value);
+            } else {
+                appendJsonWithProfiler(value);
+            }
+        } else if (logType == ReqResLogProperties.LogType.TO_STRING) {
+            append(value.toString());
+        } else if (logType == ReqResLogProperties.LogType.SUMMARY) {
+            append(ReqResLogUtil.summarize(value));
+        }
+        return this;
+    }
+
+    /**
+     * 写入json，并按采样统计这个类型的序列化代价；超过预算的类型按fallback写入
+     */
+    private void appendJsonWithProfiler(Object value) throws IOException {
+        SerializationProfiler.TypeStats typeStats = SerializationProfiler.statsOf(value.getClass());
+        if (typeStats.isFallback()) {
+            append(SerializationProfiler.fallbackOf(value));
+            return;
+        }
+        if (!typeStats.sample()) {
+            objectWriterCache.getWriter(value.getClass()).writeValue(generator, value);
+            return;
+        }
+        generator.flush();
+        int startLength = buffer.length();
+        long startNanos = System.nanoTime();
+        objectWriterCache.getWriter(value.getClass()).writeValue(generator, value);
+        generator.flush();
+        typeStats.record(System.nanoTime() - startNanos, buffer.length() - startLength);
+    }
+
+    /**
+     * 按LogType写入一个对象，并限制这个对象写入的字节数
+     * 超过限制时立即停止序列化，只保留限制以内的内容，并追加 ...(truncated, N+ bytes) 标记
+     * 由于JsonGenerator内部有几KB的缓冲区，实际停止的时机会比限制略晚，但代价与限制成正比，而与对象大小无关
+     *
+     * @param logType  日志记录类别
+     * @param value    要被记录的对象
+     * @param maxBytes 最多写入的字节数，小于等于0时不限制
+     * @return this
+     * @throws IOException json处理异常
+     */
+    public StreamingLogWriter appendValue(ReqResLogProperties.LogType logType, Object value, int maxBytes) throws IOException {
+        if (maxBytes <= 0 || value == null) {
+            return appendValue(logType, value);
+        }
+        generator.flush();
+        buffer.startBudget(maxBytes);
+        try {
+            appendValue(logType, value);
+            generator.flush();
+        } catch (IOException e) {
+            if (!buffer.isExceeded()) {
+                throw e;
+            }
+            //被中断的JsonGenerator状态已经不完整，丢弃后重新创建
+            generator = createGenerator();
+        } finally {
+            buffer.endBudget();
+        }
+        if (buffer.isExceeded()) {
+            buffer.write(BoundedCharWriter.truncatedMarker(buffer.getCountedBytes()));
+        }
+        return this;
+    }
+
+    /**
+     * 完成这一行日志
+     *
+     * @return 日志内容，这是整个过程中唯一一次生成字符串
+     * @throws IOException 写入异常
+     */
+    public String finish() throws IOException {
+        generator.flush();
+        finished = true;
+        return buffer.toString();
+    }
+
+    /**
+     * 归还给当前线程，之后不能再使用
+     */
+    public void release() {
+        inUse = false;
+        if (pooled && (!finished || buffer.capacity() > MAX_RETAINED_CHARS)) {
+            broken = true;
+        }
+    }
+
+}
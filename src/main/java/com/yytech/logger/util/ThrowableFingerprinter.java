@@ -0,0 +1,264 @@
+package com.yytech.logger.util;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ThrowableLogType为FINGERPRINT时的异常日志渲染
+ * -------------
+ * 1.堆栈只保留前maxDepth帧，连续的代理、CGLIB、AOP与反射调用帧折叠为一行
+ * 2.根据异常类型与未折叠的堆栈帧(类名、方法名、行号，包括cause)计算一个稳定的指纹，不包含异常信息
+ * 3.同一个指纹在时间窗口内只有第一次记录堆栈，之后只记录 [异常类型]:异常信息 #指纹 (seen N times)
+ * 大量相同异常同时发生时(例如下游故障)，既减少了格式化堆栈的CPU开销，也避免日志刷屏
+ */
+public class ThrowableFingerprinter {
+
+    /**
+     * 类名包含这些内容的堆栈帧会被折叠
+     */
+    private static final String[] ELIDED_CLASS_MARKERS = {
+            "$$EnhancerBySpringCGLIB$$",
+            "$$FastClassBySpringCGLIB$$",
+            "$$Lambda$",
+            "com.sun.proxy.$Proxy",
+    };
+
+    /**
+     * 类名以这些内容开头的堆栈帧会被折叠
+     */
+    private static final String[] ELIDED_CLASS_PREFIXES = {
+            "org.springframework.aop.",
+            "org.springframework.cglib.",
+            "org.aspectj.",
+            "sun.reflect.",
+            "jdk.internal.reflect.",
+            "java.lang.reflect.Method",
+            "com.yytech.logger.aspect.",
+    };
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int maxDepth;
+
+    private final long windowMillis;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Long, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxDepth     每个异常(包括cause)最多记录的堆栈帧数
+     * @param windowMillis 相同指纹只记录一次堆栈的时间窗口(毫秒)
+     * @param maxSize      最多同时记录的指纹数，超过时清理过期的指纹
+     */
+    public ThrowableFingerprinter(int maxDepth, long windowMillis, int maxSize) {
+        this.maxDepth = Math.max(1, maxDepth);
+        this.windowMillis = windowMillis;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 渲染异常日志，时间窗口内第一次出现的指纹记录堆栈，之后只记录摘要
+     *
+     * @param throwable Throwable
+     * @return 异常日志
+     */
+    public String render(Throwable throwable) {
+        if (throwable == null) {
+            return null;
+        }
+        long fingerprint = fingerprint(throwable);
+        long seen = record(fingerprint);
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(throwable.getClass().getTypeName()).append("]:").append(throwable.getMessage())
+                .append(" #").append(toHex(fingerprint));
+        if (seen > 1) {
+            return sb.append(" (seen ").append(seen).append(" times)").toString();
+        }
+        sb.append(System.lineSeparator());
+        appendStackTrace(sb, throwable, maxDepth);
+        return sb.toString();
+    }
+
+    /**
+     * 计算异常的指纹，只与异常类型及未折叠的前maxDepth帧有关，与异常信息无关
+     *
+     * @param throwable Throwable
+     * @return 指纹
+     */
+    public long fingerprint(Throwable throwable) {
+        long hash = FNV_OFFSET_BASIS;
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Throwable t = throwable; t != null && visited.add(t); t = t.getCause()) {
+            hash = fnv(hash, t.getClass().getName());
+            StackTraceElement[] stackTrace = t.getStackTrace();
+            int depth = 0;
+            for (int i = 0; i < stackTrace.length && depth < maxDepth; i++) {
+                StackTraceElement element = stackTrace[i];
+                if (isElided(element)) {
+                    continue;
+                }
+                hash = fnv(hash, element.getClassName());
+                hash = fnv(hash, element.getMethodName());
+                hash = fnvInt(hash, element.getLineNumber());
+                depth++;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 记录一次指纹出现
+     *
+     * @param fingerprint 指纹
+     * @return 当前时间窗口内(包括本次)出现的次数
+     */
+    long record(long fingerprint) {
+        Long key = fingerprint;
+        long now = System.currentTimeMillis();
+        Window window = windows.get(key);
+        if (window != null && now - window.startMillis < windowMillis) {
+            return window.count.incrementAndGet();
+        }
+        Window created = new Window(now);
+        if (window == null) {
+            if (windows.size() >= maxSize) {
+                evict(now);
+            }
+            window = windows.putIfAbsent(key, created);
+            if (window == null) {
+                return 1;
+            }
+            if (now - window.startMillis < windowMillis) {
+                return window.count.incrementAndGet();
+            }
+        }
+        //窗口已经过期，只有替换成功的线程记录堆栈
+        if (windows.replace(key, window, created)) {
+            return 1;
+        }
+        Window current = windows.get(key);
+        return current == null ? 1 : current.count.incrementAndGet();
+    }
+
+    private void evict(long now) {
+        Iterator<Window> iterator = windows.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().startMillis >= windowMillis) {
+                iterator.remove();
+            }
+        }
+        if (windows.size() >= maxSize) {
+            windows.clear();
+        }
+    }
+
+    /**
+     * 写入限制深度并折叠代理帧之后的堆栈，cause中与上一层相同的尾部帧省略
+     */
+    private void appendStackTrace(StringBuilder sb, Throwable throwable, int maxDepth) {
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        StackTraceElement[] enclosing = null;
+        for (Throwable t = throwable; t != null && visited.add(t); t = t.getCause()) {
+            StackTraceElement[] stackTrace = t.getStackTrace();
+            if (t != throwable) {
+                sb.append("Caused by: ").append(t).append(System.lineSeparator());
+            }
+            int end = stackTrace.length;
+            if (enclosing != null) {
+                int j = enclosing.length - 1;
+                while (end > 0 && j >= 0 && stackTrace[end - 1].equals(enclosing[j])) {
+                    end--;
+                    j--;
+                }
+            }
+            int written = 0;
+            int elided = 0;
+            int i = 0;
+            for (; i < end && written < maxDepth; i++) {
+                if (isElided(stackTrace[i])) {
+                    elided++;
+                    continue;
+                }
+                appendElided(sb, elided);
+                elided = 0;
+                sb.append("\tat ").append(stackTrace[i]).append(System.lineSeparator());
+                written++;
+            }
+            appendElided(sb, elided);
+            int more = stackTrace.length - i;
+            if (more > 0) {
+                sb.append("\t... ").append(more).append(" more").append(System.lineSeparator());
+            }
+            enclosing = stackTrace;
+        }
+    }
+
+    private static void appendElided(StringBuilder sb, int elided) {
+        if (elided > 0) {
+            sb.append("\t... ").append(elided).append(" proxy/reflection frames elided").append(System.lineSeparator());
+        }
+    }
+
+    static boolean isElided(StackTraceElement element) {
+        String className = element.getClassName();
+        for (String marker : ELIDED_CLASS_MARKERS) {
+            if (className.contains(marker)) {
+                return true;
+            }
+        }
+        for (String prefix : ELIDED_CLASS_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return fnvInt(hash, 0);
+    }
+
+    private static long fnvInt(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        if (hex.length() == 16) {
+            return hex;
+        }
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    private static final class Window {
+
+        private final long startMillis;
+
+        private final AtomicLong count = new AtomicLong(1);
+
+        private Window(long startMillis) {
+            this.startMillis = startMillis;
+        }
+    }
+
+}
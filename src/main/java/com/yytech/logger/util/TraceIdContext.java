@@ -0,0 +1,28 @@
+package com.yytech.logger.util;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactor中traceId的传递方式
+ * 被代理方法返回Mono/Flux时，traceId通过Reactor的Context传递，而不是TraceIdThreadLocal
+ * 只有reactor-core在classpath中时才能使用
+ */
+public class TraceIdContext {
+
+    /**
+     * traceId在Reactor Context中的key
+     */
+    public static final String KEY = TraceIdContext.class.getName() + ".traceId";
+
+    /**
+     * 获取当前订阅的Context中的traceId
+     *
+     * @return 包含traceId的Mono，Context中没有traceId时为空
+     */
+    public static Mono<String> getTraceId() {
+        return Mono.subscriberContext()
+                .filter(context -> context.hasKey(KEY))
+                .map(context -> context.get(KEY));
+    }
+
+}
@@ -1,17 +1,44 @@
 package com.yytech;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yytech.logger.AsyncLoggerService;
+import com.yytech.logger.LogAttributes;
+import com.yytech.logger.LoggerService;
+import com.yytech.logger.TailSamplingLoggerService;
 import com.yytech.logger.annotation.EnableReqResLog;
+import com.yytech.logger.aspect.ReqResLoggerAspect;
+import com.yytech.logger.autoconfig.ReqResLogAutoConfiguration;
 import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.metrics.MethodMetricsSnapshot;
+import com.yytech.logger.metrics.ReqResLogMeterBinder;
+import com.yytech.logger.metrics.ReqResLogMetrics;
 import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.logger.util.TraceIdContext;
+import com.yytech.logger.util.TraceIdThreadLocal;
 import com.yytech.test.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import reactor.util.context.Context;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @RunWith(SpringRunner.class)
@@ -35,6 +62,15 @@ public class ReqResLogTester {
     @Autowired
     Teacher teacher;
 
+    @Autowired
+    ReqResLoggerAspect reqResLoggerAspect;
+
+    @Autowired
+    ReqResLogMetrics reqResLogMetrics;
+
+    @Autowired
+    ReqResLogAutoConfiguration reqResLogAutoConfiguration;
+
     @Test
     public void test1() throws JsonProcessingException {
         /*
@@ -105,4 +141,235 @@ public class ReqResLogTester {
         Thread.sleep(3000L);
     }
 
+    @Test
+    public void testDisabledLogZeroAllocation() throws Throwable {
+        //Dog.sleep的日志级别为DEBUG，当前配置下req/res与throwable日志均不可用
+        Dog target = new Dog();
+        ProceedingJoinPoint pjp = new StubProceedingJoinPoint(target, Dog.class.getMethod("sleep"), new Object[0], "zzz");
+        for (int i = 0; i < 100000; i++) {
+            reqResLoggerAspect.around(pjp);
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int invocations = 100000;
+        //取多轮测量中的最小值，排除JIT重新编译等偶发的常数分配
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < invocations; i++) {
+                reqResLoggerAspect.around(pjp);
+            }
+            allocated = Math.min(allocated, threadMXBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        log.info("disabled log allocated {} bytes in {} invocations", allocated, invocations);
+        //允许测量本身带来的少量常数分配，但不能随调用次数增长
+        Assert.assertTrue(allocated < 1024);
+    }
+
+    @Test
+    public void testMethodMetrics() throws InterruptedException {
+        //日志不可用的方法同样记录调用指标
+        for (int i = 0; i < 10; i++) {
+            dog.sleep();
+        }
+        for (int i = 0; i < 3; i++) {
+            try {
+                dog.fly();
+            } catch (RuntimeException ignore) {
+            }
+        }
+        MethodMetricsSnapshot sleep = reqResLogMetrics.getMethodMetrics(Dog.class.getTypeName(), "sleep").snapshot();
+        MethodMetricsSnapshot fly = reqResLogMetrics.getMethodMetrics(Dog.class.getTypeName(), "fly").snapshot();
+        log.info("{}", sleep);
+        log.info("{}", fly);
+        Assert.assertTrue(sleep.getCalls() >= 10);
+        Assert.assertTrue(fly.getErrors() >= 3);
+        Assert.assertEquals(fly.getCalls(), fly.getErrors());
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new ReqResLogMeterBinder(reqResLogMetrics).bindTo(meterRegistry);
+        double calls = meterRegistry.get("req.res.log.calls")
+                .tags("class", Dog.class.getTypeName(), "method", "sleep").functionCounter().count();
+        Assert.assertEquals(sleep.getCalls(), calls, 0.0);
+        Assert.assertTrue(meterRegistry.get("req.res.log.latency").tag("quantile", "0.99").gauges().size() > 0);
+    }
+
+    @Test
+    public void testAnnotatedMethods() throws Exception {
+        //用第二个参数student的name属性作为traceId
+        Assert.assertEquals("newName", studentManager.rename("newName", new Student("oldName", 60)).getName());
+
+        //返回数据最多记录200字节，超过的部分会被截断并标记
+        Assert.assertEquals(10000, studentManager.listStudents(10000).size());
+
+        //合并模式下每次调用只记录一条日志
+        Assert.assertEquals("汪汪汪 cat", dog.bark("cat"));
+        try {
+            dog.bark(null);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        //相同位置的异常只有第一次记录堆栈
+        for (int i = 1; i <= 3; i++) {
+            try {
+                dog.dive(i);
+            } catch (IllegalStateException ignore) {
+            }
+        }
+
+        //参数级配置、condition、慢调用、尾部采样与字段投影
+        byte[] data = "abc".getBytes("UTF-8");
+        List<Student> students = Arrays.asList(new Student("a", 1), new Student("b", 2));
+        Assert.assertEquals(5, studentManager.upload("token", new ByteArrayInputStream(new byte[2]), data, students, "note"));
+        Assert.assertEquals("u transferred 20000", studentManager.transfer("u", 20000, false));
+        Assert.assertEquals(2, studentManager.grade(new Student("proxy", 1), 0));
+        Assert.assertEquals("proxy", studentManager.enroll(new Student("proxy", 1), 0));
+        Account account = new Account("owner", "6222020012345678", "13812345678", "secret", new Student("guardian", 1));
+        Assert.assertEquals("guardian", studentManager.pickGuardian(account, students).getName());
+    }
+
+    @Test
+    public void testAsyncReturnTypes() throws Exception {
+        //返回日志在结果完成时记录实际结果，耗时为端到端的耗时
+        CompletableFuture<Student> future = studentManager.findStudentAsync("asyncName", 100);
+        Assert.assertEquals("asyncName", future.join().getName());
+        CompletableFuture<Student> failed = studentManager.findStudentAsync(null, 0);
+        try {
+            failed.join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        MethodMetricsSnapshot snapshot = awaitCalls("findStudentAsync", 2);
+        log.info("{}", snapshot);
+        Assert.assertEquals(1, snapshot.getErrors());
+        Assert.assertTrue(snapshot.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        //Callable在其他线程执行时恢复traceId
+        Callable<Student> callable = studentManager.findStudentCallable("callableName");
+        AtomicReference<String> nameInCallable = new AtomicReference<>();
+        AtomicReference<String> traceIdAfterCallable = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                nameInCallable.set(callable.call().getName());
+                traceIdAfterCallable.set(TraceIdThreadLocal.getTraceId());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertTrue(nameInCallable.get().matches("callableName@[0-9a-f]{32}"));
+        Assert.assertNull(traceIdAfterCallable.get());
+        Assert.assertEquals(1, awaitCalls("findStudentCallable", 1).getCalls());
+    }
+
+    @Test
+    public void testReactiveReturnTypes() throws Exception {
+        //调用方法时不记录，订阅时才记录请求日志并开始计时
+        studentManager.findStudentMono("unsubscribed");
+        Assert.assertEquals(0, reqResLogMetrics.getMethodMetrics(StudentManager.class.getTypeName(), "findStudentMono")
+                .snapshot().getCalls());
+
+        //没有上游traceId时使用本次生成的traceId，上游Context中已有traceId时沿用它
+        Assert.assertTrue(studentManager.findStudentMono("mono").block().getName().matches("mono@[0-9a-f]{32}"));
+        Student fromContext = studentManager.findStudentMono("mono")
+                .subscriberContext(Context.of(TraceIdContext.KEY, "ctx-trace"))
+                .block();
+        Assert.assertEquals("mono@ctx-trace", fromContext.getName());
+        Assert.assertEquals(2, awaitCalls("findStudentMono", 2).getCalls());
+
+        //Flux记录元素个数与前N个元素，异常结束时计入errors
+        Assert.assertEquals(5, studentManager.listStudentsFlux(5, false).collectList().block().size());
+        try {
+            studentManager.listStudentsFlux(2, true).blockLast();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("flux failed", e.getMessage());
+        }
+        //取消订阅时只记录一次
+        Assert.assertEquals(3, studentManager.listStudentsFlux(100, false).take(3).collectList().block().size());
+        MethodMetricsSnapshot snapshot = awaitCalls("listStudentsFlux", 3);
+        log.info("{}", snapshot);
+        Assert.assertEquals(3, snapshot.getCalls());
+        Assert.assertEquals(1, snapshot.getErrors());
+    }
+
+    @Test
+    public void testFieldMasking() throws JsonProcessingException {
+        Account account = new Account("owner", "6222020012345678", "13812345678", "secret", new Student("guardian", 1));
+        //请求日志与返回日志都会脱敏，对象本身不会被修改
+        Assert.assertSame(account, studentManager.openAccount(account));
+        Assert.assertEquals("6222020012345678", account.getCardNo());
+        //配置文件中的req-res-log.mask-fields与@ReqResLogMask一起生效
+        String json = ReqResLogUtil.toJsonWithoutNull(account);
+        log.info(json);
+        Assert.assertTrue(json.contains("\"owner\":\"owner\""));
+        Assert.assertTrue(json.contains("\"cardNo\":\"****5678\""));
+        Assert.assertTrue(json.contains("\"mobilePhone\":\"138****5678\""));
+        Assert.assertTrue(json.contains("\"password\":\"****\""));
+        Assert.assertTrue(json.contains("\"guardian\":\"****\""));
+    }
+
+    @Test
+    public void testTailSamplingShutdown() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        TestPropertyValues.of("req-res-log.async=true", "req-res-log.tail-sampling=true").applyTo(context);
+        context.register(ReqResLogAutoConfiguration.class);
+        try {
+            context.refresh();
+            TailSamplingLoggerService tailSampling = (TailSamplingLoggerService) context.getBean(LoggerService.class);
+            AsyncLoggerService asyncLoggerService = (AsyncLoggerService) tailSampling.getDelegate();
+            tailSampling.traceStarted("shutdown-errored");
+            tailSampling.traceStarted("shutdown-ok");
+            for (String traceId : new String[]{"shutdown-errored", "shutdown-ok"}) {
+                LogAttributes logAttributes = new LogAttributes();
+                logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+                logAttributes.setThrowableLogLevel(ReqResLogProperties.Level.ERROR);
+                logAttributes.setLogPrefix("TailTest.shutdown");
+                logAttributes.setTraceId(traceId);
+                if (traceId.equals("shutdown-errored")) {
+                    logAttributes.setThrowable(new IllegalStateException("in flight"));
+                    logAttributes.setThrowableLog("[java.lang.IllegalStateException]:in flight");
+                    tailSampling.processThrowableLog(logAttributes);
+                } else {
+                    tailSampling.processReqLog(logAttributes);
+                }
+            }
+            Assert.assertEquals(2, tailSampling.getBufferedRecordCount());
+
+            //关闭容器时处理仍在缓冲中的trace，并写完异步队列中的日志
+            context.close();
+            Assert.assertEquals(1, tailSampling.getFlushedTraceCount());
+            Assert.assertEquals(1, tailSampling.getDiscardedTraceCount());
+            Assert.assertEquals(0, tailSampling.getBufferedTraceCount());
+            Assert.assertEquals(1, asyncLoggerService.getProcessedCount());
+            //关闭之后的日志不再缓冲，由AsyncLoggerService在调用线程同步记录
+            tailSampling.traceStarted("after-shutdown");
+            Assert.assertEquals(0, tailSampling.getBufferedTraceCount());
+            LogAttributes logAttributes = new LogAttributes();
+            logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+            logAttributes.setLogPrefix("TailTest.shutdown");
+            tailSampling.processReqLog(logAttributes);
+            Assert.assertEquals(1, asyncLoggerService.getSyncFallbackCount());
+        } finally {
+            context.close();
+            //新容器的自动配置会替换全局的ObjectMapper，恢复为当前测试容器的配置
+            reqResLogAutoConfiguration.configureObjectMapper();
+        }
+    }
+
+    private MethodMetricsSnapshot awaitCalls(String methodName, long calls) throws InterruptedException {
+        MethodMetricsSnapshot snapshot = null;
+        for (int i = 0; i < 100; i++) {
+            snapshot = reqResLogMetrics.getMethodMetrics(StudentManager.class.getTypeName(), methodName).snapshot();
+            if (snapshot.getCalls() >= calls) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return snapshot;
+    }
+
 }
@@ -0,0 +1,142 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+public class AsyncLoggerServiceTester {
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        //被包装的LoggerService只计数，队列容量很小，用DROP_NEWEST策略验证丢弃计数
+        LongAdder written = new LongAdder();
+        LoggerService countingLoggerService = new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                written.increment();
+            }
+        };
+        AsyncLoggerService asyncLoggerService = new AsyncLoggerService(countingLoggerService, 16,
+                ReqResLogProperties.OverflowPolicy.DROP_NEWEST, 2, 3000L);
+        int threads = 4;
+        int logsPerThread = 10000;
+        Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < logsPerThread; j++) {
+                    LogAttributes logAttributes = new LogAttributes();
+                    logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+                    logAttributes.setLogPrefix("AsyncTest.log");
+                    asyncLoggerService.processReqLog(logAttributes);
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        asyncLoggerService.shutdown();
+        log.info("async written:{} dropped:{} queueDepth:{}", written.sum(),
+                asyncLoggerService.getDroppedCount(), asyncLoggerService.getQueueDepth());
+        Assert.assertEquals(threads * logsPerThread, written.sum() + asyncLoggerService.getDroppedCount());
+        Assert.assertEquals(0, asyncLoggerService.getQueueDepth());
+    }
+
+    @Test
+    public void testTraceOrder() throws InterruptedException {
+        //多个消费线程时，同一个trace的日志与traceStarted/traceFinished按放入的顺序交给被包装的LoggerService
+        Map<String, List<String>> events = new ConcurrentHashMap<>();
+        LoggerService recordingLoggerService = new DefaultLoggerServiceImpl() {
+            @Override
+            public void processReqLog(LogAttributes logAttributes) {
+                events.get(logAttributes.getTraceId()).add("REQ");
+            }
+
+            @Override
+            public void processResLog(LogAttributes logAttributes) {
+                events.get(logAttributes.getTraceId()).add("RES");
+            }
+
+            @Override
+            public void traceStarted(String traceId) {
+                events.get(traceId).add("STARTED");
+            }
+
+            @Override
+            public void traceFinished(String traceId, long elapsedNanos, Throwable throwable) {
+                events.get(traceId).add("FINISHED");
+            }
+        };
+        AsyncLoggerService asyncLoggerService = new AsyncLoggerService(recordingLoggerService, 1 << 16,
+                ReqResLogProperties.OverflowPolicy.BLOCK, 4, 3000L);
+        int threads = 4;
+        int tracesPerThread = 2000;
+        Thread[] producers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int producer = i;
+            producers[i] = new Thread(() -> {
+                for (int j = 0; j < tracesPerThread; j++) {
+                    String traceId = producer + "-" + j;
+                    events.put(traceId, new ArrayList<>());
+                    LogAttributes logAttributes = new LogAttributes();
+                    logAttributes.setTraceId(traceId);
+                    asyncLoggerService.traceStarted(traceId);
+                    asyncLoggerService.processReqLog(logAttributes);
+                    asyncLoggerService.processResLog(logAttributes);
+                    asyncLoggerService.traceFinished(traceId, 0, null);
+                }
+            });
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        asyncLoggerService.shutdown();
+        Assert.assertEquals(threads * tracesPerThread, events.size());
+        List<String> expected = Arrays.asList("STARTED", "REQ", "RES", "FINISHED");
+        for (Map.Entry<String, List<String>> entry : events.entrySet()) {
+            Assert.assertEquals(entry.getKey(), expected, entry.getValue());
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws InterruptedException {
+        //放入队列的是副本，调用线程之后修改LogAttributes不影响队列中的日志
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> prefixes = new ArrayList<>();
+        LoggerService blockingLoggerService = new DefaultLoggerServiceImpl() {
+            @Override
+            public void processReqLog(LogAttributes logAttributes) {
+                try {
+                    release.await(3, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                prefixes.add(logAttributes.getLogPrefix());
+            }
+        };
+        AsyncLoggerService asyncLoggerService = new AsyncLoggerService(blockingLoggerService, 16,
+                ReqResLogProperties.OverflowPolicy.BLOCK, 1, 3000L);
+        LogAttributes logAttributes = new LogAttributes();
+        logAttributes.setLogPrefix("first");
+        asyncLoggerService.processReqLog(logAttributes);
+        logAttributes.setLogPrefix("second");
+        asyncLoggerService.processReqLog(logAttributes);
+        logAttributes.setLogPrefix("changed");
+        release.countDown();
+        asyncLoggerService.shutdown();
+        Assert.assertEquals(Arrays.asList("first", "second"), prefixes);
+    }
+
+}
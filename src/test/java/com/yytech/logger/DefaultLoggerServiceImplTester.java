@@ -0,0 +1,121 @@
+package com.yytech.logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.test.Student;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Slf4j
+public class DefaultLoggerServiceImplTester {
+
+    @Test
+    public void testInvocationLog() {
+        List<ReqResLogProperties.Level> levels = new ArrayList<>();
+        List<String> logs = new ArrayList<>();
+        DefaultLoggerServiceImpl loggerService = new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                levels.add(level);
+                logs.add(logContent);
+            }
+        };
+        LogAttributes logAttributes = new LogAttributes();
+        logAttributes.setLogPrefix("Dog.bark");
+        logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+        logAttributes.setThrowableLogLevel(ReqResLogProperties.Level.ERROR);
+        logAttributes.setLogEnable(true);
+        logAttributes.setThrowableLogEnable(true);
+        logAttributes.setReqParamMarks(new String[]{"name"});
+        logAttributes.setReqParamLogs(new String[]{"\"cat\""});
+        logAttributes.setResParamMark("String");
+        logAttributes.setResParamLog("\"wang\"");
+        logAttributes.setElapsedNanos(1234567L);
+        loggerService.processInvocationLog(logAttributes);
+
+        logAttributes.setThrowable(new IllegalStateException("boom"));
+        logAttributes.setThrowableLog("[java.lang.IllegalStateException]:boom");
+        logAttributes.setElapsedNanos(5007000L);
+        loggerService.processInvocationLog(logAttributes);
+
+        //合并模式下每次调用只记录一条日志
+        Assert.assertEquals("Dog.bark cost:1.234ms [REQUEST] name:\"cat\" [RESPONSE] String:\"wang\"", logs.get(0));
+        Assert.assertEquals(ReqResLogProperties.Level.INFO, levels.get(0));
+        Assert.assertEquals("Dog.bark cost:5.007ms [REQUEST] name:\"cat\" [THROWABLE] [java.lang.IllegalStateException]:boom", logs.get(1));
+        Assert.assertEquals(ReqResLogProperties.Level.ERROR, levels.get(1));
+    }
+
+    @Test
+    public void testStreamingSerializationAllocation() {
+        //模拟一个较大的请求参数，对比预先转换字符串与流式写出两种方式每次调用的内存分配
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            students.add(new Student("testName" + i, i));
+        }
+        Object[] args = new Object[]{students, 10};
+        String[] marks = new String[]{"List", "int"};
+        AtomicReference<String> lastLog = new AtomicReference<>();
+        DefaultLoggerServiceImpl discardLoggerService = new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                lastLog.lazySet(logContent);
+            }
+        };
+        Runnable classic = () -> {
+            try {
+                LogAttributes logAttributes = new LogAttributes();
+                logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+                logAttributes.setLogPrefix("StudentManager.addAll");
+                logAttributes.setReqParamMarks(marks);
+                String[] reqParamLogs = new String[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    reqParamLogs[i] = ReqResLogUtil.toJsonWithoutNull(args[i]);
+                }
+                logAttributes.setReqParamLogs(reqParamLogs);
+                discardLoggerService.processReqLog(logAttributes);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        Runnable streaming = () -> {
+            LogAttributes logAttributes = new LogAttributes();
+            logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+            logAttributes.setLogPrefix("StudentManager.addAll");
+            logAttributes.setStreaming(true);
+            logAttributes.setReqLogType(ReqResLogProperties.LogType.JSON);
+            logAttributes.setReqParamMarks(marks);
+            logAttributes.setReqArgs(args);
+            discardLoggerService.processReqLog(logAttributes);
+        };
+        //两种方式输出的日志内容一致
+        classic.run();
+        String classicLog = lastLog.get();
+        streaming.run();
+        Assert.assertEquals(classicLog, lastLog.get());
+        long classicBytes = allocatedBytesPerInvocation(classic, 200);
+        long streamingBytes = allocatedBytesPerInvocation(streaming, 200);
+        log.info("bytes allocated per invocation, classic:{} streaming:{}", classicBytes, streamingBytes);
+        Assert.assertTrue(streamingBytes < classicBytes);
+    }
+
+    private long allocatedBytesPerInvocation(Runnable runnable, int invocations) {
+        for (int i = 0; i < invocations; i++) {
+            runnable.run();
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < invocations; i++) {
+            runnable.run();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / invocations;
+    }
+
+}
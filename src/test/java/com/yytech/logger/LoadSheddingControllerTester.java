@@ -0,0 +1,45 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoadSheddingControllerTester {
+
+    private static final LoadSheddingController.Signals PRESSURED = new LoadSheddingController.Signals(0.95, 0, 0, 0);
+
+    private static final LoadSheddingController.Signals HOLDING = new LoadSheddingController.Signals(0.7, 0, 0, 0);
+
+    private static final LoadSheddingController.Signals CALM = new LoadSheddingController.Signals(0.1, 0.01, 0, 1);
+
+    @Test
+    public void testStepDownAndUp() {
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setSheddingStepDownTicks(1);
+        properties.setSheddingStepUpTicks(2);
+        LoadSheddingController controller = new LoadSheddingController(properties, null, null);
+        Assert.assertNotNull(controller.sample());
+
+        //压力大时逐级降级：JSON -> SUMMARY -> NONE，STACK -> MESSAGE
+        Assert.assertEquals(LoadSheddingController.Mode.REDUCED, controller.update(PRESSURED));
+        Assert.assertEquals(ReqResLogProperties.LogType.SUMMARY, controller.effectiveLogType(ReqResLogProperties.LogType.JSON));
+        Assert.assertEquals(ReqResLogProperties.ThrowableLogType.MESSAGE,
+                controller.effectiveThrowableLogType(ReqResLogProperties.ThrowableLogType.STACK));
+        Assert.assertEquals(ReqResLogProperties.ThrowableLogType.FINGERPRINT,
+                controller.effectiveThrowableLogType(ReqResLogProperties.ThrowableLogType.FINGERPRINT));
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(PRESSURED));
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(PRESSURED));
+        Assert.assertEquals(ReqResLogProperties.LogType.NONE, controller.effectiveLogType(ReqResLogProperties.LogType.TO_STRING));
+
+        //压力缓解后连续stepUpTicks次才升一级，处于两个阈值之间时保持不变
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(CALM));
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(HOLDING));
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(CALM));
+        Assert.assertEquals(LoadSheddingController.Mode.REDUCED, controller.update(CALM));
+        Assert.assertEquals(LoadSheddingController.Mode.REDUCED, controller.update(CALM));
+        Assert.assertEquals(LoadSheddingController.Mode.NORMAL, controller.update(CALM));
+        Assert.assertSame(CALM, controller.getLastSignals());
+        Assert.assertEquals(ReqResLogProperties.LogType.JSON, controller.effectiveLogType(ReqResLogProperties.LogType.JSON));
+    }
+
+}
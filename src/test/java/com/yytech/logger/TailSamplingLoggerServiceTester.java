@@ -0,0 +1,75 @@
+package com.yytech.logger;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TailSamplingLoggerServiceTester {
+
+    @Test
+    public void testBufferedBytesLimit() {
+        //按估算字节数限制缓冲：1KB放不下第二条大日志，中间方法的日志被丢弃，入口方法的日志仍然保留
+        List<String> logs = new ArrayList<>();
+        TailSamplingLoggerService bytesLimited = new TailSamplingLoggerService(new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                logs.add(logContent);
+            }
+        }, 50, 100, 256, 1, 60000);
+        bytesLimited.traceStarted("bytes");
+        char[] large = new char[300];
+        Arrays.fill(large, 'x');
+        for (int i = 0; i < 4; i++) {
+            LogAttributes logAttributes = new LogAttributes();
+            logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+            logAttributes.setLogPrefix(i == 0 ? "Entry.run" : "Nested.run" + i);
+            logAttributes.setTraceId("bytes");
+            logAttributes.setTraceIdEntry(i == 0);
+            logAttributes.setReqParamMarks(new String[]{""});
+            logAttributes.setReqParamLogs(new String[]{new String(large)});
+            bytesLimited.processReqLog(logAttributes);
+            Assert.assertTrue(bytesLimited.getBufferedBytes() <= 1024);
+        }
+        Assert.assertEquals(1, bytesLimited.getBufferedRecordCount());
+        Assert.assertEquals(3, bytesLimited.getDroppedRecordCount());
+        bytesLimited.traceFinished("bytes", TimeUnit.MILLISECONDS.toNanos(80), null);
+        Assert.assertEquals(1, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("Entry.run"));
+        Assert.assertEquals(0, bytesLimited.getBufferedBytes());
+    }
+
+    @Test
+    public void testBufferedSnapshot() {
+        //缓冲的是副本，trace结束前修改LogAttributes与参数对象不影响记录的日志；参数引用在缓冲时转换成字符串
+        List<String> logs = new ArrayList<>();
+        TailSamplingLoggerService tailSampling = new TailSamplingLoggerService(new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                logs.add(logContent);
+            }
+        }, 0, 100, 256, 1024, 60000);
+        tailSampling.traceStarted("snapshot");
+        List<String> names = new ArrayList<>(Arrays.asList("a", "b"));
+        LogAttributes logAttributes = new LogAttributes();
+        logAttributes.setLogLevel(ReqResLogProperties.Level.INFO);
+        logAttributes.setLogPrefix("Entry.run");
+        logAttributes.setTraceId("snapshot");
+        logAttributes.setTraceIdEntry(true);
+        logAttributes.setStreaming(true);
+        logAttributes.setReqLogType(ReqResLogProperties.LogType.JSON);
+        logAttributes.setReqParamMarks(new String[]{"List"});
+        logAttributes.setReqArgs(new Object[]{names});
+        tailSampling.processReqLog(logAttributes);
+        names.add("c");
+        logAttributes.setLogPrefix("Changed.run");
+        logAttributes.getReqParamMarks()[0] = "Changed";
+        tailSampling.traceFinished("snapshot", 0, null);
+        Assert.assertEquals(Arrays.asList("Entry.run traceId:snapshot [REQUEST] List:[\"a\",\"b\"]"), logs);
+    }
+
+}
@@ -0,0 +1,774 @@
+package com.yytech.logger.aspect;
+
+import ch.qos.logback.classic.Level;
+import com.yytech.logger.AsyncLoggerService;
+import com.yytech.logger.DefaultLoggerServiceImpl;
+import com.yytech.logger.LoadSheddingController;
+import com.yytech.logger.LogAttributes;
+import com.yytech.logger.LoggerService;
+import com.yytech.logger.TailSamplingLoggerService;
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.logger.recorder.FlightRecorder;
+import com.yytech.logger.trace.TraceSampler;
+import com.yytech.logger.util.LogLevelVersion;
+import com.yytech.logger.util.LogbackLevelChangeListener;
+import com.yytech.logger.util.ReqResLogUtil;
+import com.yytech.logger.util.ThrowableFingerprinter;
+import com.yytech.logger.util.TraceIdContext;
+import com.yytech.logger.util.TraceIdThreadLocal;
+import com.yytech.test.Account;
+import com.yytech.test.Credential;
+import com.yytech.test.Dog;
+import com.yytech.test.SlowReport;
+import com.yytech.test.Student;
+import com.yytech.test.StudentManager;
+import com.yytech.test.StubProceedingJoinPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 不经过Spring容器，用不同的配置直接调用切面
+ */
+@Slf4j
+public class ReqResLoggerAspectTester {
+
+    private final StudentManager target = new StudentManager();
+
+    @BeforeClass
+    public static void configureLogging() {
+        //与Spring Boot默认的日志配置一样只开启INFO及以上级别，并像自动配置一样监听logback的日志级别变化
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        LogLevelVersion.setListening(LogbackLevelChangeListener.register());
+    }
+
+    @Test
+    public void testTraceIdPath() throws Throwable {
+        //用第二个参数student的name属性作为traceId，记录的traceId为修改之前的名字
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        Student student = new Student("oldName", 60);
+        aspect.around(new StubProceedingJoinPoint(target, StudentManager.class.getMethod("rename", String.class, Student.class),
+                new Object[]{"newName", student}, null) {
+            @Override
+            public Object proceed() {
+                return target.rename("newName", student);
+            }
+        });
+        log.info("{}", logs);
+        Assert.assertEquals(2, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("StudentManager.rename traceId:oldName [REQUEST] String:\"newName\""));
+        Assert.assertTrue(logs.get(1).startsWith("StudentManager.rename traceId:oldName [RESPONSE]"));
+    }
+
+    @Test
+    public void testMaxResLength() throws Throwable {
+        //返回数据最多记录200字节，超过的部分会被截断并标记
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        List<Student> students = target.listStudents(10000);
+        aspect.around(new StubProceedingJoinPoint(target, StudentManager.class.getMethod("listStudents", int.class),
+                new Object[]{10000}, students));
+        String resLog = logs.get(1);
+        Assert.assertTrue(resLog.contains("[RESPONSE] List:[{\"name\":\"testName0\""));
+        Assert.assertTrue(resLog.matches("(?s).*\\.\\.\\.\\(truncated, \\d+\\+ bytes\\)$"));
+        Assert.assertTrue(resLog.length() < 300);
+    }
+
+    @Test
+    public void testLogLevelRevalidate() throws Throwable {
+        //测试使用logback，日志级别变化时缓存由监听失效
+        Assert.assertTrue(LogLevelVersion.isListening());
+        AtomicBoolean enable = new AtomicBoolean(false);
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), new DefaultLoggerServiceImpl() {
+            @Override
+            public boolean isLogLevelEnable(ReqResLogProperties.Level level) {
+                return enable.get();
+            }
+
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                logs.add(logContent);
+            }
+        });
+        ProceedingJoinPoint pjp = new StubProceedingJoinPoint(new Dog(), Dog.class.getMethod("sleep"), new Object[0], "zzz");
+        aspect.around(pjp);
+        enable.set(true);
+        //有监听时没有通知就一直使用缓存
+        aspect.around(pjp);
+        Assert.assertTrue(logs.isEmpty());
+        try {
+            //没有监听时(log4j2等)按间隔重新判断，间隔小于等于0时每次调用都判断
+            LogLevelVersion.setRevalidateIntervalMs(0);
+            LogLevelVersion.setListening(false);
+            aspect.around(pjp);
+            Assert.assertEquals(2, logs.size());
+            enable.set(false);
+            aspect.around(pjp);
+            Assert.assertEquals(2, logs.size());
+
+            LogLevelVersion.setRevalidateIntervalMs(50);
+            aspect.around(pjp);
+            enable.set(true);
+            aspect.around(pjp);
+            Assert.assertEquals(2, logs.size());
+            Thread.sleep(60);
+            aspect.around(pjp);
+            Assert.assertEquals(4, logs.size());
+        } finally {
+            LogLevelVersion.setRevalidateIntervalMs(1000);
+            LogLevelVersion.setListening(true);
+        }
+    }
+
+    @Test
+    public void testAsyncLoggerService() throws Throwable {
+        //异步日志时流式日志模式不生效，请求参数在调用线程预先转换成字符串，不受之后修改的影响
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> logs = new CopyOnWriteArrayList<>();
+        AsyncLoggerService blockingLoggerService = new AsyncLoggerService(new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                if (logContent.startsWith("AsyncTest.block")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return;
+                }
+                logs.add(logContent);
+            }
+        }, 16, ReqResLogProperties.OverflowPolicy.SYNC, 1, 3000L);
+        LogAttributes blocking = new LogAttributes();
+        blocking.setLogLevel(ReqResLogProperties.Level.INFO);
+        blocking.setLogPrefix("AsyncTest.block");
+        blockingLoggerService.processReqLog(blocking);
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setStreamSerialization(true);
+        ReqResLoggerAspect aspect = newAspect(properties, blockingLoggerService);
+        Student student = new Student("async", 1);
+        aspect.around(new StubProceedingJoinPoint(target, StudentManager.class.getMethod("addScore", Student.class, int.class),
+                new Object[]{student, 1}, null) {
+            @Override
+            public Object proceed() {
+                return target.addScore(student, 1);
+            }
+        });
+        student.setScore(100);
+        release.countDown();
+        blockingLoggerService.shutdown();
+        log.info("{}", logs);
+        Assert.assertEquals(2, logs.size());
+        Assert.assertTrue(logs.get(0).endsWith("[REQUEST] Student:{\"name\":\"async\",\"score\":1} int:1"));
+        Assert.assertTrue(logs.get(1).endsWith("[RESPONSE] Student:{\"name\":\"async\",\"score\":2}"));
+    }
+
+    @Test
+    public void testCombinedLogMode() throws Throwable {
+        //流式日志模式下合并记录的请求参数是调用前的状态，不受方法修改参数的影响
+        List<String> logs = new ArrayList<>();
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setLogMode("COMBINED");
+        properties.setStreamSerialization(true);
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        Student student = new Student("c", 1);
+        Object[] args = {student, 1};
+        aspect.around(new StubProceedingJoinPoint(target, StudentManager.class.getMethod("addScore", Student.class, int.class), args, null) {
+            @Override
+            public Object proceed() {
+                return target.addScore(student, 1);
+            }
+        });
+        log.info("{}", logs);
+        Assert.assertEquals(1, logs.size());
+        Assert.assertTrue(logs.get(0).contains("[REQUEST] Student:{\"name\":\"c\",\"score\":1} int:1 [RESPONSE] Student:{\"name\":\"c\",\"score\":2}"));
+    }
+
+    @Test
+    public void testParamPolicies() throws Throwable {
+        byte[] data = "abc".getBytes("UTF-8");
+        List<Student> students = Arrays.asList(new Student("a", 1), new Student("b", 2));
+        //流式日志模式下有参数级配置的方法同样生效
+        for (boolean streaming : new boolean[]{false, true}) {
+            List<String> logs = new ArrayList<>();
+            ReqResLogProperties properties = new ReqResLogProperties();
+            properties.setStreamSerialization(streaming);
+            ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+            Object[] args = {"token", new ByteArrayInputStream(new byte[2]), data, students, "0123456789"};
+            ProceedingJoinPoint pjp = new StubProceedingJoinPoint(target,
+                    StudentManager.class.getMethod("upload", String.class, InputStream.class, byte[].class,
+                            List.class, String.class), args, 5);
+            Assert.assertEquals(5, aspect.around(pjp));
+            log.info("{}", logs);
+            Assert.assertEquals("StudentManager.upload [REQUEST] InputStream:<InputStream> "
+                    + "byte[]:<byte[] length=3 crc32=352441c2> List:<ArrayList size=2> "
+                    + "String:\"0123456...(truncated, 12+ bytes)", logs.get(0));
+        }
+    }
+
+    @Test
+    public void testLogCondition() throws Throwable {
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        Method transfer = StudentManager.class.getMethod("transfer", String.class, long.class, boolean.class);
+        Object[][] calls = {
+                {"small", 100L, false},
+                {"large", 20000L, false},
+                {"flagged", 1L, true},
+                {"noop", 0L, true}};
+        //多次调用，让表达式在解释执行一次后被编译
+        for (int round = 0; round < 3; round++) {
+            for (Object[] args : calls) {
+                Object result = target.transfer((String) args[0], (Long) args[1], (Boolean) args[2]);
+                Assert.assertEquals(result, aspect.around(new StubProceedingJoinPoint(target, transfer, args, result)));
+            }
+        }
+        log.info("{}", logs);
+        Assert.assertEquals(6, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("StudentManager.transfer cost:"));
+        Assert.assertTrue(logs.get(0).endsWith("[REQUEST] String:\"large\" long:20000 boolean:false [RESPONSE] String:\"large transferred 20000\""));
+        Assert.assertTrue(logs.get(1).contains("[REQUEST] String:\"flagged\""));
+
+        //不满足condition时，分开记录的方法不序列化请求参数；合并记录的方法仍然需要用于异常日志
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        Object[] addScoreArgs = {new Student("c", 1), 1};
+        Object addScorePlan = ReflectionTestUtils.invokeMethod(aspect, "getLogPlan",
+                new StubProceedingJoinPoint(target, addScore, addScoreArgs, null));
+        LogAttributes unmatched = ReflectionTestUtils.invokeMethod(aspect, "parseLogAttributes", addScoreArgs, addScorePlan, false);
+        Assert.assertFalse(unmatched.isLogEnable());
+        Assert.assertTrue(unmatched.isThrowableLogEnable());
+        Assert.assertNull(unmatched.getReqParamLogs());
+        LogAttributes matched = ReflectionTestUtils.invokeMethod(aspect, "parseLogAttributes", addScoreArgs, addScorePlan, true);
+        Assert.assertArrayEquals(new String[]{"{\"name\":\"c\",\"score\":1}", "1"}, matched.getReqParamLogs());
+        Object[] transferArgs = {"small", 100L, false};
+        Object transferPlan = ReflectionTestUtils.invokeMethod(aspect, "getLogPlan",
+                new StubProceedingJoinPoint(target, transfer, transferArgs, null));
+        LogAttributes combinedUnmatched = ReflectionTestUtils.invokeMethod(aspect, "parseLogAttributes", transferArgs, transferPlan, false);
+        Assert.assertNotNull(combinedUnmatched.getReqParamLogs());
+
+        //表达式按Student编译后传入其他类型，编译后的表达式执行失败时改用解释执行，而不是一直按默认值处理
+        logs.clear();
+        Method greet = StudentManager.class.getMethod("greet", Object.class);
+        Object[] members = {new Student("gold", 1), new Student("silver", 1), new Student("gold", 2),
+                new SlowReport("other"), new SlowReport("gold"), new SlowReport("other")};
+        for (Object member : members) {
+            aspect.around(new StubProceedingJoinPoint(target, greet, new Object[]{member}, "hi"));
+        }
+        Assert.assertEquals(6, logs.size());
+        Assert.assertTrue(logs.get(0).contains("[REQUEST] Object:{\"name\":\"gold\",\"score\":1}"));
+        Assert.assertTrue(logs.get(2).contains("[REQUEST] Object:{\"name\":\"gold\",\"score\":2}"));
+        Assert.assertTrue(logs.get(4).contains("[REQUEST] Object:{\"name\":\"gold\",\"detail\""));
+    }
+
+    @Test
+    public void testSlowThreshold() throws Throwable {
+        Method grade = StudentManager.class.getMethod("grade", Student.class, long.class);
+        for (String slowCapture : new String[]{"REFERENCE", "SNAPSHOT"}) {
+            List<String> logs = new ArrayList<>();
+            ReqResLogProperties properties = new ReqResLogProperties();
+            properties.setSlowCapture(slowCapture);
+            ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+            Object[][] calls = {
+                    {new Student("fast", 1), 0L},
+                    {new Student("slow", 1), 80L},
+                    {new Student("fail", -1), 0L}};
+            for (Object[] args : calls) {
+                try {
+                    aspect.around(new StubProceedingJoinPoint(target, grade, args, null) {
+                        @Override
+                        public Object proceed() {
+                            try {
+                                return target.grade((Student) args[0], (Long) args[1]);
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                    });
+                } catch (IllegalArgumentException e) {
+                    Assert.assertEquals("negative score", e.getMessage());
+                }
+            }
+            log.info("{}", logs);
+            //正常完成且没有超过阈值的调用不记录，慢调用与异常调用的请求日志在方法完成后记录
+            Assert.assertEquals(4, logs.size());
+            Assert.assertFalse(String.join("\n", logs).contains("fast"));
+            //REFERENCE记录的是方法修改后的请求参数，SNAPSHOT记录的是方法执行前的请求参数
+            int slowScore = "REFERENCE".equals(slowCapture) ? 2 : 1;
+            Assert.assertEquals("StudentManager.grade [REQUEST] Student:{\"name\":\"slow\",\"score\":" + slowScore
+                    + "} long:80", logs.get(0));
+            Assert.assertTrue(logs.get(1).startsWith("StudentManager.grade [RESPONSE] int:2"));
+            Assert.assertEquals("StudentManager.grade [REQUEST] Student:{\"name\":\"fail\",\"score\":-1} long:0", logs.get(2));
+            Assert.assertTrue(logs.get(3).contains("negative score"));
+        }
+    }
+
+    @Test
+    public void testAnnotationOverrides() throws Throwable {
+        //全局开启慢调用阈值并且不采样时，注解中的0与1可以让单个方法关闭慢调用阈值、全部记录
+        Method audit = StudentManager.class.getMethod("audit", Student.class);
+        Method ping = StudentManager.class.getMethod("ping", Student.class);
+        Method rename = StudentManager.class.getMethod("rename", String.class, Student.class);
+        List<String> logs = new ArrayList<>();
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setSlowThresholdMs(1000L);
+        properties.setSampleRate(0D);
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        Student student = new Student("override", 1);
+        aspect.around(new StubProceedingJoinPoint(target, audit, new Object[]{student}, "override"));
+        aspect.around(new StubProceedingJoinPoint(target, rename, new Object[]{"override", student}, student));
+        log.info("{}", logs);
+        Assert.assertEquals(2, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("StudentManager.audit") && logs.get(0).contains("[REQUEST]"));
+        Assert.assertTrue(logs.get(1).startsWith("StudentManager.audit") && logs.get(1).contains("[RESPONSE]"));
+
+        //全局全部记录时，注解中的0让这个方法不记录
+        logs.clear();
+        aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        aspect.around(new StubProceedingJoinPoint(target, ping, new Object[]{student}, "override"));
+        aspect.around(new StubProceedingJoinPoint(target, audit, new Object[]{student}, "override"));
+        Assert.assertEquals(2, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("StudentManager.audit"));
+    }
+
+    @Test
+    public void testTailSampling() throws Throwable {
+        List<String> logs = new ArrayList<>();
+        TailSamplingLoggerService tailSampling = new TailSamplingLoggerService(capturing(logs), 50, 100, 4, 1024, 60000);
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), tailSampling);
+        Method enroll = StudentManager.class.getMethod("enroll", Student.class, long.class);
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        Object[][] calls = {
+                {new Student("fast", 1), 0L, 1},
+                {new Student("slow", 1), 80L, 1},
+                {new Student("fail", -1), 0L, 2}};
+        for (Object[] args : calls) {
+            Student student = (Student) args[0];
+            int nested = (Integer) args[2];
+            try {
+                aspect.around(new StubProceedingJoinPoint(target, enroll, new Object[]{student, args[1]}, null) {
+                    @Override
+                    public Object proceed() {
+                        try {
+                            //同一个trace内嵌套的方法
+                            for (int i = 0; i < nested; i++) {
+                                aspect.around(new StubProceedingJoinPoint(target, addScore, new Object[]{student, 1}, student));
+                            }
+                            return target.enroll(student, (Long) args[1]);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Throwable e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("negative score", e.getMessage());
+            }
+        }
+        log.info("{}", logs);
+        //正常完成且没有超过latencyBudget的trace被丢弃，慢的与发生异常的trace记录完整的上下文
+        Assert.assertEquals(1, tailSampling.getDiscardedTraceCount());
+        Assert.assertEquals(2, tailSampling.getFlushedTraceCount());
+        Assert.assertEquals(0, tailSampling.getBufferedTraceCount());
+        Assert.assertEquals(0, tailSampling.getBufferedRecordCount());
+        Assert.assertFalse(String.join("\n", logs).contains("fast"));
+        Assert.assertEquals(8, logs.size());
+        Assert.assertTrue(logs.get(0).startsWith("StudentManager.enroll traceId:") && logs.get(0).contains("[REQUEST] Student:{\"name\":\"slow\""));
+        Assert.assertTrue(logs.get(1).startsWith("StudentManager.addScore traceId:") && logs.get(1).contains("[REQUEST]"));
+        Assert.assertTrue(logs.get(2).startsWith("StudentManager.addScore traceId:") && logs.get(2).contains("[RESPONSE]"));
+        Assert.assertTrue(logs.get(3).startsWith("StudentManager.enroll traceId:") && logs.get(3).endsWith("[RESPONSE] String:\"slow\""));
+        String slowTraceId = logs.get(0).split(" ")[1];
+        Assert.assertTrue(slowTraceId.startsWith("traceId:"));
+        Assert.assertTrue(logs.subList(0, 4).stream().allMatch(line -> line.contains(slowTraceId)));
+        //超过单个trace的缓冲上限后丢弃中间方法最早的日志，入口方法的请求日志与异常日志总是保留
+        Assert.assertTrue(logs.get(4).startsWith("StudentManager.enroll traceId:") && logs.get(4).contains("[REQUEST] Student:{\"name\":\"fail\""));
+        Assert.assertTrue(logs.get(5).startsWith("StudentManager.addScore traceId:") && logs.get(5).contains("[REQUEST]"));
+        Assert.assertTrue(logs.get(6).startsWith("StudentManager.addScore traceId:") && logs.get(6).contains("[RESPONSE]"));
+        Assert.assertTrue(logs.get(7).startsWith("StudentManager.enroll traceId:") && logs.get(7).contains("[THROWABLE]"));
+        Assert.assertEquals(2, tailSampling.getDroppedRecordCount());
+    }
+
+    @Test
+    public void testTraceSampling() throws Throwable {
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        Method rename = StudentManager.class.getMethod("rename", String.class, Student.class);
+        Method enroll = StudentManager.class.getMethod("enroll", Student.class, long.class);
+
+        List<String> logs = new ArrayList<>();
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setSampleRate(0.25);
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        int traces = 400;
+        int kept = 0;
+        for (int i = 0; i < traces; i++) {
+            String traceId = "sample-trace-" + i;
+            TraceIdThreadLocal.setTraceId(traceId);
+            try {
+                Student student = new Student("s" + i, i);
+                aspect.around(new StubProceedingJoinPoint(target, addScore, new Object[]{student, 1}, student));
+                aspect.around(new StubProceedingJoinPoint(target, rename, new Object[]{"n" + i, student}, student));
+            } finally {
+                TraceIdThreadLocal.release();
+            }
+            //同一个trace内的调用一起保留或丢弃，结果只由traceId决定
+            long traceLogs = logs.stream().filter(line -> line.contains("traceId:" + traceId + " ")).count();
+            boolean sampled = TraceSampler.isSampled(traceId, 0.25);
+            Assert.assertEquals(sampled, TraceSampler.isSampled(traceId, 0.25));
+            Assert.assertEquals(sampled ? 4 : 0, traceLogs);
+            kept += sampled ? 1 : 0;
+        }
+        log.info("sampled {}/{} traces", kept, traces);
+        Assert.assertEquals(kept * 4, logs.size());
+        Assert.assertTrue(kept > traces * 0.15 && kept < traces * 0.35);
+
+        //没有被采样的调用抛出异常时，默认仍然记录throwable日志
+        for (boolean bypass : new boolean[]{true, false}) {
+            logs.clear();
+            properties = new ReqResLogProperties();
+            properties.setSampleRate(0D);
+            properties.setSampleThrowableBypass(bypass);
+            ReqResLoggerAspect sampledOutAspect = newAspect(properties, capturing(logs));
+            Student failing = new Student("fail", -1);
+            try {
+                sampledOutAspect.around(new StubProceedingJoinPoint(target, enroll, new Object[]{failing, 0L}, null) {
+                    @Override
+                    public Object proceed() {
+                        try {
+                            return target.enroll(failing, 0);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("negative score", e.getMessage());
+            }
+            log.info("{}", logs);
+            Assert.assertEquals(bypass ? 1 : 0, logs.size());
+            if (bypass) {
+                Assert.assertTrue(logs.get(0).contains("[THROWABLE] java.lang.IllegalArgumentException: negative score"));
+            }
+        }
+    }
+
+    @Test
+    public void testMaxLogsPerSecond() throws Throwable {
+        List<String> logs = new ArrayList<>();
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setMaxLogsPerSecond(5);
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        for (int i = 0; i < 50; i++) {
+            Student student = new Student("s" + i, i);
+            Assert.assertSame(student, aspect.around(new StubProceedingJoinPoint(target, addScore, new Object[]{student, 1}, student)));
+        }
+        log.info("{}", logs);
+        //被限制的调用不记录req/res日志
+        Assert.assertTrue(logs.size() >= 10 && logs.size() <= 12);
+        Assert.assertTrue(logs.get(0).contains("[REQUEST] Student:{\"name\":\"s0\""));
+        aspect.shutdown();
+    }
+
+    @Test
+    public void testLoadShedding() throws Throwable {
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setSheddingStepDownTicks(1);
+        properties.setSheddingStepUpTicks(2);
+        LoadSheddingController controller = new LoadSheddingController(properties, null, null);
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        aspect.loadSheddingController = controller;
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        Student student = new Student("shed", 1);
+        StubProceedingJoinPoint joinPoint = new StubProceedingJoinPoint(target, addScore, new Object[]{student, 1}, student);
+        LoadSheddingController.Signals pressured = new LoadSheddingController.Signals(0.95, 0, 0, 0);
+        LoadSheddingController.Signals calm = new LoadSheddingController.Signals(0.1, 0.01, 0, 1);
+
+        Assert.assertEquals(LoadSheddingController.Mode.REDUCED, controller.update(pressured));
+        aspect.around(joinPoint);
+        Assert.assertEquals("StudentManager.addScore traceId:<入参方法返回的traceId> [REQUEST] Student:<Student> int:1", logs.get(0));
+        //REDUCED不调用toString()，toString()中包含的脱敏字段不会被输出
+        Credential credential = new Credential("alice", "s3cret-pwd");
+        Assert.assertTrue(credential.toString().contains("s3cret-pwd"));
+        logs.clear();
+        aspect.around(new StubProceedingJoinPoint(target,
+                StudentManager.class.getMethod("login", Credential.class), new Object[]{credential}, true));
+        log.info("{}", logs);
+        Assert.assertEquals("StudentManager.login [REQUEST] Credential:<Credential>", logs.get(0));
+        Assert.assertFalse(String.join("\n", logs).contains("s3cret"));
+
+        //MINIMAL与配置NONE一样只记录[REQUEST]/[RESPONSE]，不记录参数标记
+        Assert.assertEquals(LoadSheddingController.Mode.MINIMAL, controller.update(pressured));
+        ReqResLogProperties streamingProperties = new ReqResLogProperties();
+        streamingProperties.setStreamSerialization(true);
+        ReqResLoggerAspect streamingAspect = newAspect(streamingProperties, capturing(logs));
+        streamingAspect.loadSheddingController = controller;
+        for (ReqResLoggerAspect minimalAspect : new ReqResLoggerAspect[]{aspect, streamingAspect}) {
+            logs.clear();
+            minimalAspect.around(joinPoint);
+            Assert.assertEquals(Arrays.asList("StudentManager.addScore traceId:<入参方法返回的traceId> [REQUEST]",
+                    "StudentManager.addScore traceId:<入参方法返回的traceId> [RESPONSE]"), logs);
+        }
+
+        //恢复到NORMAL后按配置记录
+        for (int i = 0; i < 4; i++) {
+            controller.update(calm);
+        }
+        Assert.assertEquals(LoadSheddingController.Mode.NORMAL, controller.getMode());
+        logs.clear();
+        aspect.around(joinPoint);
+        Assert.assertEquals("StudentManager.addScore traceId:<入参方法返回的traceId> [REQUEST] Student:{\"name\":\"shed\",\"score\":1} int:1", logs.get(0));
+    }
+
+    @Test
+    public void testFlightRecorder() throws Throwable {
+        Path dumpDir = Files.createTempDirectory("flight-recorder");
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setFlightRecorder(true);
+        properties.setFlightRecorderDumpOn(Collections.singletonList(RuntimeException.class.getName()));
+        properties.setFlightRecorderDumpDir(dumpDir.toString());
+        FlightRecorder recorder = new FlightRecorder(properties);
+        List<String> logs = new ArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        aspect.flightRecorder = recorder;
+        Method award = StudentManager.class.getMethod("award", Student.class, int.class);
+        Method addScore = StudentManager.class.getMethod("addScore", Student.class, int.class);
+        try {
+            //award的日志不可用时同样会被记录，TRUNCATED按最大长度估算，4KB预算下只保留最近的16次调用
+            for (int i = 0; i < 40; i++) {
+                Student student = new Student("s" + i, i);
+                aspect.around(new StubProceedingJoinPoint(target, award, new Object[]{student, 1}, student));
+            }
+            Assert.assertTrue(logs.isEmpty());
+            Student student = new Student("fr", 1);
+            aspect.around(new StubProceedingJoinPoint(target, addScore, new Object[]{student, 1}, student));
+            Assert.assertEquals(2, logs.size());
+            Assert.assertEquals(2, recorder.getMethodCount());
+            Assert.assertEquals(41, recorder.getRecordedCount());
+            String awardDump = recorder.dumpMethod("StudentManager.award");
+            log.info("{}", awardDump);
+            Assert.assertTrue(awardDump.contains("## com.yytech.test.StudentManager.award (16 records)"));
+            Assert.assertFalse(awardDump.contains("\"s23\""));
+            Assert.assertTrue(awardDump.contains(" OK args:[{\"name\":\"s24\",\"score\":24},1] result:{\"name\":\"s24\",\"score\":24}"));
+            Assert.assertTrue(recorder.dumpMethod("addScore").contains(" traceId:<入参方法返回的traceId> elapsed:"));
+            Assert.assertEquals("", recorder.dumpMethod("StudentManager.missing"));
+
+            //抛出dumpOn中的异常时自动写入文件，dumpInterval内只写一次
+            StubProceedingJoinPoint failing = new StubProceedingJoinPoint(target, award,
+                    new Object[]{student, -1}, null) {
+                @Override
+                public Object proceed() {
+                    throw new IllegalStateException("negative bonus -1");
+                }
+            };
+            for (int i = 0; i < 2; i++) {
+                try {
+                    aspect.around(failing);
+                    Assert.fail();
+                } catch (IllegalStateException e) {
+                    Assert.assertEquals("negative bonus -1", e.getMessage());
+                }
+            }
+            Assert.assertEquals(1, recorder.getAutoDumpCount());
+            File[] dumpFiles = new File[0];
+            for (int i = 0; i < 100 && dumpFiles.length == 0; i++) {
+                TimeUnit.MILLISECONDS.sleep(50);
+                dumpFiles = dumpDir.toFile().listFiles((dir, name) -> name.startsWith("req-res-log-flight-"));
+            }
+            Assert.assertEquals(1, dumpFiles.length);
+            String content = new String(Files.readAllBytes(dumpFiles[0].toPath()), StandardCharsets.UTF_8);
+            Assert.assertTrue(content.contains("com.yytech.test.StudentManager.award threw [java.lang.IllegalStateException]:negative bonus -1"));
+            Assert.assertTrue(content.contains(" [java.lang.IllegalStateException]:negative bonus -1 args:[{\"name\":\"fr\",\"score\":1},-1]"));
+            Assert.assertTrue(content.contains("## com.yytech.test.StudentManager.addScore (1 records)"));
+
+            //JMX
+            recorder.start();
+            ObjectName objectName = new ObjectName(FlightRecorder.OBJECT_NAME);
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                Assert.assertEquals(2, mBeanServer.getAttribute(objectName, "MethodCount"));
+                Assert.assertEquals(43L, mBeanServer.getAttribute(objectName, "RecordedCount"));
+                String dump = (String) mBeanServer.invoke(objectName, "dumpMethod",
+                        new Object[]{"StudentManager.addScore"}, new String[]{String.class.getName()});
+                Assert.assertTrue(dump.contains(" OK args:[{\"name\":\"fr\",\"score\":1},1]"));
+            } finally {
+                recorder.shutdown();
+            }
+            Assert.assertFalse(mBeanServer.isRegistered(objectName));
+        } finally {
+            FileSystemUtils.deleteRecursively(dumpDir.toFile());
+        }
+    }
+
+    @Test
+    public void testReactiveResubscription() throws Throwable {
+        //同一个Mono在两个线程中并发订阅，每次订阅记录各自的traceId、结果与耗时
+        List<String> logs = new CopyOnWriteArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        @SuppressWarnings("unchecked")
+        Mono<Student> mono = (Mono<Student>) aspect.around(new StubProceedingJoinPoint(target,
+                StudentManager.class.getMethod("findStudentMono", String.class), new Object[]{"mono"}, null) {
+            @Override
+            public Object proceed() {
+                return target.findStudentMono("mono").delayElement(Duration.ofMillis(100));
+            }
+        });
+        Assert.assertTrue(logs.isEmpty());
+        CountDownLatch subscribed = new CountDownLatch(2);
+        List<Thread> threads = new ArrayList<>();
+        List<String> names = new CopyOnWriteArrayList<>();
+        for (String traceId : new String[]{"ctx-1", "ctx-2"}) {
+            Thread thread = new Thread(() -> names.add(mono
+                    .doOnSubscribe(s -> subscribed.countDown())
+                    .subscriberContext(Context.of(TraceIdContext.KEY, traceId))
+                    .block().getName()));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, subscribed.getCount());
+        log.info("{}", logs);
+        Assert.assertEquals(4, logs.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("mono@ctx-1", "mono@ctx-2")), new HashSet<>(names));
+        for (String traceId : new String[]{"ctx-1", "ctx-2"}) {
+            String prefix = "StudentManager.findStudentMono traceId:" + traceId + " ";
+            Assert.assertEquals(1, logs.stream().filter(line -> line.equals(prefix + "[REQUEST] String:\"mono\"")).count());
+            Assert.assertEquals(1, logs.stream().filter(line -> line.startsWith(prefix + "[RESPONSE] Mono:{\"name\":\"mono@" + traceId + "\"")).count());
+        }
+    }
+
+    @Test
+    public void testReactiveTraceSampling() throws Throwable {
+        //Mono的采样按订阅时Context中的traceId决定，而不是调用方法时的traceId
+        List<String> logs = new CopyOnWriteArrayList<>();
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setSampleRate(0.5);
+        ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+        String sampledTraceId = null;
+        String droppedTraceId = null;
+        for (int i = 0; sampledTraceId == null || droppedTraceId == null; i++) {
+            String traceId = "reactive-trace-" + i;
+            if (TraceSampler.isSampled(traceId, 0.5)) {
+                sampledTraceId = traceId;
+            } else {
+                droppedTraceId = traceId;
+            }
+        }
+        TraceIdThreadLocal.setTraceId(droppedTraceId);
+        Mono<?> mono;
+        try {
+            mono = (Mono<?>) aspect.around(new StubProceedingJoinPoint(target,
+                    StudentManager.class.getMethod("findStudentMono", String.class), new Object[]{"mono"}, null) {
+                @Override
+                public Object proceed() {
+                    return target.findStudentMono("mono");
+                }
+            });
+        } finally {
+            TraceIdThreadLocal.release();
+        }
+        Assert.assertNotNull(mono.subscriberContext(Context.of(TraceIdContext.KEY, sampledTraceId)).block());
+        Assert.assertNotNull(mono.subscriberContext(Context.of(TraceIdContext.KEY, droppedTraceId)).block());
+        log.info("{}", logs);
+        Assert.assertEquals(2, logs.size());
+        for (String line : logs) {
+            Assert.assertTrue(line, line.contains("traceId:" + sampledTraceId + " "));
+        }
+    }
+
+    @Test
+    public void testFluxSummary() throws Throwable {
+        //总字节数用前N个元素序列化的结果估算：每个元素30字节，5个元素估算为150字节
+        List<String> logs = new CopyOnWriteArrayList<>();
+        ReqResLoggerAspect aspect = newAspect(new ReqResLogProperties(), capturing(logs));
+        @SuppressWarnings("unchecked")
+        Flux<Student> flux = (Flux<Student>) aspect.around(new StubProceedingJoinPoint(target,
+                StudentManager.class.getMethod("listStudentsFlux", int.class, boolean.class), new Object[]{5, false}, null) {
+            @Override
+            public Object proceed() {
+                return target.listStudentsFlux(5, false);
+            }
+        });
+        Assert.assertEquals(5, flux.collectList().block().size());
+        log.info("{}", logs);
+        Assert.assertTrue(logs.get(1), logs.get(1).endsWith(" [RESPONSE] Flux:{\"count\":5,\"estimatedBytes\":150,\"first\":[{\"name\":\"fluxName0\",\"score\":0},"
+                        + "{\"name\":\"fluxName1\",\"score\":1},{\"name\":\"fluxName2\",\"score\":2}]}"));
+        //空Flux估算为0字节
+        Assert.assertEquals("{\"count\":0,\"estimatedBytes\":0,\"first\":[]}",
+                ReqResLogUtil.toJsonWithoutNull(new FluxSummary(0, Collections.emptyList(), false)));
+        Assert.assertEquals("{\"count\":4,\"estimatedBytes\":16,\"first\":[null,\"ab\"],\"cancelled\":true}",
+                ReqResLogUtil.toJsonWithoutNull(new FluxSummary(4, Arrays.asList(null, "ab"), true)));
+    }
+
+    @Test
+    public void testFieldProjection() throws Throwable {
+        Account account = new Account("owner", "6222020012345678", "13812345678", "secret", new Student("guardian", 1));
+        List<Student> students = Arrays.asList(new Student("a", 1), new Student("b", 2));
+        for (boolean streaming : new boolean[]{false, true}) {
+            List<String> logs = new ArrayList<>();
+            ReqResLogProperties properties = new ReqResLogProperties();
+            properties.setStreamSerialization(streaming);
+            ReqResLoggerAspect aspect = newAspect(properties, capturing(logs));
+            Method pickGuardian = StudentManager.class.getMethod("pickGuardian", Account.class, List.class);
+            aspect.around(new StubProceedingJoinPoint(target, pickGuardian,
+                    new Object[]{account, students}, account.getGuardian()));
+            log.info("{}", logs);
+            //只记录投影的属性，脱敏规则同样生效，取不到的属性不输出
+            Assert.assertEquals("StudentManager.pickGuardian [REQUEST] "
+                    + "{\"account.owner\":\"owner\",\"account.cardNo\":\"****5678\",\"students.size()\":2}", logs.get(0));
+            Assert.assertEquals("StudentManager.pickGuardian [RESPONSE] Student:{\"name\":\"guardian\"}", logs.get(1));
+        }
+    }
+
+    private static ReqResLoggerAspect newAspect(ReqResLogProperties properties, LoggerService loggerService) {
+        ReqResLoggerAspect aspect = new ReqResLoggerAspect();
+        aspect.reqResLogProperties = properties;
+        aspect.throwableFingerprinter = new ThrowableFingerprinter(30, 0, 16);
+        aspect.loggerService = loggerService;
+        return aspect;
+    }
+
+    private static LoggerService capturing(List<String> logs) {
+        return new DefaultLoggerServiceImpl() {
+            @Override
+            protected void writeLog(ReqResLogProperties.Level level, String logContent) {
+                logs.add(logContent);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.yytech.logger.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTester {
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        //多线程并发记录，计数不丢失，百分位误差在1/16以内
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (long v = 1; v <= 100000; v++) {
+                    histogram.record(v * 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(400000, snapshot.getTotalCount());
+        Assert.assertEquals(100000000L, snapshot.getMax());
+        Assert.assertEquals(50000000, snapshot.getValueAtPercentile(50), 50000000 / 16.0);
+        Assert.assertEquals(99000000, snapshot.getValueAtPercentile(99), 99000000 / 16.0);
+    }
+
+    @Test
+    public void testLazyStripes() {
+        //没有竞争时只使用一个条带
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+        Assert.assertEquals(1, histogram.getActiveStripes());
+        Assert.assertEquals(100000, histogram.snapshot().getTotalCount());
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.yytech.logger.recorder;
+
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.test.Student;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+public class FlightRecorderTester {
+
+    @Test
+    public void testReferenceCapture() {
+        //流等不会被序列化的类型只保存<类型名>，不被缓冲区引用
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setFlightRecorder(true);
+        properties.setFlightRecorderCapture("REFERENCE");
+        MethodFlightRecorder reference = new FlightRecorder(properties).getMethodRecorder("Demo", "read", 2, 4);
+        Object[] streamArgs = {new ByteArrayInputStream(new byte[2]), 1};
+        reference.record(null, 1000, streamArgs, "ok", null);
+        Assert.assertEquals("<ByteArrayInputStream>", reference.snapshot().get(0).getArgs()[0]);
+        Assert.assertEquals(1, reference.snapshot().get(0).getArgs()[1]);
+        Assert.assertTrue(streamArgs[0] instanceof ByteArrayInputStream);
+    }
+
+    @Test
+    public void testTruncatedCapture() {
+        //TRUNCATED在记录时序列化，超过最大长度后停止，预算按最大长度估算
+        ReqResLogProperties properties = new ReqResLogProperties();
+        properties.setFlightRecorder(true);
+        properties.setFlightRecorderCapture("TRUNCATED");
+        properties.setFlightRecorderMaxLength(8);
+        MethodFlightRecorder truncated = new FlightRecorder(properties).getMethodRecorder("Demo", "run", 1, 4);
+        Assert.assertEquals(16, truncated.getCapacity());
+        truncated.record(null, 1000, new Object[]{"0123456789abcdef"}, new Student("t", 1), null);
+        truncated.record(null, 1000, new Object[]{new ByteArrayInputStream(new byte[2])}, null, null);
+        FlightRecord flightRecord = truncated.snapshot().get(0);
+        Assert.assertTrue(((String) flightRecord.getArgs()[0]).startsWith("\"0123456...(truncated"));
+        Assert.assertTrue(((String) flightRecord.getResult()).startsWith("{\"name\":...(truncated"));
+        Assert.assertEquals("<ByteArrayInputStream>", truncated.snapshot().get(1).getArgs()[0]);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.yytech.logger.trace;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Slf4j
+public class TraceIdGeneratorTester {
+
+    @Test
+    public void testFormat() {
+        String uuid = RandomTraceIdGenerator.INSTANCE.generate();
+        String time = TimeOrderedTraceIdGenerator.INSTANCE.generate();
+        String traceparent = TraceparentTraceIdGenerator.INSTANCE.generate();
+        log.info("uuid:{} time:{} traceparent:{}", uuid, time, traceparent);
+        Assert.assertTrue(uuid.matches("[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}"));
+        Assert.assertTrue(time.matches("[0-9a-f]{32}"));
+        Assert.assertTrue(traceparent.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+    }
+
+    @Test
+    public void testTimeOrdered() throws InterruptedException {
+        //多线程生成的TIME traceId不重复，且同一线程内严格递增
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        AtomicReference<String> error = new AtomicReference<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                String last = "";
+                for (int i = 0; i < 100000; i++) {
+                    String id = TimeOrderedTraceIdGenerator.INSTANCE.generate();
+                    if (id.substring(0, 26).compareTo(last) <= 0) {
+                        error.set(last + " >= " + id);
+                    }
+                    last = id.substring(0, 26);
+                    ids.add(id);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        Assert.assertEquals(400000, ids.size());
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.yytech.logger.util;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LogRateLimiterTester {
+
+    @Test
+    public void testSingleThread() {
+        //单线程也能用满整个速率，被限制的调用只计数
+        LogRateLimiter rateLimiter = new LogRateLimiter("limiter", 100, TimeUnit.MILLISECONDS.toNanos(1));
+        int allowed = 0;
+        for (int i = 0; i < 1000; i++) {
+            allowed += rateLimiter.tryAcquire() ? 1 : 0;
+        }
+        Assert.assertTrue(allowed >= 100 && allowed < 120);
+        Assert.assertEquals(1000 - allowed, rateLimiter.getSuppressedCount());
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        //多个线程同时获取时总数仍然不超过速率
+        LogRateLimiter shared = new LogRateLimiter("shared", 200);
+        AtomicInteger sharedAllowed = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (shared.tryAcquire()) {
+                        sharedAllowed.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(40000 - sharedAllowed.get(), shared.getSuppressedCount());
+        Assert.assertTrue(sharedAllowed.get() >= 200 && sharedAllowed.get() < 300);
+    }
+
+    @Test
+    public void testReport() throws InterruptedException {
+        //没有后续调用时由reportIfDue按时输出汇总，flush立即输出最后一个周期，时间为实际的统计时长
+        Logger logger = (Logger) LoggerFactory.getLogger(LogRateLimiter.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            LogRateLimiter rateLimiter = new LogRateLimiter("report", 1, TimeUnit.MILLISECONDS.toNanos(50));
+            for (int i = 0; i < 5; i++) {
+                rateLimiter.tryAcquire();
+            }
+            rateLimiter.reportIfDue();
+            Assert.assertTrue(appender.list.isEmpty());
+            Thread.sleep(80);
+            rateLimiter.reportIfDue();
+            Assert.assertEquals(1, appender.list.size());
+            String report = appender.list.get(0).getFormattedMessage();
+            long windowMillis = Long.parseLong(report.replaceAll(".* in last (\\d+)ms .*", "$1"));
+            Assert.assertTrue(report, report.startsWith("report 4 calls suppressed in last ") && windowMillis >= 50);
+
+            rateLimiter.tryAcquire();
+            rateLimiter.flush();
+            Assert.assertEquals(2, appender.list.size());
+            Assert.assertTrue(appender.list.get(1).getFormattedMessage().startsWith("report 1 calls suppressed in last "));
+            rateLimiter.flush();
+            Assert.assertEquals(2, appender.list.size());
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
+}
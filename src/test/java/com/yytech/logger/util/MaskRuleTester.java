@@ -0,0 +1,55 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yytech.test.Account;
+import com.yytech.test.Credential;
+import com.yytech.test.Student;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class MaskRuleTester {
+
+    @Test
+    public void testMask() {
+        MaskRule phone = MaskRule.parse("*phone*:3:4".split(":"));
+        Assert.assertEquals("138****5678", phone.mask("13812345678"));
+        //长度不足时整体替换，不暴露被隐藏部分的长度
+        Assert.assertEquals("****", phone.mask("1381234"));
+        Assert.assertEquals("****5678", new MaskRule(0, 4).mask(6222020012345678L));
+        //不是字符串、数字等简单值时整体替换
+        Assert.assertEquals("****", new MaskRule(0, 4).mask(new Student("guardian", 1)));
+        Assert.assertSame(MaskRule.ALL, MaskRule.parse(new String[]{"password"}));
+    }
+
+    @Test
+    public void testMaskingSerializer() throws Exception {
+        MaskingSerializerModifier modifier = new MaskingSerializerModifier(Arrays.asList("password", "*phone*:3:4"));
+        ObjectMapper objectMapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .registerModule(MaskingSerializerModifier.module(modifier));
+        Account account = new Account("owner", "6222020012345678", "13812345678", "secret", new Student("guardian", 1));
+        Assert.assertEquals("{\"owner\":\"owner\",\"cardNo\":\"****5678\",\"mobilePhone\":\"138****5678\","
+                + "\"password\":\"****\",\"guardian\":\"****\"}", objectMapper.writeValueAsString(account));
+        //null字段仍然不输出
+        account.setPassword(null);
+        Assert.assertFalse(objectMapper.writeValueAsString(Collections.singletonList(account)).contains("password"));
+
+        //脱敏的字段同样遵守@JsonInclude(NON_EMPTY)等配置
+        Credential credential = new Credential("alice", "s3cret-pwd");
+        credential.setOtp("");
+        Assert.assertEquals("{\"username\":\"alice\",\"password\":\"****\"}", objectMapper.writeValueAsString(credential));
+        credential.setOtp("123456");
+        Assert.assertEquals("{\"username\":\"alice\",\"password\":\"****\",\"otp\":\"****\"}",
+                objectMapper.writeValueAsString(credential));
+
+        //不经过BeanSerializer的属性值按注解或字段名模式查找规则
+        Assert.assertEquals(4, modifier.ruleOf(Account.class, "cardNo").getKeepLast());
+        Assert.assertEquals(3, modifier.ruleOf(null, "mobilePhone").getKeepFirst());
+        Assert.assertNull(modifier.ruleOf(Account.class, "owner"));
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.yytech.logger.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.yytech.test.Credential;
+import com.yytech.test.Student;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+
+public class ObjectWriterCacheTester {
+
+    @Test
+    public void testEviction() {
+        //超过上限时只淘汰最早缓存的类型，其他类型的ObjectWriter仍然复用
+        ObjectWriterCache cache = new ObjectWriterCache(new ObjectMapper(), 3);
+        ObjectWriter studentWriter = cache.getWriter(Student.class);
+        ObjectWriter credentialWriter = cache.getWriter(Credential.class);
+        ObjectWriter dateWriter = cache.getWriter(Date.class);
+        Assert.assertSame(studentWriter, cache.getWriter(Student.class));
+        Assert.assertEquals(3, cache.size());
+        cache.getWriter(ArrayList.class);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertSame(credentialWriter, cache.getWriter(Credential.class));
+        Assert.assertSame(dateWriter, cache.getWriter(Date.class));
+        Assert.assertNotSame(studentWriter, cache.getWriter(Student.class));
+        cache.getWriter(HashMap.class);
+        Assert.assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testRegisterOwner() throws Exception {
+        //json配置是进程内共享的，已经被其他注册者持有时不能被覆盖，撤销之后才能重新注册
+        Object owner = new Object();
+        Object other = new Object();
+        ObjectMapper current = ReqResLogUtil.getObjectMapper();
+        boolean registered = ReqResLogUtil.registerObjectMapper(owner, null, 16, Collections.singletonList("username"));
+        try {
+            Assert.assertFalse(ReqResLogUtil.registerObjectMapper(other, null, 16, Collections.emptyList()));
+            if (registered) {
+                Assert.assertTrue(ReqResLogUtil.toJsonWithoutNull(new Credential("alice", null)).contains("\"username\":\"****\""));
+                Assert.assertTrue(ReqResLogUtil.registerObjectMapper(owner, null, 16, Collections.emptyList()));
+            } else {
+                Assert.assertSame(current, ReqResLogUtil.getObjectMapper());
+            }
+            //撤销只对注册者自己生效
+            ObjectMapper registeredMapper = ReqResLogUtil.getObjectMapper();
+            ReqResLogUtil.unregisterObjectMapper(other);
+            Assert.assertSame(registeredMapper, ReqResLogUtil.getObjectMapper());
+        } finally {
+            ReqResLogUtil.unregisterObjectMapper(owner);
+        }
+        if (registered) {
+            Assert.assertTrue(ReqResLogUtil.toJsonWithoutNull(new Credential("alice", null)).contains("\"username\":\"alice\""));
+            Assert.assertTrue(ReqResLogUtil.registerObjectMapper(other, null, 16, Collections.emptyList()));
+            ReqResLogUtil.unregisterObjectMapper(other);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.yytech.logger.util;
+
+import com.yytech.test.Student;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class PropertyPathTester {
+
+    private static final Class<?>[] PARAMETER_TYPES = {String.class, Object.class, Student.class};
+
+    private static final String[] PARAMETER_NAMES = {"id", "header", "student"};
+
+    @Test
+    public void testGet() throws Throwable {
+        Object[] args = {"id-1", Collections.singletonMap("requestId", "req-1"), new Student("testName", 1)};
+
+        //兼容旧写法，从第一个参数上取无参方法
+        Assert.assertEquals(4, PropertyPath.compile("length", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        //下标与参数名，声明类型为Object时按运行时类型(Map)解析
+        Assert.assertEquals("req-1", PropertyPath.compile("arg1.requestId", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        Assert.assertEquals("req-1", PropertyPath.compile("header.requestId", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        //getter与无参方法
+        Assert.assertEquals("testName", PropertyPath.compile("student.name", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        Assert.assertEquals("<入参方法返回的traceId>", PropertyPath.compile("arg2.traceId", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        //嵌套路径，中间为null时结果为null
+        Assert.assertEquals(8, PropertyPath.compile("student.name.length", PARAMETER_TYPES, PARAMETER_NAMES).get(args));
+        Assert.assertNull(PropertyPath.compile("student.name.length", PARAMETER_TYPES, PARAMETER_NAMES)
+                .get(new Object[]{"id-1", null, new Student()}));
+    }
+
+    @Test
+    public void testRuntimeType() throws Throwable {
+        //运行时类型变化时重新解析
+        PropertyPath polymorphic = PropertyPath.compile("arg1.name", PARAMETER_TYPES, PARAMETER_NAMES);
+        Assert.assertEquals("a", polymorphic.get(new Object[]{null, new Student("a", 1), null}));
+        Assert.assertEquals("b", polymorphic.get(new Object[]{null, Collections.singletonMap("name", "b"), null}));
+    }
+
+    @Test
+    public void testIllegalPath() {
+        //final类型上不存在的属性、越界的下标在编译时报错
+        for (String illegal : new String[]{"arg0.notExists", "arg3.name", "student..name"}) {
+            try {
+                PropertyPath.compile(illegal, PARAMETER_TYPES, PARAMETER_NAMES);
+                Assert.fail(illegal);
+            } catch (IllegalArgumentException ignore) {
+            }
+        }
+    }
+
+}
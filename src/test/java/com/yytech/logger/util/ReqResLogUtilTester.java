@@ -0,0 +1,62 @@
+package com.yytech.logger.util;
+
+import com.yytech.test.Credential;
+import com.yytech.test.Student;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Slf4j
+public class ReqResLogUtilTester {
+
+    @Test
+    public void testMaxLengthTruncation() throws Exception {
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            students.add(new Student("testName" + i, i));
+        }
+        String json = ReqResLogUtil.toJsonWithoutNull(students, 1000);
+        log.info("truncated json length:{} tail:{}", json.length(), json.substring(json.length() - 40));
+        Assert.assertTrue(json.startsWith("[{\"name\":\"testName0\""));
+        Assert.assertTrue(json.matches("(?s).*\\.\\.\\.\\(truncated, \\d+\\+ bytes\\)$"));
+        Assert.assertTrue(json.length() < 1100);
+
+        //序列化在达到限制后立即停止，内存分配与限制成正比而不是与对象大小成正比
+        for (int i = 0; i < 50; i++) {
+            ReqResLogUtil.toJsonWithoutNull(students, 1000);
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 50; i++) {
+            ReqResLogUtil.toJsonWithoutNull(students, 1000);
+        }
+        long limitedBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / 50;
+        log.info("bytes allocated per invocation with 1000 bytes limit:{}", limitedBytes);
+        Assert.assertTrue(limitedBytes < 100 * 1024);
+    }
+
+    @Test
+    public void testTruncate() {
+        Assert.assertEquals("abc", ReqResLogUtil.truncate("abc", 10));
+        Assert.assertEquals("abcde...(truncated, 10+ bytes)", ReqResLogUtil.truncate("abcdefghij", 5));
+        //多字节字符不会被截断成半个
+        Assert.assertEquals("中...(truncated, 6+ bytes)", ReqResLogUtil.truncate("中文", 4));
+    }
+
+    @Test
+    public void testSummarize() {
+        //摘要不调用toString()，只有简单值原样输出
+        Assert.assertNull(ReqResLogUtil.summarize(null));
+        Assert.assertEquals("12", ReqResLogUtil.summarize(12));
+        Assert.assertEquals("<Credential>", ReqResLogUtil.summarize(new Credential("alice", "s3cret-pwd")));
+        Assert.assertEquals("<SingletonList size=1>", ReqResLogUtil.summarize(Collections.singletonList(1)));
+        Assert.assertEquals("<int[] length=3>", ReqResLogUtil.summarize(new int[3]));
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.yytech.logger.util;
+
+import com.yytech.logger.aspect.ReqResLoggerAspect;
+import com.yytech.logger.autoconfig.ReqResLogProperties;
+import com.yytech.test.Credential;
+import com.yytech.test.SlowReport;
+import com.yytech.test.Student;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class SerializationProfilerTester {
+
+    @After
+    public void reset() {
+        SerializationProfiler.configure(false, 64, 0, null);
+        SerializationProfiler.reset();
+    }
+
+    @Test
+    public void testBudgetFallback() throws Exception {
+        //预热，避免第一次序列化Student的耗时超过预算
+        for (int i = 0; i < 1000; i++) {
+            ReqResLogUtil.toJsonWithoutNull(new Student("s", i));
+        }
+        ReqResLoggerAspect aspect = new ReqResLoggerAspect();
+        SerializationProfiler.configure(true, 1, 100, ReqResLogProperties.SerializationFallback.SUMMARY);
+        SlowReport report = new SlowReport("r1");
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals("{\"name\":\"r1\",\"detail\":\"detail of r1\"}", ReflectionTestUtils.invokeMethod(aspect,
+                    "toJsonOrString", ReqResLogProperties.LogType.JSON, report, 0));
+        }
+        for (int i = 0; i < 32; i++) {
+            ReflectionTestUtils.invokeMethod(aspect, "toJsonOrString", ReqResLogProperties.LogType.JSON, new Student("s", i), 0);
+        }
+        //平均耗时超过预算后不再序列化成json，其他类型不受影响
+        Assert.assertEquals("<SlowReport>", ReflectionTestUtils.invokeMethod(aspect,
+                "toJsonOrString", ReqResLogProperties.LogType.JSON, report, 0));
+        Assert.assertEquals("{\"name\":\"s\",\"score\":1}", ReflectionTestUtils.invokeMethod(aspect,
+                "toJsonOrString", ReqResLogProperties.LogType.JSON, new Student("s", 1), 0));
+        StreamingLogWriter writer = StreamingLogWriter.acquire();
+        try {
+            Assert.assertEquals("<SlowReport> {\"name\":\"s\",\"score\":2}", writer.appendValue(ReqResLogProperties.LogType.JSON, report)
+                    .append(" ").appendValue(ReqResLogProperties.LogType.JSON, new Student("s", 2)).finish());
+        } finally {
+            writer.release();
+        }
+
+        List<SerializationProfiler.Entry> entries = SerializationProfiler.report();
+        log.info("{}", SerializationProfiler.reportString(5));
+        Assert.assertEquals(SlowReport.class.getTypeName(), entries.get(0).getTypeName());
+        Assert.assertTrue(entries.get(0).isFallback());
+        Assert.assertEquals(16, entries.get(0).getSamples());
+        Assert.assertTrue(entries.get(0).getAvgNanos() >= TimeUnit.MICROSECONDS.toNanos(300));
+        SerializationProfiler.Entry student = entries.stream()
+                .filter(entry -> entry.getTypeName().equals(Student.class.getTypeName())).findFirst().orElse(null);
+        Assert.assertNotNull(student);
+        Assert.assertEquals(34, student.getCalls());
+        Assert.assertFalse(student.isFallback());
+        Assert.assertEquals(22, student.getAvgChars());
+    }
+
+    @Test
+    public void testDefaultFallback() {
+        //默认的fallback是摘要，不调用toString()，不会绕过字段脱敏
+        Assert.assertEquals(ReqResLogProperties.SerializationFallback.SUMMARY,
+                new ReqResLogProperties().getSerializationFallbackWithDefault());
+        SerializationProfiler.configure(true, 1, 100, null);
+        Assert.assertEquals("<Credential>", SerializationProfiler.fallbackOf(new Credential("alice", "s3cret-pwd")));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.yytech.logger.util;
+
+import com.yytech.test.Dog;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+public class ThrowableFingerprinterTester {
+
+    @Test
+    public void testRender() throws Exception {
+        ThrowableFingerprinter fingerprinter = new ThrowableFingerprinter(30, 60000, 16);
+        List<Throwable> throwables = dive(3);
+        //指纹与异常信息无关，与抛出位置有关
+        long fingerprint = fingerprinter.fingerprint(throwables.get(0));
+        Assert.assertEquals(fingerprint, fingerprinter.fingerprint(throwables.get(1)));
+        Assert.assertNotEquals(fingerprint, fingerprinter.fingerprint(new IllegalStateException("dog can't dive 0m")));
+
+        String first = fingerprinter.render(throwables.get(0));
+        String second = fingerprinter.render(throwables.get(1));
+        String third = fingerprinter.render(throwables.get(2));
+        log.info("first:{}", first);
+        log.info("third:{}", third);
+        Assert.assertTrue(first.startsWith("[java.lang.IllegalStateException]:dog can't dive 0m #"));
+        Assert.assertTrue(first.contains("\tat com.yytech.test.Dog.dive("));
+        Assert.assertTrue(first.contains("proxy/reflection frames elided"));
+        Assert.assertTrue(first.contains("Caused by: java.lang.RuntimeException: no oxygen"));
+        Assert.assertTrue(second.endsWith("(seen 2 times)"));
+        Assert.assertEquals(third.substring(0, third.indexOf('#')), "[java.lang.IllegalStateException]:dog can't dive 2m ");
+        Assert.assertTrue(third.endsWith("(seen 3 times)"));
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        //时间窗口过期后重新记录堆栈
+        List<Throwable> throwables = dive(2);
+        ThrowableFingerprinter noWindow = new ThrowableFingerprinter(2, 0, 16);
+        String limited = noWindow.render(throwables.get(0));
+        Assert.assertTrue(noWindow.render(throwables.get(1)).contains("\tat "));
+        Assert.assertTrue(limited.contains(" more"));
+    }
+
+    private static List<Throwable> dive(int times) throws Exception {
+        List<Throwable> throwables = new ArrayList<>();
+        for (int i = 0; i < times; i++) {
+            try {
+                //通过反射调用，反射帧会被折叠
+                Dog.class.getMethod("dive", int.class).invoke(new Dog(), i);
+            } catch (InvocationTargetException e) {
+                throwables.add(e.getCause());
+            }
+        }
+        return throwables;
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.yytech.test;
+
+import com.yytech.logger.annotation.ReqResLogMask;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Account {
+
+    private String owner;
+
+    @ReqResLogMask(keepLast = 4)
+    private String cardNo;
+
+    private String mobilePhone;
+
+    private String password;
+
+    @ReqResLogMask
+    private Student guardian;
+
+}
@@ -0,0 +1,32 @@
+package com.yytech.test;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.yytech.logger.annotation.ReqResLogMask;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * lombok生成的toString()包含所有字段，只有json日志会脱敏
+ */
+@Data
+@NoArgsConstructor
+public class Credential {
+
+    private String username;
+
+    @ReqResLogMask
+    private String password;
+
+    /**
+     * 为空字符串时不输出，脱敏的字段同样遵守
+     */
+    @ReqResLogMask
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private String otp;
+
+    public Credential(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+}
@@ -32,6 +32,24 @@ public class Dog {
         }
     }
 
+    @ReqResLog(level = "DEBUG", throwableLogLevel = "DEBUG")
+    public String sleep() {
+        return "zzz";
+    }
+
+    @ReqResLog(logMode = "COMBINED", reqParamMark = "NAME")
+    public String bark(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("who should I bark at?");
+        }
+        return "汪汪汪 " + name;
+    }
+
+    @ReqResLog(throwableLogType = "FINGERPRINT", throwableLogLevel = "WARN")
+    public void dive(int depth) {
+        throw new IllegalStateException("dog can't dive " + depth + "m", new RuntimeException("no oxygen"));
+    }
+
     @ReqResLog(throwableLogLevel = "WARN")
     public void fly() {
         log.info("dog cat't fly, there is an Exception");
@@ -0,0 +1,25 @@
+package com.yytech.test;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化代价很高的DTO，例如getter中触发了懒加载
+ */
+@Getter
+@AllArgsConstructor
+public class SlowReport {
+
+    private String name;
+
+    public String getDetail() {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(300);
+        while (System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        return "detail of " + name;
+    }
+
+}
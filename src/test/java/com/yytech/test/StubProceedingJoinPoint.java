@@ -0,0 +1,167 @@
+package com.yytech.test;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+
+import java.lang.reflect.Method;
+
+/**
+ * 不经过Spring代理，直接调用切面的ProceedingJoinPoint
+ * 所有返回值都是预先创建好的，用于测量切面自身产生的对象分配
+ */
+public class StubProceedingJoinPoint implements ProceedingJoinPoint {
+
+    private final Object target;
+
+    private final Object[] args;
+
+    private final Object result;
+
+    private final MethodSignature signature;
+
+    public StubProceedingJoinPoint(Object target, Method method, Object[] args, Object result) {
+        this.target = target;
+        this.args = args;
+        this.result = result;
+        this.signature = new StubMethodSignature(method);
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure arc) {
+    }
+
+    @Override
+    public Object proceed() {
+        return result;
+    }
+
+    @Override
+    public Object proceed(Object[] args) {
+        return result;
+    }
+
+    @Override
+    public String toShortString() {
+        return signature.toShortString();
+    }
+
+    @Override
+    public String toLongString() {
+        return signature.toLongString();
+    }
+
+    @Override
+    public Object getThis() {
+        return target;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Signature getSignature() {
+        return signature;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return null;
+    }
+
+    @Override
+    public String getKind() {
+        return METHOD_EXECUTION;
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return null;
+    }
+
+    private static class StubMethodSignature implements MethodSignature {
+
+        private final Method method;
+
+        private final String[] parameterNames;
+
+        private StubMethodSignature(Method method) {
+            this.method = method;
+            String[] discovered = new DefaultParameterNameDiscoverer().getParameterNames(method);
+            if (discovered != null) {
+                this.parameterNames = discovered;
+            } else {
+                this.parameterNames = new String[method.getParameterCount()];
+                for (int i = 0; i < parameterNames.length; i++) {
+                    parameterNames[i] = "arg" + i;
+                }
+            }
+        }
+
+        @Override
+        public Class getReturnType() {
+            return method.getReturnType();
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Class[] getParameterTypes() {
+            return method.getParameterTypes();
+        }
+
+        @Override
+        public String[] getParameterNames() {
+            return parameterNames;
+        }
+
+        @Override
+        public Class[] getExceptionTypes() {
+            return method.getExceptionTypes();
+        }
+
+        @Override
+        public String toShortString() {
+            return method.getName();
+        }
+
+        @Override
+        public String toLongString() {
+            return method.toString();
+        }
+
+        @Override
+        public String getName() {
+            return method.getName();
+        }
+
+        @Override
+        public int getModifiers() {
+            return method.getModifiers();
+        }
+
+        @Override
+        public Class getDeclaringType() {
+            return method.getDeclaringClass();
+        }
+
+        @Override
+        public String getDeclaringTypeName() {
+            return method.getDeclaringClass().getName();
+        }
+    }
+
+}
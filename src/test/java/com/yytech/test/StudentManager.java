@@ -1,6 +1,19 @@
 package com.yytech.test;
 
 import com.yytech.logger.annotation.ReqResLog;
+import com.yytech.logger.annotation.ReqResLogParam;
+import com.yytech.logger.util.TraceIdContext;
+import com.yytech.logger.util.TraceIdThreadLocal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 public class StudentManager {
 
@@ -20,4 +33,137 @@ public class StudentManager {
         return student;
     }
 
+    @ReqResLog(traceType = "METHOD", traceIdMethod = "student.name")
+    public Student rename(String newName, Student student) {
+        if (student != null) {
+            student.setName(newName);
+        }
+        return student;
+    }
+
+    @ReqResLog(traceType = "UUID")
+    public CompletableFuture<Student> findStudentAsync(String name, long delayMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            sleep(delayMillis);
+            if (name == null) {
+                throw new IllegalArgumentException("name is required");
+            }
+            return new Student(name, 100);
+        });
+    }
+
+    @ReqResLog(traceType = "UUID", traceIdEntry = true)
+    public Callable<Student> findStudentCallable(String name) {
+        //在其他线程执行时也能拿到调用时的traceId
+        return () -> new Student(name + "@" + TraceIdThreadLocal.getTraceId(), 99);
+    }
+
+    @ReqResLog(traceType = "UUID")
+    public Mono<Student> findStudentMono(String name) {
+        //订阅时从Reactor Context中拿到traceId
+        return TraceIdContext.getTraceId()
+                .map(traceId -> new Student(name + "@" + traceId, 98));
+    }
+
+    @ReqResLog(traceType = "UUID")
+    public Flux<Student> listStudentsFlux(int count, boolean failAtEnd) {
+        Flux<Student> students = Flux.range(0, count).map(i -> new Student("fluxName" + i, i));
+        if (failAtEnd) {
+            return students.concatWith(Flux.error(new IllegalStateException("flux failed")));
+        }
+        return students;
+    }
+
+    @ReqResLog(traceType = "UUID")
+    public Account openAccount(Account account) {
+        return account;
+    }
+
+    @ReqResLog
+    public int upload(@ReqResLogParam(ignore = true) String token, InputStream content, byte[] data,
+                      @ReqResLogParam(summary = true) List<Student> students,
+                      @ReqResLogParam(maxLength = 8) String note) throws IOException {
+        int size = data.length;
+        while (content.read() >= 0) {
+            size++;
+        }
+        return size;
+    }
+
+    @ReqResLog(condition = "#amount > 10000 or #flagged", unless = "#result == 'noop'", logMode = "COMBINED")
+    public String transfer(String user, long amount, boolean flagged) {
+        return amount == 0 ? "noop" : user + " transferred " + amount;
+    }
+
+    @ReqResLog(condition = "#member.name == 'gold'")
+    public String greet(Object member) {
+        return "hi";
+    }
+
+    @ReqResLog(slowThresholdMs = 50)
+    public int grade(Student student, long costMs) throws InterruptedException {
+        if (student.getScore() < 0) {
+            throw new IllegalArgumentException("negative score");
+        }
+        Thread.sleep(costMs);
+        student.setScore(student.getScore() + 1);
+        return student.getScore();
+    }
+
+    @ReqResLog(slowThresholdMs = 0, sampleRate = 1)
+    public String audit(Student student) {
+        return student.getName();
+    }
+
+    @ReqResLog(sampleRate = 0)
+    public String ping(Student student) {
+        return student.getName();
+    }
+
+    @ReqResLog(traceType = "UUID", traceIdEntry = true)
+    public String enroll(Student student, long costMs) throws InterruptedException {
+        if (student.getScore() < 0) {
+            throw new IllegalArgumentException("negative score");
+        }
+        Thread.sleep(costMs);
+        return student.getName();
+    }
+
+    @ReqResLog(level = "DEBUG", throwableLogLevel = "DEBUG", flightRecorderBudgetKb = 4)
+    public Student award(Student student, int bonus) {
+        if (bonus < 0) {
+            throw new IllegalStateException("negative bonus " + bonus);
+        }
+        student.setScore(student.getScore() + bonus);
+        return student;
+    }
+
+    @ReqResLog(reqFields = {"account.owner", "account.cardNo", "students.size()", "students.missing"},
+            resFields = {"name"})
+    public Student pickGuardian(Account account, List<Student> students) {
+        return account.getGuardian();
+    }
+
+    @ReqResLog
+    public boolean login(Credential credential) {
+        return credential.getPassword() != null;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @ReqResLog(resLogType = "JSON", maxResLength = 200)
+    public List<Student> listStudents(int count) {
+        List<Student> students = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            students.add(new Student("testName" + i, i));
+        }
+        return students;
+    }
+
 }